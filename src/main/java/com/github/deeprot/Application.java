@@ -1,10 +1,13 @@
 package com.github.deeprot;
 
+import java.util.concurrent.ThreadPoolExecutor;
+
 import org.apache.camel.CamelContext;
 import org.apache.camel.ConsumerTemplate;
 import org.apache.camel.ProducerTemplate;
 import org.apache.camel.spring.CamelBeanPostProcessor;
 import org.apache.camel.spring.SpringCamelContext;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ApplicationContext;
@@ -12,6 +15,9 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.github.deeprot.integration.camel.SalesforceMetrics;
 
 @SpringBootApplication
 @Configuration
@@ -49,4 +55,33 @@ public class Application {
         processor.setApplicationContext(context);
         return processor;
     }
+
+    // ==== Shared executor of the Salesforce I/O ====
+    public static final String SALESFORCE_EXECUTOR = "salesforceExecutor";
+    private static final int SALESFORCE_POOL_SIZE = 32;
+    private static final int SALESFORCE_QUEUE_CAPACITY = 1000;
+    /*
+     * Bounded and named executor shared by all the metadata scans: when the
+     * queue is full the submitting thread runs the task itself, which slows
+     * the scans down instead of exhausting the threads
+     */
+    @Bean(name = SALESFORCE_EXECUTOR, destroyMethod = "shutdown")
+    ThreadPoolTaskExecutor salesforceExecutor(SalesforceMetrics metrics,
+    		@Value("${salesforce.executor.poolSize:" + SALESFORCE_POOL_SIZE + "}") int poolSize,
+    		@Value("${salesforce.executor.queueCapacity:" + SALESFORCE_QUEUE_CAPACITY + "}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("sf-io-");
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            metrics.increment("executor.salesforce.callerRuns");
+            new ThreadPoolExecutor.CallerRunsPolicy().rejectedExecution(task, pool);
+        });
+        executor.initialize();
+        metrics.gauges("executor.salesforce", executor.getThreadPoolExecutor());
+        return executor;
+    }
 }
@@ -1,22 +1,31 @@
 package com.github.deeprot.controller;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.github.deeprot.Application;
+import com.github.deeprot.integration.camel.SalesforceDispatcher;
+import com.github.deeprot.integration.camel.SalesforceMetadataCache;
+import com.github.deeprot.integration.camel.SalesforceMetrics;
+import com.github.deeprot.integration.camel.SalesforceProcessor;
 import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
 import com.github.deeprot.integration.helper.SalesforceLoginConfigHelper;
 import com.github.deeprot.integration.helper.SalesforceObjectHelper;
 import com.github.deeprot.model.DataSet;
 import com.github.deeprot.model.DataSource;
 import com.github.deeprot.model.DatasourceType;
+import com.github.deeprot.model.MetadataRefreshReport;
 import com.github.deeprot.service.CrmDatasourceManager;
 import com.github.deeprot.service.impl.CamelDatasourceManagerImpl;
 
@@ -35,6 +44,19 @@ public class Front {
 	@Autowired
 	CrmDatasourceManager crmMgr;
 	
+	@Autowired
+	SalesforceMetrics metrics;
+	
+	@Autowired
+	SalesforceMetadataCache metadataCache;
+	
+	@Autowired
+	SalesforceDispatcher dispatcher;
+	
+	@Autowired
+	@Qualifier(Application.SALESFORCE_EXECUTOR)
+	Executor salesforceExecutor;
+	
 	@RequestMapping("/login/{email}/{password}")
     public String login(@PathVariable("email") String email,
     		@PathVariable("password") String password) {
@@ -76,15 +98,12 @@ public class Front {
     public String scenario01() {
     	final DataSet template = new DataSet();
 		final SalesforceCredentials creds = SalesforceLoginConfigHelper.getCredentials(DEFAULT_DS);
-		ExecutorService reportExecutor = Executors.newFixedThreadPool(20);
 		long duration = System.currentTimeMillis();
 		List<DataSet> reportDS = new ArrayList<DataSet>();
     	try {
-    		reportDS = ((CamelDatasourceManagerImpl)crmMgr).buildSalesforceReportsMetadata(template, creds, null, reportExecutor);
+    		reportDS = ((CamelDatasourceManagerImpl)crmMgr).buildSalesforceReportsMetadata(template, creds, null, salesforceExecutor);
     	} catch (Exception e) {
     		return e.getMessage();
-    	} finally {
-    		reportExecutor.shutdown();
     	}
     	StringBuilder display = new StringBuilder();
     	display.append(String.format("Retrieving {%d} TABULAR reports takes {%d} m-seconds", reportDS.size(), System.currentTimeMillis() - duration));
@@ -93,18 +112,16 @@ public class Front {
     }
     
     @RequestMapping("/measure/objects")
-    public String scenario02(@RequestParam(required = false, value = "withRowCount", defaultValue = "true") boolean withRowCount) {
+    public String scenario02(@RequestParam(required = false, value = "withRowCount", defaultValue = "true") boolean withRowCount,
+    		@RequestParam(required = false, value = "batched", defaultValue = "false") boolean batched) {
     	final DataSet template = new DataSet();
 		final SalesforceCredentials creds = SalesforceLoginConfigHelper.getCredentials(DEFAULT_DS);
-		ExecutorService objectExecutor = Executors.newFixedThreadPool(100);
 		long duration = System.currentTimeMillis();
 		List<DataSet> objectDS = new ArrayList<DataSet>();
     	try {
-    		objectDS = ((CamelDatasourceManagerImpl)crmMgr).buildSalesforceObjectsMetadata(template, creds, null, objectExecutor, withRowCount);
+    		objectDS = ((CamelDatasourceManagerImpl)crmMgr).buildSalesforceObjectsMetadata(template, creds, null, salesforceExecutor, withRowCount, batched);
     	} catch (Exception e) {
     		return e.getMessage();
-    	} finally {
-    		objectExecutor.shutdown();
     	}
     	StringBuilder display = new StringBuilder(String.format("Retrieving {%d} objects", objectDS.size()));
     	if (withRowCount) {
@@ -112,6 +129,9 @@ public class Front {
     	} else {
     		display.append(" (no row counts) ");
     	}
+    	if (batched) {
+    		display.append("(composite batches) ");
+    	}
     	display.append(String.format("takes {%d} m-seconds", System.currentTimeMillis() - duration));
     	display.append("<p>").append(SalesforceObjectHelper.print(objectDS)).append("</p>");
     	return display.toString();
@@ -137,4 +157,60 @@ public class Front {
     	return display.toString();
     }
     
+    @RequestMapping("/measure/refresh")
+    public String scenario04() {
+    	try {
+    		List<DataSet> metadataList = crmMgr.buildObjectsMetadata(DEFAULT_DS, null);
+    		MetadataRefreshReport report = crmMgr.refreshObjectsMetadata(DEFAULT_DS, metadataList);
+    		return SalesforceObjectHelper.print(report);
+    	} catch (Exception e) {
+    		return e.getMessage();
+    	}
+    }
+    
+    @RequestMapping("/measure/reportCounts")
+    public String scenario06() {
+    	Map<String, Object> display = new LinkedHashMap<>();
+    	try {
+    		long duration = System.currentTimeMillis();
+    		List<DataSet> metadataList = crmMgr.buildObjectsMetadata(DEFAULT_DS, null);
+    		display.put("describeMillis", System.currentTimeMillis() - duration);
+    		duration = System.currentTimeMillis();
+    		display.put("countedReports", crmMgr.countReportsRecordset(DEFAULT_DS, metadataList));
+    		display.put("countMillis", System.currentTimeMillis() - duration);
+    	} catch (Exception e) {
+    		return e.getMessage();
+    	}
+    	return SalesforceObjectHelper.print(display);
+    }
+    
+    @RequestMapping("/measure/dispatch")
+    public String scenario05(@RequestParam(required = false, value = "calls", defaultValue = "20") int calls) {
+		final SalesforceCredentials creds = SalesforceLoginConfigHelper.getCredentials(DEFAULT_DS);
+		final Map<String, Object> headers = Collections.<String, Object>singletonMap(SalesforceProcessor.HEADER_CREDENTIALS, creds);
+		Map<String, Object> display = new LinkedHashMap<>();
+    	try {
+    		for (boolean direct : new boolean[] { false, true }) {
+    			// the mode is passed per call, the configured mode is left untouched
+    			dispatcher.request(SalesforceProcessor.FROM_URI_GET_VERSIONS, null, headers, Object.class, direct); // warm up
+    			long duration = System.nanoTime();
+    			for (int i = 0; i < calls; i++) {
+    				dispatcher.request(SalesforceProcessor.FROM_URI_GET_VERSIONS, null, headers, Object.class, direct);
+    			}
+    			display.put(direct ? "directMicrosPerCall" : "routedMicrosPerCall", (System.nanoTime() - duration) / 1000 / Math.max(1, calls));
+    		}
+    	} catch (Exception e) {
+    		return e.getMessage();
+    	}
+    	return SalesforceObjectHelper.print(display);
+    }
+    
+    @RequestMapping("/measure/metrics")
+    public String metrics() {
+    	Map<String, Object> display = new LinkedHashMap<>();
+    	display.put("metrics", metrics.snapshot());
+    	display.put("metadataCache", metadataCache.stats());
+    	return SalesforceObjectHelper.print(display);
+    }
+    
 }
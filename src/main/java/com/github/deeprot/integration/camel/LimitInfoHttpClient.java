@@ -0,0 +1,50 @@
+package com.github.deeprot.integration.camel;
+
+import java.io.IOException;
+import java.util.function.BiConsumer;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpEventListenerWrapper;
+import org.eclipse.jetty.client.HttpExchange;
+import org.eclipse.jetty.io.Buffer;
+
+/**
+ * Jetty HttpClient reporting the <i>Sforce-Limit-Info</i> header of the
+ * responses, which the Salesforce component does not expose, to a limit info
+ * listener. Every HttpClient given to a Salesforce component should be one,
+ * otherwise the {@link SalesforceRateGovernor} cannot adapt the rate of its
+ * tenant.
+ * 
+ * @author bruce.nguyen
+ *
+ */
+public class LimitInfoHttpClient extends HttpClient {
+
+	/*
+	 * Listener of the Sforce-Limit-Info headers, receiving the org ID and the
+	 * header value
+	 */
+	private volatile BiConsumer<String, String> limitInfoListener;
+
+	@Override
+	public void send(final HttpExchange exchange) throws IOException {
+		final BiConsumer<String, String> listener = limitInfoListener;
+		if (listener != null) {
+			final String orgId = SalesforceRateGovernor.orgId(exchange.getRequestFields().getStringField("Authorization"));
+			exchange.setEventListener(new HttpEventListenerWrapper(exchange.getEventListener(), true) {
+				@Override
+				public void onResponseHeader(Buffer name, Buffer value) throws IOException {
+					if (SalesforceRateGovernor.HEADER_LIMIT_INFO.equalsIgnoreCase(name.toString())) {
+						listener.accept(orgId, value.toString());
+					}
+					super.onResponseHeader(name, value);
+				}
+			});
+		}
+		super.send(exchange);
+	}
+
+	public void setLimitInfoListener(BiConsumer<String, String> limitInfoListener) {
+		this.limitInfoListener = limitInfoListener;
+	}
+}
@@ -0,0 +1,218 @@
+package com.github.deeprot.integration.camel;
+
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_CHECK_BATCH_STATUS;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.camel.component.salesforce.api.dto.bulk.BatchInfo;
+import org.apache.camel.component.salesforce.api.dto.bulk.BatchStateEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Non-blocking engine tracking the Salesforce <a
+ * href="http://www.salesforce.com/us/developer/docs/api_asynch/index.htm"
+ * >Bulk API</a> batches. Batch statuses are polled from a small shared
+ * scheduler with an adaptive backoff: the first polls are close to each other
+ * (small queries usually finish within a second), the interval then grows up
+ * to {@link #MAX_POLL_INTERVAL} for long running jobs. The status requests
+ * are sent asynchronously, so no thread is held while a batch is waiting and
+ * many exports can share a handful of threads.
+ * <p>
+ * The pools of the engine are kept apart from the shared Salesforce executor
+ * on purpose: the poller tasks must never wait behind the blocking requests,
+ * and a download must not run on a submitting thread as the shared executor
+ * does when it is saturated. Their gauges are exported under
+ * <i>executor.bulk.*</i>.
+ * </p>
+ *
+ * @author bruce.nguyen
+ *
+ */
+@Component
+public class SalesforceBulkJobEngine {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SalesforceBulkJobEngine.class);
+
+	public static final int SCHEDULER_POOL_SIZE = 2;
+	public static final int WORKER_POOL_SIZE = 8;
+	public static final int DOWNLOAD_POOL_SIZE = 16;
+	public static final long MIN_POLL_INTERVAL = 500; // milliseconds
+	public static final long MAX_POLL_INTERVAL = 30_000; // 30 seconds
+	public static final double POLL_BACKOFF_FACTOR = 1.5;
+	public static final long MAX_WAIT_DURATION = 2 * 3_600_000; // 2 hours
+
+	@Autowired
+	SalesforceDispatcher dispatcher;
+
+	@Autowired
+	SalesforceMetrics metrics;
+
+	/*
+	 * Scheduler used for polling only, the tasks must be short
+	 */
+	private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(SCHEDULER_POOL_SIZE,
+			new ThreadFactoryBuilder().setNameFormat("sf-bulk-poller-%d").setDaemon(true).build());
+	/*
+	 * Workers used for the short blocking steps of a job (create, close), the
+	 * results are fetched asynchronously
+	 */
+	private final ThreadPoolExecutor workers = (ThreadPoolExecutor) Executors.newFixedThreadPool(WORKER_POOL_SIZE,
+			new ThreadFactoryBuilder().setNameFormat("sf-bulk-worker-%d").setDaemon(true).build());
+	/*
+	 * Downloaders used to fetch and parse the result sets of the batches
+	 */
+	private final ThreadPoolExecutor downloaders = (ThreadPoolExecutor) Executors.newFixedThreadPool(DOWNLOAD_POOL_SIZE,
+			new ThreadFactoryBuilder().setNameFormat("sf-bulk-download-%d").setDaemon(true).build());
+	/*
+	 * Batches being tracked, keyed by batch ID
+	 */
+	private final ConcurrentMap<String, BatchInfo> trackedBatches = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void registerGauges() {
+		metrics.gauges("executor.bulk.poller", scheduler);
+		metrics.gauges("executor.bulk.worker", workers);
+		metrics.gauges("executor.bulk.download", downloaders);
+	}
+
+	/**
+	 * Wait asynchronously for the completion of a batch. The returned future
+	 * completes with the last known {@link BatchInfo} once the batch leaves the
+	 * QUEUED and IN_PROGRESS states, whatever its final state, or fails with a
+	 * {@link TimeoutException} if the batch is still running after
+	 * {@link #MAX_WAIT_DURATION}. Cancelling the future stops the polling.
+	 *
+	 * @param headers
+	 *            the message headers, must contain the credentials and the job
+	 *            ID of the batch
+	 * @param batchInfo
+	 *            the batch to be tracked
+	 * @return the future of the completed batch
+	 */
+	public CompletableFuture<BatchInfo> awaitBatch(Map<String, Object> headers, BatchInfo batchInfo) {
+		Assert.notNull(batchInfo, "batchInfo should not be null");
+		CompletableFuture<BatchInfo> future = new CompletableFuture<>();
+		if (!isRunning(batchInfo)) {
+			future.complete(batchInfo);
+			return future;
+		}
+		// the headers map is owned by the caller, work on a copy
+		final Map<String, Object> pollHeaders = new HashMap<>(headers);
+		trackedBatches.put(batchInfo.getId(), batchInfo);
+		schedulePoll(pollHeaders, batchInfo, MIN_POLL_INTERVAL, System.currentTimeMillis() + MAX_WAIT_DURATION, future);
+		return future;
+	}
+
+	/**
+	 * Run a blocking step of a bulk job on the engine's workers.
+	 *
+	 * @param task the blocking step
+	 * @return the future of the step result
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		workers.execute(() -> {
+			try {
+				future.complete(task.call());
+			} catch (Exception e) {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Get a future completed after a delay, without holding any thread while
+	 * waiting, e.g. to poll a resource.
+	 * 
+	 * @param millis the delay in milliseconds
+	 * @return the future of the delay
+	 */
+	public CompletableFuture<Void> delay(long millis) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		scheduler.schedule(() -> future.complete(null), millis, TimeUnit.MILLISECONDS);
+		return future;
+	}
+
+	/**
+	 * @return the executor dedicated to the download of the batch result sets
+	 */
+	public ExecutorService getDownloadExecutor() {
+		return downloaders;
+	}
+
+	/**
+	 * @return the number of batches currently tracked by the engine
+	 */
+	public int getTrackedBatchCount() {
+		return trackedBatches.size();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		scheduler.shutdownNow();
+		workers.shutdownNow();
+		downloaders.shutdownNow();
+	}
+
+	/*
+	 * The status request is sent asynchronously, the scheduler thread only
+	 * fires it: a slow response or a retry of the request never holds one of
+	 * the few poller threads.
+	 */
+	private void schedulePoll(Map<String, Object> headers, BatchInfo batchInfo, long delay, long deadline, CompletableFuture<BatchInfo> future) {
+		scheduler.schedule(() -> {
+			if (future.isDone()) {
+				// cancelled by the caller
+				trackedBatches.remove(batchInfo.getId());
+				return;
+			}
+			dispatcher.requestAsync(FROM_URI_CHECK_BATCH_STATUS, batchInfo, headers, BatchInfo.class).whenComplete((current, ex) -> {
+				if (ex != null) {
+					trackedBatches.remove(batchInfo.getId());
+					future.completeExceptionally(ex);
+				} else if (!isRunning(current)) {
+					trackedBatches.remove(current.getId());
+					LOG.debug("Batch {} of job {} is {} after polling every {} m-seconds.", current.getId(), current.getJobId(), current.getState(), delay);
+					future.complete(current);
+				} else if (System.currentTimeMillis() >= deadline) {
+					trackedBatches.remove(current.getId());
+					future.completeExceptionally(new TimeoutException(String.format("Batch %s of job %s is still %s after %d m-seconds",
+							current.getId(), current.getJobId(), current.getState(), MAX_WAIT_DURATION)));
+				} else {
+					trackedBatches.put(current.getId(), current);
+					schedulePoll(headers, current, nextDelay(delay), deadline, future);
+				}
+			});
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private static long nextDelay(long delay) {
+		return Math.min(MAX_POLL_INTERVAL, (long) (delay * POLL_BACKOFF_FACTOR));
+	}
+
+	private static boolean isRunning(BatchInfo batchInfo) {
+		return batchInfo.getState() == BatchStateEnum.IN_PROGRESS
+				|| batchInfo.getState() == BatchStateEnum.QUEUED;
+	}
+}
@@ -0,0 +1,302 @@
+package com.github.deeprot.integration.camel;
+
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_COMPONENT;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_CREATE_BATCH;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_CREATE_JOB;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_CREATE_REPORT_INSTANCE;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.HEADER_CREDENTIALS;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangePattern;
+import org.apache.camel.Message;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.ProducerCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.deeprot.integration.camel.SalesforceRateGovernor.Permit;
+import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
+import com.github.deeprot.integration.camel.router.DynamicSalesforceComponentRouter;
+import com.github.deeprot.integration.camel.router.DynamicSalesforceComponentRouter.ComponentLease;
+
+/**
+ * Single entry point of the requests sent to the Salesforce components.
+ * <p>
+ * In the <b>routed</b> mode (default), a request is sent to its DIRECT
+ * endpoint and forwarded by the {@link DynamicSalesforceComponentRouter} to the
+ * Salesforce component of the user. In the <b>direct</b> mode, the endpoint of
+ * the component is resolved in-process and the request is sent straight to
+ * it, saving the two router evaluations and the exchange copies of the
+ * DynamicRouter.
+ * </p>
+ * The latency of both modes is recorded per operation as
+ * <i>dispatch.routed.&lt;operation&gt;</i> and
+ * <i>dispatch.direct.&lt;operation&gt;</i>.
+ * <p>
+ * Every request first takes a permit of its tenant from the
+ * {@link SalesforceRateGovernor}, the permit is released when the response is
+ * received. Only the blocking requests wait for their permit on the calling
+ * thread. The transient failures are retried by the
+ * {@link SalesforceRetryPolicy}, each attempt taking its own permit, except
+ * for the operations creating a resource.
+ * </p>
+ * <p>
+ * A request holds a lease of the component of its user until its response is
+ * received, so that the component is not evicted while serving it.
+ * </p>
+ * 
+ * @author bruce.nguyen
+ *
+ */
+@Component
+public class SalesforceDispatcher {
+
+	@Autowired
+	ProducerTemplate template;
+
+	@Autowired
+	CamelContext camelContext;
+
+	@Autowired
+	DynamicSalesforceComponentRouter router;
+
+	@Autowired
+	SalesforceMetrics metrics;
+
+	@Autowired
+	SalesforceRateGovernor governor;
+
+	@Autowired
+	SalesforceRetryPolicy retryPolicy;
+
+	/*
+	 * Operations creating a resource, a retry after a timeout could create it twice
+	 */
+	private static final List<String> NON_IDEMPOTENT_OPERATIONS = Arrays.asList(
+			FROM_URI_CREATE_JOB, FROM_URI_CREATE_BATCH, FROM_URI_CREATE_REPORT_INSTANCE);
+
+	@Value("${salesforce.dispatch.direct:false}")
+	boolean direct;
+
+	/*
+	 * Producers of the async requests
+	 */
+	private ProducerCache producerCache;
+
+	/**
+	 * Send a request with the credentials as the only header
+	 * 
+	 * @param fromUri the DIRECT endpoint of the operation, e.g. {@link SalesforceProcessor#FROM_URI_GET_DESCRIPTION}
+	 * @param body the message body
+	 * @param creds Salesforce credentials
+	 * @param type the expected type of the response
+	 * @return the response
+	 */
+	public <T> T request(String fromUri, Object body, SalesforceCredentials creds, Class<T> type) {
+		return request(fromUri, body, Collections.<String, Object>singletonMap(HEADER_CREDENTIALS, creds), type);
+	}
+
+	/**
+	 * Send a request with the credentials as the only header
+	 * 
+	 * @param fromUri the DIRECT endpoint of the operation
+	 * @param body the message body
+	 * @param creds Salesforce credentials
+	 * @return the response
+	 */
+	public Object request(String fromUri, Object body, SalesforceCredentials creds) {
+		return request(fromUri, body, creds, Object.class);
+	}
+
+	/**
+	 * Send a request
+	 * 
+	 * @param fromUri the DIRECT endpoint of the operation
+	 * @param body the message body
+	 * @param headers the message headers, including the credentials
+	 * @return the response
+	 */
+	public Object request(String fromUri, Object body, Map<String, Object> headers) {
+		return request(fromUri, body, headers, Object.class);
+	}
+
+	/**
+	 * Send a request
+	 * 
+	 * @param fromUri the DIRECT endpoint of the operation
+	 * @param body the message body
+	 * @param headers the message headers, including the credentials
+	 * @param type the expected type of the response
+	 * @return the response
+	 */
+	public <T> T request(String fromUri, Object body, Map<String, Object> headers, Class<T> type) {
+		return request(fromUri, body, headers, type, direct);
+	}
+
+	/**
+	 * Send a request in the given mode whatever the configured one, e.g. to
+	 * compare the latency of both modes
+	 * 
+	 * @param fromUri the DIRECT endpoint of the operation
+	 * @param body the message body
+	 * @param headers the message headers, including the credentials
+	 * @param type the expected type of the response
+	 * @param direct true to bypass the DynamicRouter, false to route the request
+	 * @return the response
+	 */
+	public <T> T request(String fromUri, Object body, Map<String, Object> headers, Class<T> type, boolean direct) {
+		boolean directly = direct;
+		String endpoint = directly ? router.resolveEndpoint(fromUri, headers, body) : null;
+		if (endpoint == null) {
+			// routed mode, or operation not resolvable in-process
+			directly = false;
+			endpoint = FROM_COMPONENT + fromUri;
+		}
+		final String target = endpoint;
+		final String timer = (directly ? "dispatch.direct." : "dispatch.routed.") + fromUri;
+		final SalesforceCredentials creds = (SalesforceCredentials) headers.get(HEADER_CREDENTIALS);
+		return retryPolicy.call(creds, fromUri, isIdempotent(fromUri), () -> {
+			long duration = System.currentTimeMillis();
+			try (ComponentLease lease = router.lease(creds)) {
+				Permit permit = governor.acquire(creds);
+				try {
+					return template.requestBodyAndHeaders(target, body, headers, type);
+				} finally {
+					permit.close();
+					metrics.record(timer, System.currentTimeMillis() - duration);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Send a request asynchronously with the credentials as the only header
+	 * 
+	 * @param fromUri the DIRECT endpoint of the operation
+	 * @param body the message body
+	 * @param creds Salesforce credentials
+	 * @param type the expected type of the response
+	 * @return the future of the response
+	 */
+	public <T> CompletableFuture<T> requestAsync(String fromUri, Object body, SalesforceCredentials creds, Class<T> type) {
+		return requestAsync(fromUri, body, Collections.<String, Object>singletonMap(HEADER_CREDENTIALS, creds), type);
+	}
+
+	/**
+	 * Send a request asynchronously. The exchange is processed by the async
+	 * producer of the endpoint, so no thread is held while the HTTP call is in
+	 * flight: the future completes on the thread receiving the response, the
+	 * heavy continuations should therefore use the *Async methods of the
+	 * future with their own executor.
+	 * 
+	 * @param fromUri the DIRECT endpoint of the operation
+	 * @param body the message body
+	 * @param headers the message headers, including the credentials
+	 * @param type the expected type of the response
+	 * @return the future of the response, failed with a
+	 *         {@link CamelExecutionException} like the blocking requests
+	 */
+	public <T> CompletableFuture<T> requestAsync(String fromUri, Object body, Map<String, Object> headers, Class<T> type) {
+		String endpointUri = direct ? router.resolveEndpoint(fromUri, headers, body) : null;
+		final String timer = (endpointUri != null ? "dispatch.direct." : "dispatch.routed.") + fromUri;
+		final String target = endpointUri != null ? endpointUri : FROM_COMPONENT + fromUri;
+		final SalesforceCredentials creds = (SalesforceCredentials) headers.get(HEADER_CREDENTIALS);
+		return retryPolicy.callAsync(creds, fromUri, isIdempotent(fromUri), () -> send(target, timer, creds, body, headers, type));
+	}
+
+	/**
+	 * @param fromUri the DIRECT endpoint of the operation
+	 * @return whether the operation may be sent again safely, i.e. retried
+	 */
+	public static boolean isIdempotent(String fromUri) {
+		return !NON_IDEMPOTENT_OPERATIONS.contains(fromUri);
+	}
+
+	/*
+	 * Send one attempt of an async request once a permit is taken, without
+	 * blocking the calling thread, which may be a scheduler thread
+	 */
+	private <T> CompletableFuture<T> send(String endpointUri, String timer, SalesforceCredentials creds, 
+			Object body, Map<String, Object> headers, Class<T> type) {
+		final long duration = System.currentTimeMillis();
+		return governor.acquireAsync(creds).thenCompose(permit -> dispatch(endpointUri, timer, duration, creds, permit, body, headers, type));
+	}
+
+	/*
+	 * Process the exchange of an async request with the permit taken
+	 */
+	private <T> CompletableFuture<T> dispatch(String endpointUri, String timer, long duration, SalesforceCredentials creds, 
+			Permit permit, Object body, Map<String, Object> headers, Class<T> type) {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		ComponentLease lease = null;
+		try {
+			lease = router.lease(creds);
+			final ComponentLease inFlight = lease;
+			Endpoint endpoint = camelContext.getEndpoint(endpointUri);
+			final Exchange exchange = endpoint.createExchange(ExchangePattern.InOut);
+			exchange.getIn().setBody(body);
+			exchange.getIn().setHeaders(new HashMap<>(headers));
+			producerCache.doInAsyncProducer(endpoint, exchange, ExchangePattern.InOut, doneSync -> {
+				inFlight.close();
+				permit.close();
+				metrics.record(timer, System.currentTimeMillis() - duration);
+				complete(future, exchange, type);
+			}, (producer, asyncProducer, exch, pattern, callback) -> asyncProducer.process(exch, callback));
+		} catch (Exception e) {
+			if (lease != null) {
+				lease.close();
+			}
+			permit.close();
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/*
+	 * Complete the future with the response or the failure of the exchange
+	 */
+	private static <T> void complete(CompletableFuture<T> future, Exchange exchange, Class<T> type) {
+		if (exchange.getException() != null) {
+			future.completeExceptionally(CamelExecutionException.wrapCamelExecutionException(exchange, exchange.getException()));
+			return;
+		}
+		Message message = exchange.hasOut() ? exchange.getOut() : exchange.getIn();
+		try {
+			future.complete(message.getBody(type));
+		} catch (Exception e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	@PostConstruct
+	public void startProducerCache() throws Exception {
+		producerCache = new ProducerCache(this, camelContext);
+		producerCache.start();
+	}
+
+	@PreDestroy
+	public void stopProducerCache() throws Exception {
+		producerCache.stop();
+	}
+
+	/**
+	 * @return true if the requests bypass the DynamicRouter
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+}
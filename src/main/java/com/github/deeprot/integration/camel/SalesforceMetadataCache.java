@@ -0,0 +1,171 @@
+package com.github.deeprot.integration.camel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.component.salesforce.api.dto.GlobalObjects;
+import org.apache.camel.component.salesforce.api.dto.SObjectDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Per-org cache of the Salesforce metadata (global objects and SObject
+ * descriptions), backed by the Guava <a href=
+ * "http://docs.guava-libraries.googlecode.com/git/javadoc/com/google/common/cache/CacheBuilder.html"
+ * >cache</a>. Entries are keyed by the credentials hash plus the object name,
+ * expire after {@link #TTL_MINUTES} and are evicted by size, the weight of a
+ * description being its number of fields.
+ *
+ * @author bruce.nguyen
+ *
+ */
+@Component
+public class SalesforceMetadataCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SalesforceMetadataCache.class);
+
+	public static final long TTL_MINUTES = 60;
+	public static final long MAXIMUM_DESCRIBED_FIELDS = 500_000;
+	public static final long MAXIMUM_ORGS = 1_000;
+	private static final String GLOBAL_OBJECTS_KEY = "*";
+
+	private final Cache<String, SObjectDescription> descriptions = CacheBuilder.newBuilder()
+			.maximumWeight(MAXIMUM_DESCRIBED_FIELDS)
+			.weigher((String key, SObjectDescription description) -> 1 + (description.getFields() == null ? 0 : description.getFields().size()))
+			.expireAfterWrite(TTL_MINUTES, TimeUnit.MINUTES)
+			.recordStats()
+			.build();
+	private final Cache<String, GlobalObjects> globalObjects = CacheBuilder.newBuilder()
+			.maximumSize(MAXIMUM_ORGS)
+			.expireAfterWrite(TTL_MINUTES, TimeUnit.MINUTES)
+			.recordStats()
+			.build();
+
+	/**
+	 * Get the description of an object, loading it on a cache miss
+	 *
+	 * @param creds Salesforce credentials
+	 * @param objectName the SObject name
+	 * @param loader the loader triggering the describe call
+	 * @return the description of the object
+	 * @throws Exception the failure of the loader
+	 */
+	public SObjectDescription getDescription(SalesforceCredentials creds, String objectName, Callable<SObjectDescription> loader) throws Exception {
+		return get(descriptions, key(creds, objectName), loader);
+	}
+
+	/**
+	 * Get the global objects of an org, loading them on a cache miss
+	 *
+	 * @param creds Salesforce credentials
+	 * @param loader the loader triggering the describe global call
+	 * @return the global objects
+	 * @throws Exception the failure of the loader
+	 */
+	public GlobalObjects getGlobalObjects(SalesforceCredentials creds, Callable<GlobalObjects> loader) throws Exception {
+		return get(globalObjects, key(creds, GLOBAL_OBJECTS_KEY), loader);
+	}
+
+	/**
+	 * Get the cached description of an object, without loading it
+	 *
+	 * @param creds Salesforce credentials
+	 * @param objectName the SObject name
+	 * @return the description of the object, NULL on a cache miss
+	 */
+	public SObjectDescription getDescriptionIfPresent(SalesforceCredentials creds, String objectName) {
+		return descriptions.getIfPresent(key(creds, objectName));
+	}
+
+	/**
+	 * Store the description of an object loaded outside of the cache, e.g. by
+	 * a conditional describe
+	 *
+	 * @param creds Salesforce credentials
+	 * @param objectName the SObject name
+	 * @param description the description of the object
+	 */
+	public void putDescription(SalesforceCredentials creds, String objectName, SObjectDescription description) {
+		descriptions.put(key(creds, objectName), description);
+	}
+
+	/**
+	 * Invalidate the cached description of an object
+	 *
+	 * @param creds Salesforce credentials
+	 * @param objectName the SObject name
+	 */
+	public void invalidate(SalesforceCredentials creds, String objectName) {
+		descriptions.invalidate(key(creds, objectName));
+	}
+
+	/**
+	 * Invalidate all the cached metadata of an org
+	 *
+	 * @param creds Salesforce credentials
+	 */
+	public void invalidate(SalesforceCredentials creds) {
+		final String prefix = key(creds, "");
+		descriptions.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+		globalObjects.invalidate(key(creds, GLOBAL_OBJECTS_KEY));
+		LOG.debug("Metadata cache of org {} is invalidated.", prefix);
+	}
+
+	/**
+	 * Invalidate all the cached metadata
+	 */
+	public void invalidateAll() {
+		descriptions.invalidateAll();
+		globalObjects.invalidateAll();
+	}
+
+	/**
+	 * @return the hit, miss, eviction and size metrics of the cache
+	 */
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("descriptions", stats(descriptions.stats(), descriptions.size()));
+		stats.put("globalObjects", stats(globalObjects.stats(), globalObjects.size()));
+		return stats;
+	}
+
+	private static Map<String, Object> stats(CacheStats cacheStats, long size) {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("size", size);
+		stats.put("hitCount", cacheStats.hitCount());
+		stats.put("missCount", cacheStats.missCount());
+		stats.put("hitRate", cacheStats.hitRate());
+		stats.put("evictionCount", cacheStats.evictionCount());
+		stats.put("loadExceptionCount", cacheStats.loadExceptionCount());
+		stats.put("averageLoadMillis", (long) (cacheStats.averageLoadPenalty() / 1_000_000));
+		return stats;
+	}
+
+	private static String key(SalesforceCredentials creds, String objectName) {
+		return new StringBuilder().append(creds.fingerprint()).append(':').append(objectName).toString();
+	}
+
+	/*
+	 * Load through the cache and rethrow the failure of the loader
+	 */
+	private static <V> V get(Cache<String, V> cache, String key, Callable<V> loader) throws Exception {
+		try {
+			return cache.get(key, loader);
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.github.deeprot.integration.camel;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process counters and timers of the Salesforce integration. Metrics are
+ * identified by a dotted name (e.g. <i>bulk.chunk.fetch</i>) and exposed as a
+ * plain snapshot map so that they can be printed or pushed to any monitoring
+ * system.
+ * 
+ * @author bruce.nguyen
+ *
+ */
+@Component
+public class SalesforceMetrics {
+
+	private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+	/**
+	 * Increment a counter by one
+	 * 
+	 * @param name the counter name
+	 */
+	public void increment(String name) {
+		add(name, 1);
+	}
+
+	/**
+	 * Increment a counter by the given amount
+	 * 
+	 * @param name the counter name
+	 * @param amount the amount to be added
+	 */
+	public void add(String name, long amount) {
+		counters.computeIfAbsent(name, key -> new LongAdder()).add(amount);
+	}
+
+	/**
+	 * Record a duration of a timer
+	 * 
+	 * @param name the timer name
+	 * @param millis the duration in milliseconds
+	 */
+	public void record(String name, long millis) {
+		timers.computeIfAbsent(name, key -> new Timer()).record(millis);
+	}
+
+	/**
+	 * Register a gauge, a value read at snapshot time
+	 * 
+	 * @param name the gauge name
+	 * @param gauge the supplier of the current value
+	 */
+	public void gauge(String name, Supplier<? extends Number> gauge) {
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * Register the gauges of a thread pool: pool size, maximum pool size,
+	 * active threads, queued and completed tasks, remaining queue capacity
+	 * 
+	 * @param prefix the prefix of the gauge names, e.g. <i>executor.salesforce</i>
+	 * @param executor the thread pool
+	 */
+	public void gauges(String prefix, ThreadPoolExecutor executor) {
+		gauge(prefix + ".poolSize", executor::getPoolSize);
+		gauge(prefix + ".maxPoolSize", executor::getMaximumPoolSize);
+		gauge(prefix + ".active", executor::getActiveCount);
+		gauge(prefix + ".queued", () -> executor.getQueue().size());
+		gauge(prefix + ".queueRemaining", () -> executor.getQueue().remainingCapacity());
+		gauge(prefix + ".completed", executor::getCompletedTaskCount);
+	}
+
+	/**
+	 * @param name the counter name
+	 * @return the current value of the counter, 0 if it does not exist
+	 */
+	public long count(String name) {
+		LongAdder counter = counters.get(name);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	/**
+	 * @return a sorted snapshot of all the counters, timers and gauges
+	 */
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new TreeMap<>();
+		counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+		timers.forEach((name, timer) -> snapshot.put(name, timer.snapshot()));
+		gauges.forEach((name, gauge) -> snapshot.put(name, gauge.get()));
+		return snapshot;
+	}
+
+	/*
+	 * Count, total and max of the recorded durations
+	 */
+	private static class Timer {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder total = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+
+		void record(long millis) {
+			count.increment();
+			total.add(millis);
+			max.accumulateAndGet(millis, Math::max);
+		}
+
+		Map<String, Long> snapshot() {
+			Map<String, Long> snapshot = new TreeMap<>();
+			long n = count.sum();
+			snapshot.put("count", n);
+			snapshot.put("totalMillis", total.sum());
+			snapshot.put("meanMillis", n == 0 ? 0 : total.sum() / n);
+			snapshot.put("maxMillis", max.get());
+			return snapshot;
+		}
+	}
+}
@@ -3,14 +3,32 @@ package com.github.deeprot.integration.camel;
 
 
 import java.io.InputStream;
+import java.net.URLEncoder;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.apache.camel.CamelExecutionException;
@@ -32,9 +50,13 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import com.github.deeprot.integration.camel.dto.BulkQueryOptions;
 import com.github.deeprot.integration.camel.dto.QueryRecords;
 import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
 import com.github.deeprot.integration.helper.SalesforceObjectHelper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 import com.mongodb.BasicDBObject;
 
 /**
@@ -57,13 +79,15 @@ public class SalesforceProcessor {
 			"TaskPriority", "TaskStatus", "UndecidedEventRelation", "UserRecordAccess",
 			"ContentDocumentLink", "IdeaComment", "CollaborationGroupRecord", "Vote");
 	public static final String HEADER_CREDENTIALS = "credentials";
+	public static final String HEADER_PK_CHUNKING = "Sforce-Enable-PKChunking";
 	public static final int CONNECTION_TIMEOUT = 900_000; // 15 minutes
 	public static final int RESPONSE_TIMEOUT = 900_000; // 15 minutes
 	public enum DatasetType {
 		OBJECT, REPORT;
 	}
 	public enum ReportType {
-		TABULAR, SUMMARY, MATRIX, JOINED;
+		// joined reports are described as MULTI_BLOCK by the Analytics API
+		TABULAR, SUMMARY, MATRIX, JOINED, MULTI_BLOCK;
 	}
 	
 	
@@ -78,6 +102,21 @@ public class SalesforceProcessor {
 	public static final String FROM_URI_COUNT_OBJECTS = "countObject";
 	public static final String FROM_URI_GET_OBJECT = "getObject";
 	public static final String FROM_URI_GET_OBJECT_WINDOW = "getObjectWindow";
+	public static final String FROM_URI_QUERY_MORE = "queryMore";
+	/*
+	 * SOQL boundaries
+	 */
+	public static final int SOQL_MAX_OFFSET = 2000;
+	public static final int SOQL_MAX_BATCH_SIZE = 2000;
+	/*
+	 * Case-sensitive (15) or case-insensitive (18) Salesforce ID
+	 */
+	private static final Pattern OBJECT_ID = Pattern.compile("[a-zA-Z0-9]{15}([a-zA-Z0-9]{3})?");
+	/*
+	 * Keyset cursors of the offset windows served recently
+	 */
+	public static final long PAGE_CURSOR_TTL_MINUTES = 10;
+	public static final long MAXIMUM_PAGE_CURSORS = 10_000;
 	/*
 	 * Salesforce Bulk API endpoints
 	 */
@@ -85,6 +124,7 @@ public class SalesforceProcessor {
 	public static final String FROM_URI_CLOSE_JOB = "bulkCloseJob";
 	public static final String FROM_URI_CREATE_BATCH = "bulkCreateBatch";
 	public static final String FROM_URI_CHECK_BATCH_STATUS = "bulkGetBatch";
+	public static final String FROM_URI_GET_ALL_BATCHES = "bulkGetAllBatches";
 	public static final String FROM_URI_GET_BATCH_RESULTS = "bulkGetBatchResults";
 	public static final String FROM_URI_GET_BATCH_DATA = "bulkGetBatchData";
 	/*
@@ -98,6 +138,36 @@ public class SalesforceProcessor {
 	
 	@Autowired
 	ProducerTemplate template;
+	
+	@Autowired
+	SalesforceDispatcher dispatcher;
+	
+	@Autowired
+	SalesforceBulkJobEngine bulkJobEngine;
+	
+	@Autowired
+	SalesforceMetrics metrics;
+	
+	@Autowired
+	SalesforceMetadataCache metadataCache;
+	
+	@Autowired
+	SalesforceRestClient restClient;
+	
+	@Autowired
+	SalesforceReportExecutor reportExecutor;
+	
+	@Autowired
+	SalesforceReportPartitioner reportPartitioner;
+	
+	/*
+	 * ID of the last object of a window, keyed by credentials hash, object
+	 * name and the offset following the window
+	 */
+	private final Cache<String, String> pageCursors = CacheBuilder.newBuilder()
+			.maximumSize(MAXIMUM_PAGE_CURSORS)
+			.expireAfterWrite(PAGE_CURSOR_TTL_MINUTES, TimeUnit.MINUTES)
+			.build();
 
 	/**
 	 * Trigger the Salesforce REST API <a href=
@@ -115,7 +185,7 @@ public class SalesforceProcessor {
 	public Collection<Version> getVersions(SalesforceCredentials creds) throws Exception {
 		List<Version> versions = null;
 		try {
-			Object o = template.requestBodyAndHeader(FROM_COMPONENT + FROM_URI_GET_VERSIONS, (Object) null, HEADER_CREDENTIALS, creds);
+			Object o = dispatcher.request(FROM_URI_GET_VERSIONS, (Object) null, creds);
 			if (o instanceof Versions) {
 				versions = ((Versions) o).getVersions();
 			} else {
@@ -125,6 +195,7 @@ public class SalesforceProcessor {
 		} catch (CamelExecutionException camelEx) {
 			LOG.warn("User failed to log in to Salesforce account using the provided credentials.", camelEx);
 			// release the resource
+			metadataCache.invalidate(creds);
 			template.sendBodyAndHeader(FROM_COMPONENT + FROM_URI_FAILED_LOGIN, null, HEADER_CREDENTIALS, creds);
 			throw camelEx;
 		}
@@ -137,7 +208,8 @@ public class SalesforceProcessor {
 	 * >Describe Global</a> via the Camel SF component
 	 * <p>
 	 * Return the list of SF objects used by the user, or one SF object if
-	 * specified.
+	 * specified. The global objects are cached per org by the
+	 * {@link SalesforceMetadataCache}.
 	 * </p>
 	 * 
 	 * @param creds
@@ -150,9 +222,18 @@ public class SalesforceProcessor {
 	 * @throws Exception
 	 */
 	public Collection<SObject> getObjectTypes(SalesforceCredentials creds, String objectName) { //throws Exception {
-		GlobalObjects globalObjects = (GlobalObjects) template.requestBodyAndHeader(FROM_COMPONENT + FROM_URI_GET_GLOBAL_OBJECTS, (Object) null, 
-				HEADER_CREDENTIALS, creds);
-		debug(globalObjects);
+		GlobalObjects globalObjects;
+		try {
+			globalObjects = metadataCache.getGlobalObjects(creds, () -> {
+				GlobalObjects loaded = (GlobalObjects) dispatcher.request(FROM_URI_GET_GLOBAL_OBJECTS, (Object) null, creds);
+				debug(loaded);
+				return loaded;
+			});
+		} catch (RuntimeException re) {
+			throw re;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
 		return globalObjects.getSobjects().parallelStream()
 				.filter(sObj -> StringUtils.isEmpty(objectName) || objectName.equals(sObj.getName()))
 				.filter(sObj -> !UNSUPPORTED_OBJECTS.contains(sObj.getName()))
@@ -164,7 +245,8 @@ public class SalesforceProcessor {
 	 * "http://www.salesforce.com/us/developer/docs/api_rest/Content/resources_sobject_describe.htm"
 	 * >SObject Describe</a> via the Camel SF component
 	 * <p>
-	 * Return the description of the specified object.
+	 * Return the description of the specified object. Descriptions are cached
+	 * per org by the {@link SalesforceMetadataCache}.
 	 * </p>
 	 * 
 	 * @param creds
@@ -177,8 +259,54 @@ public class SalesforceProcessor {
 	 */
 	public SObjectDescription describeObject(SalesforceCredentials creds, final String objectName) throws Exception {
 		Assert.notNull(objectName, "objectName should not be null");
-		SObjectDescription objectDescription = template.requestBodyAndHeader(FROM_COMPONENT + FROM_URI_GET_DESCRIPTION, objectName, 
-				HEADER_CREDENTIALS, creds, SObjectDescription.class);
+		return metadataCache.getDescription(creds, objectName, () -> {
+			SObjectDescription objectDescription = dispatcher.request(FROM_URI_GET_DESCRIPTION, objectName, creds, SObjectDescription.class);
+			debug(objectDescription);
+			return objectDescription;
+		});
+	}
+
+	/**
+	 * Trigger the Salesforce REST API <a href=
+	 * "http://www.salesforce.com/us/developer/docs/api_rest/Content/resources_sobject_describe.htm"
+	 * >SObject Describe</a> as a conditional request, bypassing the Camel SF
+	 * component which does not forward the <i>If-Modified-Since</i> header.
+	 * <p>
+	 * Return the description of the specified object if its metadata changed
+	 * since the given date, NULL otherwise (HTTP 304). A new description
+	 * replaces the cached one.
+	 * </p>
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param objectName
+	 *            the SObject to be described
+	 * @param since
+	 *            the date of the last known description, NULL to describe
+	 *            unconditionally, the cached description being discarded
+	 * @return the description object, NULL if not modified
+	 * @throws Exception
+	 */
+	public SObjectDescription describeObjectIfModified(SalesforceCredentials creds, final String objectName, Date since) throws Exception {
+		Assert.notNull(objectName, "objectName should not be null");
+		if (since == null) {
+			// a real describe, not the cached one
+			metadataCache.invalidate(creds, objectName);
+			metrics.increment("describe.unconditional");
+			return describeObject(creds, objectName);
+		}
+		Map<String, String> headers = new HashMap<>();
+		headers.put(SalesforceRestClient.HEADER_IF_MODIFIED_SINCE, 
+				DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(since.toInstant(), ZoneOffset.UTC)));
+		SalesforceRestClient.Response response = restClient.get(creds, 
+				restClient.dataPath(creds, "sobjects/" + objectName + "/describe"), headers);
+		if (response.isNotModified()) {
+			metrics.increment("describe.notModified");
+			return null;
+		}
+		metrics.increment("describe.modified");
+		SObjectDescription objectDescription = SalesforceObjectHelper.readJson(response.getContent(), SObjectDescription.class);
+		metadataCache.putDescription(creds, objectName, objectDescription);
 		debug(objectDescription);
 		return objectDescription;
 	}
@@ -200,12 +328,104 @@ public class SalesforceProcessor {
 	 */
 	public int countObject(SalesforceCredentials creds, final String objectName) throws Exception {
 		Assert.notNull(objectName, "objectName should not be null");
-		QueryRecords<?> queryResult = template.requestBodyAndHeader(FROM_COMPONENT + FROM_URI_COUNT_OBJECTS, objectName, 
-				HEADER_CREDENTIALS, creds, QueryRecords.class);
+		QueryRecords<?> queryResult = dispatcher.request(FROM_URI_COUNT_OBJECTS, objectName, creds, QueryRecords.class);
 		debug(queryResult);
 		return queryResult.getTotalSize();
 	}
 	
+	/**
+	 * Describe many objects with <a href=
+	 * "https://developer.salesforce.com/docs/atlas.en-us.api_rest.meta/api_rest/resources_composite_batch.htm"
+	 * >Composite Batch</a> requests, {@link SalesforceRestClient#COMPOSITE_BATCH_SIZE}
+	 * describes per HTTP round trip.
+	 * <p>
+	 * Cached descriptions are not requested again. The objects failed to be
+	 * described are missing from the result.
+	 * </p>
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param objectNames
+	 *            the SObjects to be described
+	 * @return the description objects keyed by object name
+	 * @throws Exception if a batch request failed
+	 */
+	public Map<String, SObjectDescription> describeObjects(SalesforceCredentials creds, Collection<String> objectNames) throws Exception {
+		Assert.notNull(objectNames, "objectNames should not be null");
+		Map<String, SObjectDescription> descriptions = new LinkedHashMap<>();
+		List<String> misses = new ArrayList<>();
+		for (String objectName : objectNames) {
+			SObjectDescription cached = metadataCache.getDescriptionIfPresent(creds, objectName);
+			if (cached != null) {
+				descriptions.put(objectName, cached);
+			} else {
+				misses.add(objectName);
+			}
+		}
+		for (List<String> batch : Lists.partition(misses, SalesforceRestClient.COMPOSITE_BATCH_SIZE)) {
+			List<Map<String, Object>> results = restClient.batch(creds, batch.stream()
+					.map(objectName -> "sobjects/" + objectName + "/describe")
+					.collect(Collectors.toList()));
+			for (int i = 0; i < batch.size(); i++) {
+				Object result = batchResult(results.get(i), batch.get(i));
+				if (result != null) {
+					SObjectDescription objectDescription = SalesforceObjectHelper.convertJson(result, SObjectDescription.class);
+					metadataCache.putDescription(creds, batch.get(i), objectDescription);
+					descriptions.put(batch.get(i), objectDescription);
+				}
+			}
+		}
+		return descriptions;
+	}
+	
+	/**
+	 * Count many objects with <a href=
+	 * "https://developer.salesforce.com/docs/atlas.en-us.api_rest.meta/api_rest/resources_composite_batch.htm"
+	 * >Composite Batch</a> requests, {@link SalesforceRestClient#COMPOSITE_BATCH_SIZE}
+	 * counts per HTTP round trip.
+	 * <p>
+	 * The objects failed to be counted are missing from the result.
+	 * </p>
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param objectNames
+	 *            the SObjects to be counted
+	 * @return the number of records keyed by object name
+	 * @throws Exception if a batch request failed
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, Integer> countObjects(SalesforceCredentials creds, Collection<String> objectNames) throws Exception {
+		Assert.notNull(objectNames, "objectNames should not be null");
+		Map<String, Integer> counts = new LinkedHashMap<>();
+		for (List<String> batch : Lists.partition(new ArrayList<>(objectNames), SalesforceRestClient.COMPOSITE_BATCH_SIZE)) {
+			List<String> resources = new ArrayList<>(batch.size());
+			for (String objectName : batch) {
+				resources.add("query?q=" + URLEncoder.encode("SELECT COUNT() FROM " + objectName, "UTF-8"));
+			}
+			List<Map<String, Object>> results = restClient.batch(creds, resources);
+			for (int i = 0; i < batch.size(); i++) {
+				Object result = batchResult(results.get(i), batch.get(i));
+				if (result instanceof Map && ((Map<String, Object>) result).get("totalSize") instanceof Number) {
+					counts.put(batch.get(i), ((Number) ((Map<String, Object>) result).get("totalSize")).intValue());
+				}
+			}
+		}
+		return counts;
+	}
+	
+	/*
+	 * Return the result of a composite batch sub-request, NULL if the sub-request failed
+	 */
+	private static Object batchResult(Map<String, Object> subResult, String objectName) {
+		Object statusCode = subResult.get("statusCode");
+		if (statusCode instanceof Number && ((Number) statusCode).intValue() < 300) {
+			return subResult.get("result");
+		}
+		LOG.warn("Batched request for object {} failed with status {}: {}", objectName, statusCode, subResult.get("result"));
+		return null;
+	}
+	
 	/**
 	 * Trigger the Salesforce REST API <a href=
 	 * "http://www.salesforce.com/us/developer/docs/api_rest/Content/resources_query.htm"
@@ -237,8 +457,7 @@ public class SalesforceProcessor {
 		queryBuilder.append(StringUtils.collectionToCommaDelimitedString(fields))
 				.append(" FROM ").append(objectName)
 				.append(" WHERE id='").append(objectId).append("'");
-		QueryRecords<?> query = template.requestBodyAndHeaders(FROM_COMPONENT + FROM_URI_GET_OBJECT, queryBuilder.toString(), 
-				headers, QueryRecords.class);
+		QueryRecords<?> query = dispatcher.request(FROM_URI_GET_OBJECT, queryBuilder.toString(), headers, QueryRecords.class);
 		debug(query);
 		if (query.getTotalSize() > 0) {
 			return query.getRecords().get(0);
@@ -251,7 +470,7 @@ public class SalesforceProcessor {
 	 * Trigger the Salesforce REST API <a href=
 	 * "http://www.salesforce.com/us/developer/docs/api_rest/Content/resources_query.htm"
 	 * >Query</a> to query a number of objects of a type within a window defined
-	 * by limit and offset via the Camel SF component.
+	 * by limit and offset via the Camel SF component. Objects are ordered by ID.
 	 * 
 	 * @param creds
 	 *            Salesforce credentials
@@ -267,8 +486,14 @@ public class SalesforceProcessor {
 	 * @throws Exception
 	 */
 	public QueryRecords<?> getObjectWindows(SalesforceCredentials creds, final String objectName, final List<String> fields, int limit, int offset) throws Exception {
-
-		Map<String, Object> headers = new HashMap<String, Object>(3){
+		QueryRecords<?> query = dispatcher.request(FROM_URI_GET_OBJECT_WINDOW, windowQuery(objectName, fields, limit, offset), 
+				windowHeaders(creds, objectName, fields), QueryRecords.class);
+		debug(query);
+		return query;
+	}
+	
+	private static Map<String, Object> windowHeaders(SalesforceCredentials creds, final String objectName, final List<String> fields) {
+		return new HashMap<String, Object>(3){
 			private static final long serialVersionUID = -6937282097678143102L;
 			{
 				put(HEADER_CREDENTIALS, creds);
@@ -276,19 +501,201 @@ public class SalesforceProcessor {
 				put("fields", StringUtils.collectionToCommaDelimitedString(fields));
 			}
 		};
+	}
+	
+	private static String windowQuery(final String objectName, final List<String> fields, int limit, int offset) {
 		StringBuilder queryBuilder = new StringBuilder("SELECT ");
 		queryBuilder.append(StringUtils.collectionToCommaDelimitedString(fields))
 				.append(" FROM ").append(objectName);
 		if (limit > 0 && offset >= 0) {
+			// same order as the keyset windows, so offset and keyset pages agree
+			queryBuilder.append(" ORDER BY Id");
 			queryBuilder.append(" LIMIT ").append(limit);
 			queryBuilder.append(" OFFSET ").append(offset);
 		}
-		QueryRecords<?> query = template.requestBodyAndHeaders(FROM_COMPONENT + FROM_URI_GET_OBJECT_WINDOW, queryBuilder.toString(), 
-				headers, QueryRecords.class);
+		return queryBuilder.toString();
+	}
+	
+	/**
+	 * Trigger the Salesforce REST API <a href=
+	 * "http://www.salesforce.com/us/developer/docs/api_rest/Content/resources_query.htm"
+	 * >Query</a> to query a number of objects of a type after a given object,
+	 * using keyset pagination (WHERE Id &gt; lastId ORDER BY Id) via the Camel
+	 * SF component. Unlike
+	 * {@link #getObjectWindows(SalesforceCredentials, String, List, int, int)}
+	 * the cost of a page does not depend on its depth, and there is no
+	 * boundary on the number of objects to be skipped.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param objectName
+	 *            the object name
+	 * @param fields
+	 *            the list of fields to be retrieved, Id is always added
+	 * @param limit
+	 *            the window limit
+	 * @param lastId
+	 *            the ID of the last object of the previous window, null for
+	 *            the first window
+	 * @return the list of objects and their data, ordered by ID
+	 * @throws IllegalArgumentException if lastId is not a Salesforce ID
+	 * @throws Exception
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public QueryRecords<?> getObjectWindowAfter(SalesforceCredentials creds, final String objectName, final List<String> fields, int limit, String lastId) throws Exception {
+		Assert.isTrue(StringUtils.isEmpty(lastId) || isObjectId(lastId), 
+				String.format("Invalid object ID {%s}", lastId));
+		final List<String> selectedFields = new ArrayList<>(fields);
+		if (!selectedFields.contains("Id")) {
+			selectedFields.add(0, "Id");
+		}
+		Map<String, Object> headers = new HashMap<String, Object>(3){
+			private static final long serialVersionUID = 3128356425866398765L;
+			{
+				put(HEADER_CREDENTIALS, creds);
+				put("objectName", objectName);
+				put("fields", StringUtils.collectionToCommaDelimitedString(selectedFields));
+			}
+		};
+		StringBuilder queryBuilder = new StringBuilder("SELECT ");
+		queryBuilder.append(StringUtils.collectionToCommaDelimitedString(selectedFields))
+				.append(" FROM ").append(objectName);
+		if (!StringUtils.isEmpty(lastId)) {
+			queryBuilder.append(" WHERE Id > '").append(lastId).append("'");
+		}
+		queryBuilder.append(" ORDER BY Id");
+		if (limit > 0) {
+			queryBuilder.append(" LIMIT ").append(limit);
+		}
+		QueryRecords query = dispatcher.request(FROM_URI_GET_OBJECT_WINDOW, queryBuilder.toString(), headers, QueryRecords.class);
+		// a window larger than a query batch is split by Salesforce
+		QueryRecords<?> next = query;
+		while (next != null && !Boolean.TRUE.equals(next.getDone()) && next.getNextRecordsUrl() != null
+				&& query.getRecords() != null && (limit <= 0 || query.getRecords().size() < limit)) {
+			next = queryMore(creds, next.getNextRecordsUrl());
+			if (next != null && next.getRecords() != null) {
+				query.getRecords().addAll(next.getRecords());
+			}
+		}
 		debug(query);
 		return query;
 	}
-	
+
+	/**
+	 * Get a window of objects at a given offset, ordered by ID. The ID of the
+	 * last object of each window served is kept as a keyset cursor for
+	 * {@link #PAGE_CURSOR_TTL_MINUTES}, so reading the windows in sequence
+	 * costs one query per window whatever the offset. On a cursor miss, the
+	 * window is read with an OFFSET up to {@link #SOQL_MAX_OFFSET}, then by
+	 * seeking the ID at the offset.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param objectName
+	 *            the object name
+	 * @param fields
+	 *            the list of fields to be retrieved
+	 * @param limit
+	 *            the window limit
+	 * @param offset
+	 *            the offset of the window
+	 * @return the list of objects and their data, NULL if the offset is beyond
+	 *         the number of objects
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	public QueryRecords<?> getObjectWindowAt(SalesforceCredentials creds, final String objectName, final List<String> fields, int limit, int offset) throws Exception {
+		String lastId = offset <= 0 ? null : pageCursors.getIfPresent(cursorKey(creds, objectName, offset));
+		QueryRecords<?> query;
+		if (offset <= 0 || lastId != null) {
+			metrics.increment("window.cursor." + (lastId == null ? "first" : "hit"));
+			query = getObjectWindowAfter(creds, objectName, fields, limit, lastId);
+		} else if (offset <= SOQL_MAX_OFFSET) {
+			metrics.increment("window.cursor.miss");
+			query = getObjectWindows(creds, objectName, fields, limit, offset);
+		} else {
+			// OFFSET is capped by SOQL, translate it to a keyset cursor
+			metrics.increment("window.cursor.seek");
+			lastId = seekObjectId(creds, objectName, offset);
+			query = lastId == null ? null : getObjectWindowAfter(creds, objectName, fields, limit, lastId);
+		}
+		if (query != null && query.getRecords() != null && !query.getRecords().isEmpty()) {
+			Object last = query.getRecords().get(query.getRecords().size() - 1);
+			if (last instanceof Map && ((Map<String, ?>) last).get("Id") instanceof String) {
+				pageCursors.put(cursorKey(creds, objectName, Math.max(offset, 0) + query.getRecords().size()), 
+						(String) ((Map<String, ?>) last).get("Id"));
+			}
+		}
+		return query;
+	}
+
+	/**
+	 * @param id the value to be checked
+	 * @return whether the value is a 15 or 18 characters Salesforce ID, the
+	 *         only values accepted as keyset cursors
+	 */
+	public static boolean isObjectId(String id) {
+		return id != null && OBJECT_ID.matcher(id).matches();
+	}
+
+	private static String cursorKey(SalesforceCredentials creds, String objectName, int offset) {
+		return new StringBuilder().append(creds.fingerprint()).append(':').append(objectName)
+				.append(':').append(offset).toString();
+	}
+
+	/**
+	 * Find the ID of the object at a given position, ordered by ID. Only the
+	 * IDs are fetched, by windows of {@link #SOQL_MAX_BATCH_SIZE}, so this is
+	 * the cheapest way to translate an offset beyond {@link #SOQL_MAX_OFFSET}
+	 * to a keyset cursor.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param objectName
+	 *            the object name
+	 * @param offset
+	 *            the number of objects to skip
+	 * @return the ID of the last skipped object, null if the offset is 0 or
+	 *         beyond the number of objects
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	public String seekObjectId(SalesforceCredentials creds, final String objectName, int offset) throws Exception {
+		String lastId = null;
+		int remaining = offset;
+		while (remaining > 0) {
+			int window = Math.min(remaining, SOQL_MAX_BATCH_SIZE);
+			QueryRecords<?> ids = getObjectWindowAfter(creds, objectName, Arrays.asList("Id"), window, lastId);
+			if (ids == null || ids.getRecords() == null || ids.getRecords().size() < window) {
+				return null;
+			}
+			Map<String, ?> last = (Map<String, ?>) ids.getRecords().get(window - 1);
+			lastId = (String) last.get("Id");
+			remaining -= window;
+		}
+		return lastId;
+	}
+
+	/**
+	 * Trigger the Salesforce REST API <a href=
+	 * "http://www.salesforce.com/us/developer/docs/api_rest/Content/resources_query.htm"
+	 * >Query</a> to retrieve the next batch of a query result via the Camel SF
+	 * component, following the nextRecordsUrl cursor of the previous batch.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param nextRecordsUrl
+	 *            the cursor returned by the previous batch
+	 * @return the next batch of objects and their data
+	 * @throws Exception
+	 */
+	public QueryRecords<?> queryMore(SalesforceCredentials creds, final String nextRecordsUrl) throws Exception {
+		Assert.hasText(nextRecordsUrl, "nextRecordsUrl should not be empty");
+		QueryRecords<?> query = dispatcher.request(FROM_URI_QUERY_MORE, nextRecordsUrl, creds, QueryRecords.class);
+		debug(query);
+		return query;
+	}
+
 	/**
 	 * Temporary solutions to fetch the large amount of objects using Salesforce
 	 * <a
@@ -296,6 +703,11 @@ public class SalesforceProcessor {
 	 * >Bulk API</a>. The steps involved are: 1) Create a QUERY job 2) Create
 	 * batch 3) Check batch status until it is finished 4) Get batch result ID
 	 * list 5) Fetch result data
+	 * <p>
+	 * <b>NOTE:</b> all the result sets are kept in memory, use
+	 * {@link #bulkQueryObjects(SalesforceCredentials, String, List, int, Consumer)}
+	 * for large objects.
+	 * </p>
 	 * 
 	 * @param creds
 	 *            Salesforce credentials
@@ -311,13 +723,190 @@ public class SalesforceProcessor {
 	 * @throws Exception
 	 */
 	public QueryRecords<?> bulkQueryObjects(SalesforceCredentials creds, final String objectName, final List<String> fields, int limit) throws Exception {
-
-		//TODO: should make the whole process asynchronous
-		
 		QueryRecords<Object> tobeimported = new QueryRecords<Object>();
 		tobeimported.setRecords(new ArrayList<Object>());
-		
-		Map<String, Object> headers = new HashMap<String, Object>(3){
+		int rowCount = bulkQueryObjects(creds, objectName, fields, limit, jsonObjs -> tobeimported.getRecords().addAll(jsonObjs));
+		tobeimported.setTotalSize(rowCount);
+		return tobeimported;
+	}
+
+	/**
+	 * Streaming variant of
+	 * {@link #bulkQueryObjects(SalesforceCredentials, String, List, int)}. Each
+	 * result set of the batch is fetched, transformed and pushed to the sink
+	 * before the next one is requested, so only one result set is held in
+	 * memory at a time regardless of the object size.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param objectName
+	 *            the object name
+	 * @param fields
+	 *            the list of fields to be retrieved
+	 * @param limit
+	 *            the upper limit
+	 * @param sink
+	 *            the consumer receiving the records, one result set at a time
+	 * @return the total number of records pushed to the sink
+	 * @throws Exception
+	 */
+	public int bulkQueryObjects(SalesforceCredentials creds, final String objectName, final List<String> fields, int limit,
+			Consumer<Collection<BasicDBObject>> sink) throws Exception {
+		return bulkQueryObjects(creds, objectName, fields, limit, new BulkQueryOptions(), sink);
+	}
+
+	/**
+	 * Same as
+	 * {@link #bulkQueryObjects(SalesforceCredentials, String, List, int, Consumer)}
+	 * with tuning options.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param objectName
+	 *            the object name
+	 * @param fields
+	 *            the list of fields to be retrieved
+	 * @param limit
+	 *            the upper limit
+	 * @param options
+	 *            the tuning options of the bulk query
+	 * @param sink
+	 *            the consumer receiving the records, one result set at a time
+	 * @return the total number of records pushed to the sink
+	 * @throws Exception
+	 */
+	public int bulkQueryObjects(SalesforceCredentials creds, final String objectName, final List<String> fields, int limit,
+			BulkQueryOptions options, Consumer<Collection<BasicDBObject>> sink) throws Exception {
+		Assert.notNull(sink, "sink should not be null");
+		Map<String, Object> headers = bulkHeaders(creds, objectName, fields);
+		final boolean pkChunking = isPkChunking(options, limit);
+		JobInfo jobInfo = createQueryJob(headers, objectName, options, pkChunking);
+		try {
+			BatchInfo batchInfo = createQueryBatch(headers, bulkQuery(objectName, fields, limit), options);
+			batchInfo = await(bulkJobEngine.awaitBatch(headers, batchInfo));
+			// the downloads run on other threads, they are stopped when this one is interrupted
+			final CompletableFuture<Void> stopped = new CompletableFuture<>();
+			final CompletableFuture<Integer> fetch = fetchJobResults(creds, headers, objectName, jobInfo, batchInfo, options, pkChunking, sink, 
+					stopped::isDone);
+			try {
+				return await(fetch);
+			} catch (InterruptedException e) {
+				stopped.complete(null);
+				fetch.cancel(true);
+				throw e;
+			}
+		} finally {
+			closeJob(headers, jobInfo);
+		}
+	}
+
+	/**
+	 * Asynchronous variant of
+	 * {@link #bulkQueryObjects(SalesforceCredentials, String, List, int, Consumer)}
+	 * . The batch is tracked by the {@link SalesforceBulkJobEngine}, so no
+	 * thread is blocked while Salesforce is processing the job. Cancelling the
+	 * returned future stops the polling or the downloads at the next result
+	 * set, and closes the job.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param objectName
+	 *            the object name
+	 * @param fields
+	 *            the list of fields to be retrieved
+	 * @param limit
+	 *            the upper limit
+	 * @param sink
+	 *            the consumer receiving the records, one result set at a time
+	 * @return the future of the total number of records pushed to the sink
+	 */
+	public CompletableFuture<Integer> bulkQueryObjectsAsync(SalesforceCredentials creds, final String objectName, final List<String> fields, int limit,
+			Consumer<Collection<BasicDBObject>> sink) {
+		return bulkQueryObjectsAsync(creds, objectName, fields, limit, new BulkQueryOptions(), sink);
+	}
+
+	/**
+	 * Same as
+	 * {@link #bulkQueryObjectsAsync(SalesforceCredentials, String, List, int, Consumer)}
+	 * with tuning options.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param objectName
+	 *            the object name
+	 * @param fields
+	 *            the list of fields to be retrieved
+	 * @param limit
+	 *            the upper limit
+	 * @param options
+	 *            the tuning options of the bulk query
+	 * @param sink
+	 *            the consumer receiving the records, one result set at a time
+	 * @return the future of the total number of records pushed to the sink
+	 */
+	public CompletableFuture<Integer> bulkQueryObjectsAsync(SalesforceCredentials creds, final String objectName, final List<String> fields, int limit,
+			BulkQueryOptions options, Consumer<Collection<BasicDBObject>> sink) {
+		Assert.notNull(sink, "sink should not be null");
+		final Map<String, Object> headers = bulkHeaders(creds, objectName, fields);
+		final CompletableFuture<Integer> result = new CompletableFuture<>();
+		final BooleanSupplier cancelled = result::isCancelled;
+		final boolean pkChunking = isPkChunking(options, limit);
+		bulkJobEngine.<JobInfo>submit(() -> createQueryJob(headers, objectName, options, pkChunking))
+				.thenCompose(jobInfo -> bulkJobEngine.<BatchInfo>submit(() -> createQueryBatch(headers, bulkQuery(objectName, fields, limit), options))
+						.thenCompose(batchInfo -> cancelWith(result, bulkJobEngine.awaitBatch(headers, batchInfo)))
+						.thenCompose(batchInfo -> cancelWith(result, fetchJobResults(creds, headers, objectName, jobInfo, batchInfo, options, pkChunking, sink, cancelled)))
+						.whenComplete((rowCount, ex) -> closeJobAsync(headers, jobInfo)))
+				.whenComplete((rowCount, ex) -> {
+					if (ex != null) {
+						result.completeExceptionally(ex);
+					} else {
+						result.complete(rowCount);
+					}
+				});
+		return result;
+	}
+
+	/*
+	 * Cancel a step of the job when the caller cancels the job future, e.g.
+	 * to stop the polling of a batch
+	 */
+	private static <T> CompletableFuture<T> cancelWith(CompletableFuture<?> job, CompletableFuture<T> step) {
+		job.whenComplete((value, ex) -> {
+			if (job.isCancelled()) {
+				step.cancel(true);
+			}
+		});
+		return step;
+	}
+
+	/*
+	 * Stop the job between two result sets once it is cancelled
+	 */
+	private static void checkCancelled(BooleanSupplier cancelled, String objectName) {
+		if (cancelled.getAsBoolean()) {
+			throw new CancellationException("Bulk query on " + objectName + " is cancelled");
+		}
+	}
+
+	/*
+	 * Bulk step 4 of the asynchronous flow: nobody waits for the close, so
+	 * its failure is logged and counted rather than lost, the job would
+	 * otherwise stay open until Salesforce times it out.
+	 */
+	private void closeJobAsync(Map<String, Object> headers, JobInfo jobInfo) {
+		bulkJobEngine.<JobInfo>submit(() -> closeJob(headers, jobInfo)).whenComplete((closed, ex) -> {
+			if (ex != null) {
+				metrics.increment("bulk.job.close.failed");
+				LOG.warn("Failed to close bulk job {} on {}: {}", jobInfo.getId(), jobInfo.getObject(), ex.getMessage());
+			}
+		});
+	}
+
+	/*
+	 * Message headers shared by all the steps of a bulk job
+	 */
+	private Map<String, Object> bulkHeaders(SalesforceCredentials creds, final String objectName, final List<String> fields) {
+		return new HashMap<String, Object>(6){
 			private static final long serialVersionUID = -6937282097678143102L;
 			{
 				put(HEADER_CREDENTIALS, creds);
@@ -325,6 +914,12 @@ public class SalesforceProcessor {
 				put("fields", StringUtils.collectionToCommaDelimitedString(fields));
 			}
 		};
+	}
+
+	/*
+	 * Build the SOQL query of a bulk job
+	 */
+	private String bulkQuery(final String objectName, final List<String> fields, int limit) {
 		StringBuilder queryBuilder = new StringBuilder("SELECT ");
 		queryBuilder.append(StringUtils.collectionToCommaDelimitedString(fields))
 				.append(" FROM ").append(objectName);
@@ -334,64 +929,249 @@ public class SalesforceProcessor {
 		if (limit > 0) {
 			queryBuilder.append(" LIMIT ").append(limit);
 		}
-		
-		
-		/*
-		 * Create a QUERY job
-		 */
+		return queryBuilder.toString();
+	}
+
+	/*
+	 * PK chunking is ignored for limited queries which are small by nature
+	 */
+	private static boolean isPkChunking(BulkQueryOptions options, int limit) {
+		return options.isPkChunking() && limit <= 0;
+	}
+
+	/*
+	 * Bulk step 1: create a QUERY job, with PK chunking if requested. The
+	 * Camel route does not send the message headers as HTTP headers, so a
+	 * PK chunked job is created through the REST client, the chunking header
+	 * being set on that request only.
+	 */
+	private JobInfo createQueryJob(Map<String, Object> headers, final String objectName, BulkQueryOptions options, boolean pkChunking) throws Exception {
 		JobInfo jobInfo = new JobInfo();
         jobInfo.setOperation(OperationEnum.QUERY);
-        jobInfo.setContentType(ContentType.XML);
+        jobInfo.setContentType(options.getContentType());
         jobInfo.setObject(objectName);
-        jobInfo = template.requestBodyAndHeaders(FROM_COMPONENT + FROM_URI_CREATE_JOB, jobInfo, headers, JobInfo.class);
+        if (pkChunking) {
+        	jobInfo = restClient.createJob((SalesforceCredentials) headers.get(HEADER_CREDENTIALS), jobInfo, 
+        			Collections.singletonMap(HEADER_PK_CHUNKING, "chunkSize=" + options.getPkChunkSize()));
+        	metrics.increment("bulk.job.pkChunked");
+        } else {
+        	jobInfo = dispatcher.request(FROM_URI_CREATE_JOB, jobInfo, headers, JobInfo.class);
+        }
         LOG.debug("Import job created: " + SalesforceObjectHelper.print(jobInfo));
-		/*
-		 * Create batch
-		 */
         headers.put("jobId", jobInfo.getId());
-        headers.put("contentType", ContentType.XML.toString());
-        BatchInfo batchInfo = template.requestBodyAndHeaders(FROM_COMPONENT + FROM_URI_CREATE_BATCH, queryBuilder.toString(), headers, BatchInfo.class);
-		/*
-		 * Check batch status
-		 */
-        while (batchInfo.getState() == BatchStateEnum.IN_PROGRESS 
-        		|| batchInfo.getState() == BatchStateEnum.QUEUED) {
-        	// sleep 5 seconds
-            Thread.sleep(5000);
-        	batchInfo = template.requestBodyAndHeaders(FROM_COMPONENT + FROM_URI_CHECK_BATCH_STATUS, batchInfo, headers, BatchInfo.class);
-        }
+        return jobInfo;
+	}
+
+	/*
+	 * Bulk step 2: create the batch
+	 */
+	private BatchInfo createQueryBatch(Map<String, Object> headers, String query, BulkQueryOptions options) {
+        headers.put("contentType", options.getContentType().toString());
+        return dispatcher.request(FROM_URI_CREATE_BATCH, query, headers, BatchInfo.class);
+	}
+
+	/*
+	 * Bulk step 3: when PK chunking is enabled, Salesforce marks the original
+	 * batch as NOT_PROCESSED and spawns one batch per chunk. Track all of them
+	 * and fetch their results as they complete, one batch after the other so
+	 * the sink is never called concurrently. Otherwise simply fetch the
+	 * results of the original batch. The steps are composed as futures: no
+	 * thread waits for a batch or a download. The cancellation is checked
+	 * before each result set, cancelling the returned future stops the
+	 * polling of the chunks.
+	 */
+	@SuppressWarnings("unchecked")
+	private CompletableFuture<Integer> fetchJobResults(SalesforceCredentials creds, Map<String, Object> headers, final String objectName,
+			JobInfo jobInfo, BatchInfo batchInfo, BulkQueryOptions options, boolean pkChunking, Consumer<Collection<BasicDBObject>> sink,
+			BooleanSupplier cancelled) {
+		final CompletableFuture<Integer> done = new CompletableFuture<>();
+		final List<CompletableFuture<BatchInfo>> pending = new ArrayList<>();
+		describeObjectFuture(creds, objectName).<Integer>thenCompose(oDesc -> {
+			final Map<String, String> metadata = oDesc.getFields().stream().collect(Collectors.toMap(f -> f.getName(), f -> f.getType()));
+			if (batchInfo.getState() != BatchStateEnum.NOT_PROCESSED || !pkChunking) {
+				return fetchBatchResults(headers, objectName, batchInfo, metadata, options, sink, cancelled);
+			}
+			return dispatcher.requestAsync(FROM_URI_GET_ALL_BATCHES, jobInfo, headers, List.class).<Integer>thenCompose(allBatches -> {
+				// the result sets of a chunk are fetched once the previous chunks are
+				final Object lock = new Object();
+				final CompletableFuture<Integer>[] tail = new CompletableFuture[] { CompletableFuture.completedFuture(0) };
+				List<CompletableFuture<Void>> appended = new ArrayList<>();
+				synchronized (pending) {
+					((List<BatchInfo>) allBatches).stream()
+							.filter(chunk -> !chunk.getId().equals(batchInfo.getId()))
+							.map(chunk -> bulkJobEngine.awaitBatch(headers, chunk))
+							.forEach(pending::add);
+					if (done.isDone()) {
+						pending.forEach(future -> future.cancel(true));
+					}
+				}
+				LOG.info("Bulk query on {} is split into {} PK chunks of {} records.", objectName, pending.size(), options.getPkChunkSize());
+				for (CompletableFuture<BatchInfo> chunk : pending) {
+					appended.add(chunk.handle((chunkInfo, ex) -> {
+						synchronized (lock) {
+							tail[0] = tail[0].thenCompose(rowCount -> {
+								if (ex != null) {
+									throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+								}
+								return fetchBatchResults(headers, objectName, chunkInfo, metadata, options, sink, cancelled)
+										.thenApply(chunkRows -> rowCount + chunkRows);
+							});
+							// a failed chunk stops the polling of the others
+							tail[0].whenComplete((rowCount, failure) -> {
+								if (failure != null) {
+									done.completeExceptionally(failure);
+								}
+							});
+						}
+						return null;
+					}));
+				}
+				return CompletableFuture.allOf(appended.toArray(new CompletableFuture<?>[appended.size()])).<Integer>thenCompose(v -> {
+					synchronized (lock) {
+						return tail[0];
+					}
+				});
+			});
+		}).whenComplete((rowCount, ex) -> {
+			if (ex != null) {
+				done.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+			} else {
+				done.complete(rowCount);
+			}
+		});
+		done.whenComplete((rowCount, ex) -> {
+			synchronized (pending) {
+				pending.forEach(future -> future.cancel(true));
+			}
+		});
+		return done;
+	}
+
+	/*
+	 * Bulk step 3 (cont.): get the result IDs of the completed batch, fetch,
+	 * transform and push data. Up to options.parallelism result sets are
+	 * downloaded and parsed at the same time on the download executor, which
+	 * also bounds the number of result sets held in memory.
+	 */
+	@SuppressWarnings("unchecked")
+	private CompletableFuture<Integer> fetchBatchResults(Map<String, Object> headers, final String objectName, BatchInfo batchInfo,
+			Map<String, String> metadata, BulkQueryOptions options, Consumer<Collection<BasicDBObject>> sink, BooleanSupplier cancelled) {
         LOG.debug("Batch completed : " + SalesforceObjectHelper.print(batchInfo));
         if (batchInfo.getState() == BatchStateEnum.FAILED) {
-        	throw new Exception(String.format("Failed to create batch job due to: %s", batchInfo.getStateMessage()));
-        }
-		/*
-		 * Get batch result
-		 */
-        List<String> resultIds = template.requestBodyAndHeaders(FROM_COMPONENT + FROM_URI_GET_BATCH_RESULTS, batchInfo.getId(), headers, List.class);
-		/* 
-		 * Fetch and transform data
-		 */
-        int rowCount = 0;
-        Collection<BasicDBObject> jsonObjs = null;
-        SObjectDescription oDesc = describeObject(creds, objectName);
-        Map<String, String> metadata = oDesc.getFields().stream().collect(Collectors.toMap(f -> f.getName(), f -> f.getType()));
-        for (String resultId : resultIds) {
-        	headers.put("batchId", batchInfo.getId());
-        	long duration = System.currentTimeMillis();
-        	InputStream xmlStream = template.requestBodyAndHeaders(FROM_COMPONENT + FROM_URI_GET_BATCH_DATA, resultId, headers, InputStream.class);
-        	jsonObjs =  SalesforceObjectHelper.readSalesforceXmlStreamToMongoObject(xmlStream, metadata);
-        	duration = System.currentTimeMillis() - duration;
-        	LOG.debug("Streaming data for resultset {" + resultId + "} takes : " + (duration/1000) + " seconds");
-            rowCount += jsonObjs.size();
-            tobeimported.getRecords().addAll(jsonObjs);
+        	CompletableFuture<Integer> failed = new CompletableFuture<>();
+        	failed.completeExceptionally(new Exception(String.format("Failed to create batch job due to: %s", batchInfo.getStateMessage())));
+        	return failed;
         }
-        tobeimported.setTotalSize(rowCount);
-        /*
-         * Close job
-         */
-        jobInfo = template.requestBodyAndHeaders(FROM_COMPONENT + FROM_URI_CLOSE_JOB, jobInfo, headers, JobInfo.class);
+        final Map<String, Object> chunkHeaders = new HashMap<>(headers);
+        chunkHeaders.put("batchId", batchInfo.getId());
+        return dispatcher.requestAsync(FROM_URI_GET_BATCH_RESULTS, batchInfo.getId(), headers, List.class).thenCompose(resultIds -> {
+        	Deque<CompletableFuture<BulkResultChunk>> inFlight = new ArrayDeque<>(options.getParallelism());
+        	CompletableFuture<Integer> rowCount = drainResultChunks(((List<String>) resultIds).iterator(), inFlight, 0,
+        			resultId -> fetchResultChunk(chunkHeaders, resultId, metadata, options.getContentType()), objectName, options, sink, cancelled);
+        	rowCount.whenComplete((rows, ex) -> {
+        		if (ex != null) {
+        			inFlight.forEach(future -> future.cancel(true));
+        		}
+        	});
+        	return rowCount;
+        });
+	}
+
+	/*
+	 * Keep up to options.parallelism downloads in flight and push the next
+	 * result set to the sink once it is parsed, in the order of the result IDs
+	 * when ordered. The next step runs on the download executor, so a long
+	 * batch does not grow the stack.
+	 */
+	private CompletableFuture<Integer> drainResultChunks(Iterator<String> resultIds, Deque<CompletableFuture<BulkResultChunk>> inFlight,
+			int rowCount, Function<String, CompletableFuture<BulkResultChunk>> fetch, String objectName, BulkQueryOptions options,
+			Consumer<Collection<BasicDBObject>> sink, BooleanSupplier cancelled) {
+		try {
+			checkCancelled(cancelled, objectName);
+		} catch (CancellationException e) {
+			CompletableFuture<Integer> stopped = new CompletableFuture<>();
+			stopped.completeExceptionally(e);
+			return stopped;
+		}
+		while (resultIds.hasNext() && inFlight.size() < options.getParallelism()) {
+			inFlight.add(fetch.apply(resultIds.next()));
+		}
+		if (inFlight.isEmpty()) {
+			return CompletableFuture.completedFuture(rowCount);
+		}
+		CompletableFuture<?> ready = options.isOrdered() ? inFlight.peekFirst()
+				: CompletableFuture.anyOf(inFlight.toArray(new CompletableFuture<?>[inFlight.size()]));
+		return ready.handle((value, ex) -> null).thenComposeAsync(v -> {
+			CompletableFuture<BulkResultChunk> next = options.isOrdered() ? inFlight.peekFirst()
+					: inFlight.stream().filter(CompletableFuture::isDone).findFirst().get();
+			inFlight.remove(next);
+			BulkResultChunk chunk = next.join();
+			int rows = 0;
+			if (chunk.records != null) {
+				rows = chunk.records.size();
+				sink.accept(chunk.records);
+			}
+			return drainResultChunks(resultIds, inFlight, rowCount + rows, fetch, objectName, options, sink, cancelled);
+		}, bulkJobEngine.getDownloadExecutor());
+	}
+
+	/*
+	 * Download and parse one result set of a batch, the data stream is parsed
+	 * on the download executor. Timings and throughput are recorded per
+	 * content type, so that XML and CSV jobs can be compared side by side.
+	 */
+	private CompletableFuture<BulkResultChunk> fetchResultChunk(Map<String, Object> headers, String resultId, Map<String, String> metadata, 
+			ContentType contentType) {
+		final long start = System.currentTimeMillis();
+		return dispatcher.requestAsync(FROM_URI_GET_BATCH_DATA, resultId, headers, InputStream.class).thenApplyAsync(dataStream -> {
+			BulkResultChunk chunk = new BulkResultChunk();
+			long fetched = System.currentTimeMillis();
+			if (contentType == ContentType.CSV) {
+				chunk.records = SalesforceObjectHelper.streamSalesforceCsvToMongoObject(dataStream, metadata);
+			} else {
+				chunk.records = SalesforceObjectHelper.streamSalesforceXmlToMongoObject(dataStream, metadata);
+			}
+			long parsed = System.currentTimeMillis();
+			int rows = chunk.records == null ? 0 : chunk.records.size();
+			String format = contentType.toString().toLowerCase();
+			metrics.record("bulk.chunk.fetch." + format, fetched - start);
+			metrics.record("bulk.chunk.parse." + format, parsed - fetched);
+			metrics.add("bulk.chunk.rows." + format, rows);
+			LOG.debug("Streaming {" + format + "} data for resultset {" + resultId + "} of {" + rows + "} rows takes : " + (fetched - start)
+					+ " m-seconds to fetch, " + (parsed - fetched) + " m-seconds to parse ("
+					+ (rows * 1000L / Math.max(1, parsed - fetched)) + " rows/second)");
+			return chunk;
+		}, bulkJobEngine.getDownloadExecutor());
+	}
+
+	/*
+	 * One parsed result set of a batch
+	 */
+	private static class BulkResultChunk {
+		Collection<BasicDBObject> records;
+	}
+
+	/*
+	 * Bulk step 4: close the job
+	 */
+	private JobInfo closeJob(Map<String, Object> headers, JobInfo jobInfo) {
+        jobInfo = dispatcher.request(FROM_URI_CLOSE_JOB, jobInfo, headers, JobInfo.class);
         LOG.debug("Import job completed : " + SalesforceObjectHelper.print(jobInfo));
-		return tobeimported;
+        return jobInfo;
+	}
+
+	/*
+	 * Wait for a future and rethrow the cause of its failure
+	 */
+	private static <T> T await(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof Exception) {
+				throw (Exception) ee.getCause();
+			}
+			throw ee;
+		}
 	}
 	
 	/**
@@ -413,7 +1193,7 @@ public class SalesforceProcessor {
 		if (reportName != null && !"".equals(reportName)) {
 			query.append(" AND Name LIKE '%").append(reportName).append("%'");
 		}
-		QueryRecords<?> queryResult = template.requestBodyAndHeader(FROM_COMPONENT + FROM_URI_LIST_REPORTS, query.toString(), HEADER_CREDENTIALS, creds, QueryRecords.class);
+		QueryRecords<?> queryResult = dispatcher.request(FROM_URI_LIST_REPORTS, query.toString(), creds, QueryRecords.class);
 		debug(queryResult);
 		return queryResult.getRecords().stream()
 				.map(o -> (LinkedHashMap)o).collect(Collectors.toList());
@@ -433,38 +1213,60 @@ public class SalesforceProcessor {
 	 */	
 	@SuppressWarnings("unchecked")
 	public Map<String, ?> describeReport(SalesforceCredentials creds, String reportId) throws Exception {
-		Map<String, ?> reportMetadata =  template.requestBodyAndHeader(FROM_COMPONENT + FROM_URI_DESCRIBE_REPORT,
-				reportId, HEADER_CREDENTIALS, creds, Map.class);
+		Map<String, ?> reportMetadata =  dispatcher.request(FROM_URI_DESCRIBE_REPORT, reportId, creds, Map.class);
 		debug(reportMetadata);
 		return reportMetadata;
 	}
 
+	/**
+	 * Get the metadata of a report from an asynchronous report instance run by
+	 * the {@link SalesforceReportExecutor}, a fresh enough instance being
+	 * reused.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param reportId
+	 *            the ID of the report to inspect
+	 * @return the JSON structure in the form of Map
+	 * @throws Exception
+	 */
 	public Map<String, ?> describeReportAsync(SalesforceCredentials creds, String reportId) throws Exception {
-		final Map<String, Object> headers = new HashMap<String, Object>(3){
-			{
-				put(HEADER_CREDENTIALS, creds);
-				put("includeDetails", false);
-				put("reportId", reportId);
-			}
-		};
-		Map<String, ?> instanceList = (Map<String, ?>) template.requestBodyAndHeaders(FROM_COMPONENT + FROM_URI_CREATE_REPORT_INSTANCE, reportId, headers);
-		Assert.notNull(instanceList, "Report instance list must not be empty.");
-		String instanceId = (String) instanceList.get("id");
-		int attempt = 1;
-		Map<String, ?> metadata = null;
-		do {
-			LOG.debug("Getting metadata for report {}, attempt #{}...", reportId, attempt);
-			metadata = SalesforceObjectHelper.readJsonFromStream(
-					template.requestBodyAndHeaders(FROM_COMPONENT + FROM_URI_GET_INSTANCE_DATA, instanceId, headers, InputStream.class));
-			if (metadata != null && metadata.containsKey("factMap") && metadata.containsKey("reportExtendedMetadata")) {
-				attempt = 4; // immediate exit
-			} else {
-				Thread.sleep(500);
-				attempt++;
-			}
-		} while (attempt <= 3);
-		debug(metadata);
-		return metadata;
+		return join(describeReportFuture(creds, reportId));
+	}
+	
+	/**
+	 * Get the data of a report from an asynchronous report instance run by the
+	 * {@link SalesforceReportExecutor}, which Salesforce throttles less than
+	 * {@link #getReportData(SalesforceCredentials, String, boolean)}.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param reportId
+	 *            the ID of the report to get
+	 * @param includeDetails
+	 *            whether the detail rows are included
+	 * @return an input stream containing the JSON structure of the report data
+	 * @throws Exception
+	 */
+	public InputStream executeReport(SalesforceCredentials creds, String reportId, boolean includeDetails) throws Exception {
+		return join(reportExecutor.execute(creds, reportId, includeDetails));
+	}
+	
+	/**
+	 * Get all the detail rows of a report. Unlike
+	 * {@link #executeReport(SalesforceCredentials, String, boolean)}, whose
+	 * detail rows are capped by Salesforce, a truncated report is split into
+	 * date ranges by the {@link SalesforceReportPartitioner}.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param reportId
+	 *            the ID of the report to get
+	 * @return the rows of the report, NULL if the report data could not be parsed
+	 * @throws Exception
+	 */
+	public Collection<BasicDBObject> extractReport(SalesforceCredentials creds, String reportId) throws Exception {
+		return join(reportPartitioner.extract(creds, reportId));
 	}
 	
 	
@@ -488,8 +1290,7 @@ public class SalesforceProcessor {
 				put("includeDetails", includeDetails);
 			}
 		};
-		return template.requestBodyAndHeaders(FROM_COMPONENT + FROM_URI_GET_REPORT_DATA,
-				reportId, headers, InputStream.class);
+		return dispatcher.request(FROM_URI_GET_REPORT_DATA, reportId, headers, InputStream.class);
 	}
 
 	@Deprecated
@@ -501,13 +1302,13 @@ public class SalesforceProcessor {
 				put("reportId", reportId);
 			}
 		};
-		List<Map<String, ?>> instanceList = (List<Map<String, ?>>) template.requestBodyAndHeaders(FROM_COMPONENT + FROM_URI_CREATE_REPORT_INSTANCE, reportId, headers);
+		List<Map<String, ?>> instanceList = (List<Map<String, ?>>) dispatcher.request(FROM_URI_CREATE_REPORT_INSTANCE, reportId, headers);
 		Assert.notEmpty(instanceList, "Report instance list must not be empty.");
 		Function<String, Map<String, ?>> getInstanceDataFunction = (instanceId) -> {
 			int retry = 3;
 			Map<String, ?> metadata = null;
 			do {
-				metadata = SalesforceObjectHelper.readJsonFromStream(template.requestBodyAndHeaders(FROM_COMPONENT + FROM_URI_GET_INSTANCE_DATA, instanceId, headers, InputStream.class));
+				metadata = SalesforceObjectHelper.readJsonFromStream(dispatcher.request(FROM_URI_GET_INSTANCE_DATA, instanceId, headers, InputStream.class));
 				if (metadata != null && metadata.containsKey("factMap") && metadata.containsKey("reportExtendedMetadata")) {
 					retry = 0; // immediate exit
 				} else {
@@ -527,6 +1328,209 @@ public class SalesforceProcessor {
 	}
 	
 	
+	/**
+	 * Non-blocking counterpart of {@link #getVersions(SalesforceCredentials)}:
+	 * no thread is held while the request is in flight.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @return the future of the list of Salesforce versions
+	 */
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<Collection<Version>> getVersionsFuture(SalesforceCredentials creds) {
+		return dispatcher.requestAsync(FROM_URI_GET_VERSIONS, null, creds, Object.class)
+				.handle((o, ex) -> {
+					if (ex != null) {
+						LOG.warn("User failed to log in to Salesforce account using the provided credentials.", ex);
+						// release the resource, never from the thread of the response
+						bulkJobEngine.submit(() -> {
+							metadataCache.invalidate(creds);
+							template.sendBodyAndHeader(FROM_COMPONENT + FROM_URI_FAILED_LOGIN, null, HEADER_CREDENTIALS, creds);
+							return null;
+						});
+						throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+					}
+					Collection<Version> versions = o instanceof Versions ? ((Versions) o).getVersions() : (List<Version>) o;
+					debug(versions);
+					return versions;
+				});
+	}
+	
+	/**
+	 * Non-blocking counterpart of
+	 * {@link #describeObject(SalesforceCredentials, String)}, sharing the same
+	 * cache.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param objectName
+	 *            the SObject to be described
+	 * @return the future of the description object
+	 */
+	public CompletableFuture<SObjectDescription> describeObjectFuture(SalesforceCredentials creds, final String objectName) {
+		Assert.notNull(objectName, "objectName should not be null");
+		SObjectDescription cached = metadataCache.getDescriptionIfPresent(creds, objectName);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		return dispatcher.requestAsync(FROM_URI_GET_DESCRIPTION, objectName, creds, SObjectDescription.class)
+				.thenApply(objectDescription -> {
+					metadataCache.putDescription(creds, objectName, objectDescription);
+					debug(objectDescription);
+					return objectDescription;
+				});
+	}
+	
+	/**
+	 * Non-blocking counterpart of
+	 * {@link #countObject(SalesforceCredentials, String)}
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param objectName
+	 *            the SObject to be counted
+	 * @return the future of the number of records
+	 */
+	public CompletableFuture<Integer> countObjectFuture(SalesforceCredentials creds, final String objectName) {
+		Assert.notNull(objectName, "objectName should not be null");
+		return dispatcher.requestAsync(FROM_URI_COUNT_OBJECTS, objectName, creds, QueryRecords.class)
+				.thenApply(queryResult -> {
+					debug(queryResult);
+					return queryResult.getTotalSize();
+				});
+	}
+	
+	/**
+	 * Non-blocking counterpart of
+	 * {@link #getObjectWindows(SalesforceCredentials, String, List, int, int)}
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param objectName
+	 *            the object name
+	 * @param fields
+	 *            the list of fields to be retrieved
+	 * @param limit
+	 *            the window limit
+	 * @param offset
+	 *            the offset of the window
+	 * @return the future of the list of objects and their data
+	 */
+	public CompletableFuture<QueryRecords<?>> getObjectWindowsFuture(SalesforceCredentials creds, final String objectName, final List<String> fields, int limit, int offset) {
+		return dispatcher.requestAsync(FROM_URI_GET_OBJECT_WINDOW, windowQuery(objectName, fields, limit, offset), 
+				windowHeaders(creds, objectName, fields), QueryRecords.class)
+				.thenApply(query -> {
+					debug(query);
+					return (QueryRecords<?>) query;
+				});
+	}
+	
+	/**
+	 * Non-blocking counterpart of
+	 * {@link #describeReport(SalesforceCredentials, String)}: the report is
+	 * described without being run, so the response has no fact map.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param reportId
+	 *            the ID of the report to inspect
+	 * @return the future of the JSON structure in the form of Map
+	 */
+	public CompletableFuture<Map<String, ?>> describeReportMetadataFuture(SalesforceCredentials creds, String reportId) {
+		return dispatcher.requestAsync(FROM_URI_DESCRIBE_REPORT, reportId, creds, Object.class)
+				.thenApply(description -> {
+					Map<String, ?> reportMetadata = toJsonMap(description);
+					debug(reportMetadata);
+					return reportMetadata;
+				});
+	}
+	
+	/**
+	 * Non-blocking counterpart of
+	 * {@link #describeReportAsync(SalesforceCredentials, String)}: the report
+	 * instance is polled from a scheduler instead of a sleeping thread.
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param reportId
+	 *            the ID of the report to inspect
+	 * @return the future of the JSON structure in the form of Map
+	 */
+	public CompletableFuture<Map<String, ?>> describeReportFuture(SalesforceCredentials creds, String reportId) {
+		return reportExecutor.execute(creds, reportId, false)
+				.thenApplyAsync(stream -> {
+					Map<String, ?> metadata = SalesforceObjectHelper.readJsonFromStream(stream);
+					debug(metadata);
+					return metadata;
+				}, bulkJobEngine.getDownloadExecutor());
+	}
+	
+	/**
+	 * Non-blocking counterpart of
+	 * {@link #executeReport(SalesforceCredentials, String, boolean)}
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param reportId
+	 *            the ID of the report to get
+	 * @param includeDetails
+	 *            whether the detail rows are included
+	 * @return the future of an input stream containing the JSON structure of
+	 *         the report data
+	 */
+	public CompletableFuture<InputStream> executeReportFuture(SalesforceCredentials creds, String reportId, boolean includeDetails) {
+		return reportExecutor.execute(creds, reportId, includeDetails);
+	}
+	
+	/**
+	 * Non-blocking counterpart of
+	 * {@link #getReportData(SalesforceCredentials, String, boolean)}
+	 * 
+	 * @param creds
+	 *            Salesforce credentials
+	 * @param reportId
+	 *            the ID of the report to get
+	 * @param includeDetails
+	 *            whether the detail rows are included
+	 * @return the future of an input stream containing the JSON structure of
+	 *         the report data
+	 */
+	public CompletableFuture<InputStream> getReportDataFuture(SalesforceCredentials creds, String reportId, boolean includeDetails) {
+		final Map<String, Object> headers = new HashMap<>(3);
+		headers.put(HEADER_CREDENTIALS, creds);
+		headers.put("includeDetails", includeDetails);
+		return dispatcher.requestAsync(FROM_URI_GET_REPORT_DATA, reportId, headers, InputStream.class);
+	}
+	
+	/*
+	 * Convert a response of the Reporting API to a JSON structure, whether
+	 * it is a DTO, a map or a raw payload
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, ?> toJsonMap(Object response) {
+		if (response == null || response instanceof Map) {
+			return (Map<String, ?>) response;
+		}
+		if (response instanceof InputStream) {
+			return SalesforceObjectHelper.readJsonFromStream((InputStream) response);
+		}
+		return SalesforceObjectHelper.convertJson(response, Map.class);
+	}
+	
+	/*
+	 * Wait for a future, rethrowing its failure as is
+	 */
+	private static <T> T join(CompletableFuture<T> future) throws Exception {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+	
 	/**
 	 * For debugging purpose only. Print out the pretty JSON data of the object
 	 * 
@@ -0,0 +1,294 @@
+package com.github.deeprot.integration.camel;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.camel.component.salesforce.SalesforceComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
+import com.github.deeprot.integration.camel.router.DynamicSalesforceComponentRouter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Per-tenant governor of the Salesforce API calls: a token bucket smooths the
+ * bursts and a semaphore caps the concurrent requests of each credentials.
+ * <p>
+ * The governor is fed by the <i>Sforce-Limit-Info</i> response header
+ * (api-usage=used/max over the last 24 hours) of the org: the rate is lowered
+ * as the daily allowance runs out, and the requests are refused once only the
+ * reserve is left, so a metadata scan never exhausts the allowance of an org.
+ * </p>
+ * The blocking {@link #acquire(SalesforceCredentials)} is meant for the
+ * synchronous requests only, the asynchronous requests wait for their permit
+ * with {@link #acquireAsync(SalesforceCredentials)}, which holds no thread.
+ * A permit is released to the tenant it was taken from, even if that tenant
+ * expired in the meantime.
+ * 
+ * @author bruce.nguyen
+ *
+ */
+@Component
+public class SalesforceRateGovernor {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SalesforceRateGovernor.class);
+
+	public static final String HEADER_LIMIT_INFO = "Sforce-Limit-Info";
+	public static final double PERMITS_PER_SECOND = 20.0;
+	public static final double MIN_PERMITS_PER_SECOND = 0.5;
+	public static final int MAX_CONCURRENT_REQUESTS = 10;
+	public static final long PERMIT_TIMEOUT = 5; // minutes
+	public static final long MIN_PERMIT_RETRY_INTERVAL = 50; // milliseconds
+	public static final long MAX_PERMIT_RETRY_INTERVAL = 1_000; // milliseconds
+	/*
+	 * Below this ratio of the daily allowance the rate is lowered
+	 * proportionally, below the reserve the requests are refused
+	 */
+	public static final double THROTTLE_RATIO = 0.2;
+	public static final double RESERVE_RATIO = 0.05;
+	private static final long TENANT_EXPIRY = 60; // minutes
+	private static final Pattern API_USAGE = Pattern.compile("(?:^|[;,\\s])api-usage=(\\d+)/(\\d+)");
+
+	@Autowired
+	DynamicSalesforceComponentRouter router;
+
+	@Autowired
+	SalesforceMetrics metrics;
+
+	final Cache<SalesforceCredentials, Tenant> tenants = CacheBuilder.newBuilder()
+			.expireAfterAccess(TENANT_EXPIRY, TimeUnit.MINUTES)
+			.<SalesforceCredentials, Tenant>build();
+	/*
+	 * Last known API usage, keyed by org ID
+	 */
+	private final Cache<String, long[]> usages = CacheBuilder.newBuilder()
+			.expireAfterWrite(TENANT_EXPIRY, TimeUnit.MINUTES)
+			.<String, long[]>build();
+
+	/*
+	 * Timer of the asynchronous permit requests, the tasks must be short: not
+	 * the shared executor, a permit must not wait behind the requests
+	 */
+	private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+			new ThreadFactoryBuilder().setNameFormat("sf-governor-%d").setDaemon(true).build());
+
+	@PostConstruct
+	public void listenToLimitInfo() {
+		router.setLimitInfoListener(this::updateUsage);
+	}
+
+	@PostConstruct
+	public void registerGauges() {
+		metrics.gauges("executor.governor", scheduler);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * Wait for a permit of the tenant, to be closed once the request
+	 * completed. The calling thread is blocked while waiting.
+	 * 
+	 * @param creds Salesforce credentials
+	 * @return the permit
+	 * @throws RejectedExecutionException if the daily allowance of the org
+	 *             reached its reserve, or no permit was available in time
+	 */
+	public Permit acquire(SalesforceCredentials creds) {
+		Tenant tenant = tenant(creds);
+		adapt(creds, tenant);
+		double waited = tenant.limiter.acquire();
+		if (waited > 0) {
+			metrics.record("governor.throttled", (long) (waited * 1000));
+		}
+		try {
+			if (!tenant.permits.tryAcquire(PERMIT_TIMEOUT, TimeUnit.MINUTES)) {
+				metrics.increment("governor.rejected.concurrency");
+				throw new RejectedExecutionException("No Salesforce request permit available for " + creds.getEmail());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted while waiting for a Salesforce request permit", e);
+		}
+		return new Permit(tenant);
+	}
+
+	/**
+	 * Take a permit of the tenant if one is available right away, to be
+	 * closed once the request completed.
+	 * 
+	 * @param creds Salesforce credentials
+	 * @return the permit, NULL if none was available
+	 * @throws RejectedExecutionException if the daily allowance of the org
+	 *             reached its reserve
+	 */
+	public Permit tryAcquire(SalesforceCredentials creds) {
+		Tenant tenant = tenant(creds);
+		adapt(creds, tenant);
+		if (!tenant.permits.tryAcquire()) {
+			return null;
+		}
+		if (!tenant.limiter.tryAcquire()) {
+			tenant.permits.release();
+			return null;
+		}
+		return new Permit(tenant);
+	}
+
+	/**
+	 * Wait for a permit of the tenant without holding any thread: the permit
+	 * is requested again from the timer of the governor, with a growing
+	 * interval, until it is taken or {@link #PERMIT_TIMEOUT} elapsed.
+	 * 
+	 * @param creds Salesforce credentials
+	 * @return the future of the permit, to be closed once the request
+	 *         completed; failed with a {@link RejectedExecutionException} like
+	 *         {@link #acquire(SalesforceCredentials)}
+	 */
+	public CompletableFuture<Permit> acquireAsync(SalesforceCredentials creds) {
+		CompletableFuture<Permit> permit = new CompletableFuture<>();
+		acquireAsync(creds, permit, System.currentTimeMillis(), MIN_PERMIT_RETRY_INTERVAL);
+		return permit;
+	}
+
+	private void acquireAsync(SalesforceCredentials creds, CompletableFuture<Permit> permit, long since, long interval) {
+		try {
+			long waited = System.currentTimeMillis() - since;
+			Permit taken = tryAcquire(creds);
+			if (taken != null) {
+				if (waited > 0) {
+					metrics.record("governor.throttled", waited);
+				}
+				permit.complete(taken);
+			} else if (waited >= TimeUnit.MINUTES.toMillis(PERMIT_TIMEOUT)) {
+				metrics.increment("governor.rejected.concurrency");
+				throw new RejectedExecutionException("No Salesforce request permit available for " + creds.getEmail());
+			} else {
+				scheduler.schedule(() -> acquireAsync(creds, permit, since, Math.min(MAX_PERMIT_RETRY_INTERVAL, interval * 2)), 
+						interval, TimeUnit.MILLISECONDS);
+			}
+		} catch (RejectedExecutionException e) {
+			permit.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Update the API usage of an org from a <i>Sforce-Limit-Info</i> header
+	 * 
+	 * @param orgId the org ID
+	 * @param limitInfo the value of the header, e.g. "api-usage=25/15000"
+	 */
+	public void updateUsage(String orgId, String limitInfo) {
+		if (orgId == null || limitInfo == null) {
+			return;
+		}
+		Matcher matcher = API_USAGE.matcher(limitInfo);
+		if (matcher.find()) {
+			usages.put(orgId, new long[] { Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)) });
+		}
+	}
+
+	/**
+	 * Extract the org ID from an access token, which starts with it
+	 * 
+	 * @param accessToken the access token, with or without its scheme
+	 * @return the org ID, NULL if unknown
+	 */
+	public static String orgId(String accessToken) {
+		if (accessToken == null) {
+			return null;
+		}
+		int start = accessToken.indexOf(' ') + 1;
+		int end = accessToken.indexOf('!', start);
+		return end > start ? accessToken.substring(start, end) : null;
+	}
+
+	/*
+	 * Lower the rate of the tenant as the daily allowance of its org runs out
+	 */
+	private void adapt(SalesforceCredentials creds, Tenant tenant) {
+		if (tenant.orgId == null) {
+			tenant.orgId = resolveOrgId(creds);
+		}
+		long[] usage = tenant.orgId == null ? null : usages.getIfPresent(tenant.orgId);
+		if (usage == null || usage[1] <= 0) {
+			return;
+		}
+		double remaining = (double) (usage[1] - usage[0]) / usage[1];
+		if (remaining <= RESERVE_RATIO) {
+			metrics.increment("governor.rejected.allowance");
+			throw new RejectedExecutionException(String.format("Daily API allowance of org %s reached its reserve (%d/%d)", 
+					tenant.orgId, usage[0], usage[1]));
+		}
+		double rate = remaining >= THROTTLE_RATIO ? PERMITS_PER_SECOND 
+				: Math.max(MIN_PERMITS_PER_SECOND, PERMITS_PER_SECOND * remaining / THROTTLE_RATIO);
+		if (Math.abs(tenant.limiter.getRate() - rate) > 0.01) {
+			LOG.debug("API usage of org {} is {}/{}, rate is set to {} requests per second.", tenant.orgId, usage[0], usage[1], rate);
+			tenant.limiter.setRate(rate);
+		}
+	}
+
+	/*
+	 * The org ID of the tenant, known once its component logged in
+	 */
+	String resolveOrgId(SalesforceCredentials creds) {
+		SalesforceComponent component = router.getComponentIfStarted(creds);
+		return component == null ? null : orgId(component.getSession().getAccessToken());
+	}
+
+	private Tenant tenant(SalesforceCredentials creds) {
+		try {
+			return tenants.get(creds, Tenant::new);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/*
+	 * Token bucket and concurrency cap of a tenant
+	 */
+	private static class Tenant {
+		final RateLimiter limiter = RateLimiter.create(PERMITS_PER_SECOND);
+		final Semaphore permits = new Semaphore(MAX_CONCURRENT_REQUESTS);
+		volatile String orgId;
+	}
+
+	/**
+	 * Permit of a request, released once to the tenant it was taken from: the
+	 * tenant of the credentials may have expired and been created again in
+	 * the meantime, its concurrency cap must not be raised by the release.
+	 */
+	public static final class Permit implements AutoCloseable {
+		private final Tenant tenant;
+		private final AtomicInteger released = new AtomicInteger();
+
+		private Permit(Tenant tenant) {
+			this.tenant = tenant;
+		}
+
+		@Override
+		public void close() {
+			if (released.compareAndSet(0, 1)) {
+				tenant.permits.release();
+			}
+		}
+	}
+}
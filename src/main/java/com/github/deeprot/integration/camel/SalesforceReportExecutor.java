@@ -0,0 +1,408 @@
+package com.github.deeprot.integration.camel;
+
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_CREATE_REPORT_INSTANCE;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_INSTANCE_DATA;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.HEADER_CREDENTIALS;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.camel.component.salesforce.api.SalesforceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
+import com.github.deeprot.integration.helper.SalesforceObjectHelper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Non-blocking executor of the Salesforce <a href=
+ * "https://developer.salesforce.com/docs/atlas.en-us.api_analytics.meta/api_analytics/sforce_analytics_rest_api_instances_resource.htm"
+ * >asynchronous report instances</a>, which Salesforce throttles far less
+ * than the synchronous report runs.
+ * <ul>
+ * <li>the instances are polled from the scheduler of the
+ * {@link SalesforceBulkJobEngine} with an adaptive backoff and the async
+ * requests of the {@link SalesforceRestClient}, no thread is held while a
+ * report is running. A poll only reads the small instance list of the report,
+ * the data of an instance is downloaded once, when it succeeded;</li>
+ * <li>the last completed instance of a report is reused as long as it is
+ * fresher than {@link #INSTANCE_TTL_MINUTES}, and concurrent requests of the
+ * same report share a single run;</li>
+ * <li>at most {@link #MAX_INSTANCES_PER_ORG} instances run at the same time
+ * per credentials, the others wait in a queue. The slots of credentials
+ * having no running instance are dropped.</li>
+ * <li>an instance may run with a modified report metadata, e.g. additional
+ * filters, which the Camel component does not support: such an instance is
+ * created through the {@link SalesforceRestClient} and is never reused.</li>
+ * </ul>
+ * 
+ * @author bruce.nguyen
+ *
+ */
+@Component
+public class SalesforceReportExecutor {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SalesforceReportExecutor.class);
+
+	public static final int MAX_INSTANCES_PER_ORG = 5;
+	public static final long INSTANCE_TTL_MINUTES = 15;
+	public static final long MIN_POLL_INTERVAL = 500; // milliseconds
+	public static final long MAX_POLL_INTERVAL = 10_000; // milliseconds
+	public static final double POLL_BACKOFF_FACTOR = 1.5;
+	public static final long MAX_RUN_DURATION = 10 * 60_000; // 10 minutes
+	public static final String STATUS_SUCCESS = "Success";
+	public static final String STATUS_ERROR = "Error";
+
+	@Autowired
+	SalesforceDispatcher dispatcher;
+
+	@Autowired
+	SalesforceBulkJobEngine bulkJobEngine;
+
+	@Autowired
+	SalesforceRestClient restClient;
+
+	@Autowired
+	SalesforceMetrics metrics;
+
+	@Value("${salesforce.report.maxInstancesPerOrg:" + MAX_INSTANCES_PER_ORG + "}")
+	int maxInstancesPerOrg = MAX_INSTANCES_PER_ORG;
+
+	@Value("${salesforce.report.instanceTtlMinutes:" + INSTANCE_TTL_MINUTES + "}")
+	long instanceTtlMinutes = INSTANCE_TTL_MINUTES;
+
+	/*
+	 * Completed instances, keyed by credentials fingerprint, report ID and details flag
+	 */
+	private Cache<String, String> completedInstances;
+	/*
+	 * Runs in progress, shared by the concurrent requests of a report
+	 */
+	private final ConcurrentMap<String, CompletableFuture<byte[]>> runningReports = new ConcurrentHashMap<>();
+	/*
+	 * Instance slots, keyed by credentials fingerprint
+	 */
+	private final ConcurrentMap<Long, InstanceSlots> slots = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void init() {
+		completedInstances = CacheBuilder.newBuilder()
+				.expireAfterWrite(instanceTtlMinutes, TimeUnit.MINUTES)
+				.<String, String>build();
+		metrics.gauge("report.instance.running", () -> slots.values().stream().mapToInt(InstanceSlots::getUsed).sum());
+		metrics.gauge("report.instance.queued", () -> slots.values().stream().mapToInt(InstanceSlots::getQueued).sum());
+		metrics.gauge("report.instance.orgs", slots::size);
+	}
+
+	/**
+	 * Get the data of a report from a completed instance: a fresh enough
+	 * instance is reused, otherwise a new instance is run.
+	 * 
+	 * @param creds Salesforce credentials
+	 * @param reportId the ID of the report
+	 * @param includeDetails whether the detail rows are included
+	 * @return the future of an input stream containing the JSON structure of
+	 *         the report instance data
+	 */
+	public CompletableFuture<InputStream> execute(SalesforceCredentials creds, String reportId, boolean includeDetails) {
+		Assert.notNull(reportId, "reportId should not be null");
+		final String key = new StringBuilder().append(creds.fingerprint()).append(':').append(reportId)
+				.append(':').append(includeDetails).toString();
+		CompletableFuture<byte[]> run = runningReports.get(key);
+		if (run != null) {
+			metrics.increment("report.instance.shared");
+		} else {
+			CompletableFuture<byte[]> newRun = new CompletableFuture<>();
+			run = runningReports.putIfAbsent(key, newRun);
+			if (run == null) {
+				run = newRun;
+				start(key, headers(creds, reportId, includeDetails)).whenComplete((data, failure) -> {
+					runningReports.remove(key, newRun);
+					if (failure != null) {
+						newRun.completeExceptionally(failure);
+					} else {
+						newRun.complete(data);
+					}
+				});
+			}
+		}
+		// each caller reads its own stream of the shared data
+		return run.thenApply(ByteArrayInputStream::new);
+	}
+
+	/**
+	 * Get the data of a report run with a modified report metadata, e.g. with
+	 * additional filters. A new instance is always run, in the instance slots
+	 * of the org.
+	 * 
+	 * @param creds Salesforce credentials
+	 * @param reportId the ID of the report
+	 * @param includeDetails whether the detail rows are included
+	 * @param reportMetadata the report metadata overriding the saved one
+	 * @return the future of an input stream containing the JSON structure of
+	 *         the report instance data
+	 */
+	public CompletableFuture<InputStream> execute(SalesforceCredentials creds, String reportId, boolean includeDetails,
+			Map<String, ?> reportMetadata) {
+		Assert.notNull(reportId, "reportId should not be null");
+		Assert.notNull(reportMetadata, "reportMetadata should not be null");
+		final String resource = new StringBuilder("analytics/reports/").append(reportId)
+				.append("/instances?includeDetails=").append(includeDetails).toString();
+		final String body;
+		try {
+			body = SalesforceObjectHelper.writeJson(Collections.singletonMap("reportMetadata", reportMetadata));
+		} catch (IOException e) {
+			throw new IllegalArgumentException(String.format("Invalid report metadata of report %s", reportId), e);
+		}
+		return run(null, headers(creds, reportId, includeDetails), () -> restClient.postAsync(creds, restClient.dataPath(creds, resource), body)
+				.thenApply(response -> (String) readJson(response, Map.class).get("id")))
+				.thenApply(ByteArrayInputStream::new);
+	}
+
+	/**
+	 * Forget the completed instances of a report, e.g. after it was modified
+	 * 
+	 * @param creds Salesforce credentials
+	 * @param reportId the ID of the report
+	 */
+	public void invalidate(SalesforceCredentials creds, String reportId) {
+		final String prefix = new StringBuilder().append(creds.fingerprint()).append(':').append(reportId).append(':').toString();
+		completedInstances.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+	}
+
+	/*
+	 * Reuse the completed instance of the report if any, run a new one otherwise
+	 */
+	CompletableFuture<byte[]> start(String key, Map<String, Object> headers) {
+		String instanceId = completedInstances.getIfPresent(key);
+		if (instanceId == null) {
+			return run(key, headers);
+		}
+		return status(headers, instanceId)
+				.handle((status, failure) -> failure == null && STATUS_SUCCESS.equals(status))
+				.thenCompose(available -> {
+					if (available) {
+						metrics.increment("report.instance.reused");
+						return fetch(headers, instanceId);
+					}
+					// purged by Salesforce in the meantime
+					completedInstances.invalidate(key);
+					return run(key, headers);
+				});
+	}
+
+	/*
+	 * Run a new instance of the saved report
+	 */
+	private CompletableFuture<byte[]> run(String key, Map<String, Object> headers) {
+		return run(key, headers, () -> dispatcher.requestAsync(FROM_URI_CREATE_REPORT_INSTANCE, headers.get("reportId"), headers, Map.class)
+				.thenApply(instance -> {
+					Assert.notNull(instance, "Report instance must not be empty.");
+					return (String) instance.get("id");
+				}));
+	}
+
+	/*
+	 * Run a new instance once a slot of the org is free, the completed
+	 * instance is cached unless the key is NULL
+	 */
+	private CompletableFuture<byte[]> run(String key, Map<String, Object> headers, Supplier<CompletableFuture<String>> creator) {
+		final SalesforceCredentials creds = (SalesforceCredentials) headers.get(HEADER_CREDENTIALS);
+		final long queuedAt = System.currentTimeMillis();
+		return acquireSlot(creds).thenCompose(v -> {
+			final long duration = System.currentTimeMillis();
+			metrics.record("report.instance.queue", duration - queuedAt);
+			metrics.increment("report.instance.created");
+			// a creator failing right away fails the run, the slot is released
+			CompletableFuture<byte[]> run = CompletableFuture.completedFuture(null).thenCompose(created -> creator.get())
+					.thenCompose(instanceId -> {
+						Assert.notNull(instanceId, "Report instance ID must not be empty.");
+						return poll(headers, instanceId, MIN_POLL_INTERVAL, duration + MAX_RUN_DURATION).thenApply(data -> {
+							if (key != null) {
+								completedInstances.put(key, instanceId);
+							}
+							return data;
+						});
+					});
+			run.whenComplete((data, failure) -> {
+				releaseSlot(creds);
+				metrics.record("report.instance.run", System.currentTimeMillis() - duration);
+			});
+			return run;
+		});
+	}
+
+	/*
+	 * Take a slot of the org, the slots are created on demand
+	 */
+	private CompletableFuture<Void> acquireSlot(SalesforceCredentials creds) {
+		final List<CompletableFuture<Void>> slot = new ArrayList<>(1);
+		slots.compute(creds.fingerprint(), (hash, orgSlots) -> {
+			InstanceSlots current = orgSlots == null ? new InstanceSlots(maxInstancesPerOrg) : orgSlots;
+			slot.add(current.acquire());
+			return current;
+		});
+		return slot.get(0);
+	}
+
+	/*
+	 * Hand the slot over to the next waiting run of the org, drop the slots of
+	 * the org once none is used. The next run is started out of the map lock.
+	 */
+	private void releaseSlot(SalesforceCredentials creds) {
+		final List<CompletableFuture<Void>> next = new ArrayList<>(1);
+		slots.computeIfPresent(creds.fingerprint(), (hash, orgSlots) -> {
+			CompletableFuture<Void> handedOver = orgSlots.release();
+			if (handedOver != null) {
+				next.add(handedOver);
+				return orgSlots;
+			}
+			return orgSlots.getUsed() == 0 ? null : orgSlots;
+		});
+		next.forEach(slot -> slot.complete(null));
+	}
+
+	/*
+	 * Poll the status of an instance until it completes, the interval growing
+	 * after each poll, then download its data
+	 */
+	private CompletableFuture<byte[]> poll(Map<String, Object> headers, String instanceId, long delay, long deadline) {
+		return status(headers, instanceId).thenCompose(status -> {
+			if (STATUS_SUCCESS.equals(status)) {
+				return fetch(headers, instanceId);
+			}
+			CompletableFuture<byte[]> failed = new CompletableFuture<>();
+			if (status == null || STATUS_ERROR.equals(status)) {
+				failed.completeExceptionally(new SalesforceException(String.format("Report instance %s of report %s %s", 
+						instanceId, headers.get("reportId"), status == null ? "is not found" : "failed"), 0));
+				return failed;
+			}
+			if (System.currentTimeMillis() + delay > deadline) {
+				failed.completeExceptionally(new TimeoutException(String.format("Report instance %s of report %s is still %s after %d m-seconds", 
+						instanceId, headers.get("reportId"), status, MAX_RUN_DURATION)));
+				return failed;
+			}
+			LOG.debug("Report instance {} of report {} is {}, polling again in {} m-seconds.", instanceId, headers.get("reportId"), status, delay);
+			return bulkJobEngine.delay(delay).thenCompose(v -> poll(headers, instanceId, 
+					Math.min(MAX_POLL_INTERVAL, (long) (delay * POLL_BACKOFF_FACTOR)), deadline));
+		});
+	}
+
+	/*
+	 * Get the status of an instance from the instance list of the report,
+	 * which holds the status but not the data: "New", "Running", "Success" or
+	 * "Error", NULL if the instance is not listed (any more)
+	 */
+	@SuppressWarnings("unchecked")
+	private CompletableFuture<String> status(Map<String, Object> headers, String instanceId) {
+		metrics.increment("report.instance.polls");
+		final SalesforceCredentials creds = (SalesforceCredentials) headers.get(HEADER_CREDENTIALS);
+		final String resource = new StringBuilder("analytics/reports/").append(headers.get("reportId")).append("/instances").toString();
+		return restClient.getAsync(creds, restClient.dataPath(creds, resource), Collections.<String, String>emptyMap())
+				.thenApply(response -> {
+					List<Map<String, Object>> instances = readJson(response, List.class);
+					return instances.stream()
+							.filter(instance -> instanceId.equals(instance.get("id")))
+							.map(instance -> (String) instance.get("status"))
+							.findFirst().orElse(null);
+				});
+	}
+
+	/*
+	 * Download the data of a completed instance, read on the download executor
+	 */
+	private CompletableFuture<byte[]> fetch(Map<String, Object> headers, String instanceId) {
+		metrics.increment("report.instance.downloads");
+		return dispatcher.requestAsync(FROM_URI_GET_INSTANCE_DATA, instanceId, headers, InputStream.class)
+				.thenApplyAsync(stream -> {
+					try (InputStream in = stream) {
+						return ByteStreams.toByteArray(in);
+					} catch (IOException e) {
+						throw new IllegalStateException(String.format("Failed to read report instance %s", instanceId), e);
+					}
+				}, bulkJobEngine.getDownloadExecutor());
+	}
+
+	private static <T> T readJson(SalesforceRestClient.Response response, Class<T> type) {
+		try {
+			return SalesforceObjectHelper.readJson(response.getContent(), type);
+		} catch (IOException e) {
+			throw new IllegalStateException(String.format("Unexpected report instance response: %s", response.getContent()), e);
+		}
+	}
+
+	private static Map<String, Object> headers(SalesforceCredentials creds, String reportId, boolean includeDetails) {
+		Map<String, Object> headers = new HashMap<>(4);
+		headers.put(HEADER_CREDENTIALS, creds);
+		headers.put("includeDetails", includeDetails);
+		headers.put("reportId", reportId);
+		return headers;
+	}
+
+	/*
+	 * Non-blocking counting semaphore of the instances of an org, guarded by
+	 * the lock of its entry in the slots map
+	 */
+	static final class InstanceSlots {
+		private final int permits;
+		private final Queue<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+		private int used;
+
+		InstanceSlots(int permits) {
+			this.permits = permits;
+		}
+
+		synchronized CompletableFuture<Void> acquire() {
+			if (used < permits) {
+				used++;
+				return CompletableFuture.completedFuture(null);
+			}
+			CompletableFuture<Void> slot = new CompletableFuture<>();
+			waiting.add(slot);
+			return slot;
+		}
+
+		/*
+		 * Return the waiting run the slot is handed over to, to be completed
+		 * by the caller, NULL if the slot is freed
+		 */
+		synchronized CompletableFuture<Void> release() {
+			CompletableFuture<Void> next = waiting.poll();
+			if (next == null) {
+				used--;
+			}
+			return next;
+		}
+
+		synchronized int getUsed() {
+			return used;
+		}
+
+		synchronized int getQueued() {
+			return waiting.size();
+		}
+	}
+}
@@ -0,0 +1,346 @@
+package com.github.deeprot.integration.camel;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.github.deeprot.integration.camel.SalesforceProcessor.ReportType;
+import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
+import com.github.deeprot.integration.helper.SalesforceObjectHelper;
+import com.google.common.io.ByteStreams;
+import com.mongodb.BasicDBObject;
+
+/**
+ * Extractor of the reports having more detail rows than a report run returns
+ * (2000, the allData flag of the report data being then false). The report is
+ * split into date ranges by additional <a href=
+ * "https://developer.salesforce.com/docs/atlas.en-us.api_analytics.meta/api_analytics/sforce_analytics_rest_api_filter_reportdata.htm"
+ * >report filters</a> on a date column:
+ * <ul>
+ * <li>a range still truncated is split in two halves, down to a single day;</li>
+ * <li>the ranges run concurrently as report instances of the
+ * {@link SalesforceReportExecutor}, which limits the instances per org;</li>
+ * <li>the rows of the ranges are merged in date order. When the report has a
+ * record ID column, a record returned by several ranges (e.g. modified between
+ * two runs) is kept once; otherwise the ranges are concatenated, identical
+ * rows being legitimate in a report.</li>
+ * </ul>
+ *
+ * @author bruce.nguyen
+ *
+ */
+@Component
+public class SalesforceReportPartitioner {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SalesforceReportPartitioner.class);
+
+	public static final int MAX_PARTITIONS = 256;
+	/*
+	 * Range of the dates split in halves, the dates out of it have their own
+	 * open ranges
+	 */
+	public static final LocalDate MIN_DATE = LocalDate.of(1970, 1, 1);
+	public static final long MAX_DATE_YEARS_AHEAD = 10;
+	private static final List<String> DATE_TYPES = Arrays.asList("date", "datetime");
+	private static final String ID_TYPE = "id";
+
+	@Autowired
+	SalesforceReportExecutor reportExecutor;
+
+	@Autowired
+	SalesforceBulkJobEngine bulkJobEngine;
+
+	@Autowired
+	SalesforceMetrics metrics;
+
+	@Value("${salesforce.report.maxPartitions:" + MAX_PARTITIONS + "}")
+	int maxPartitions = MAX_PARTITIONS;
+
+	/**
+	 * Get all the detail rows of a report: the report is run once, then split
+	 * into date ranges if its detail rows were truncated.
+	 *
+	 * @param creds Salesforce credentials
+	 * @param reportId the ID of the report
+	 * @return the future of the rows of the report, NULL if the report data
+	 *         could not be parsed
+	 */
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<Collection<BasicDBObject>> extract(SalesforceCredentials creds, String reportId) {
+		Assert.notNull(reportId, "reportId should not be null");
+		return reportExecutor.execute(creds, reportId, true).thenComposeAsync(stream -> {
+			byte[] data = toByteArray(stream);
+			Partition whole = new Partition(null, null, false);
+			if (!whole.read(new ByteArrayInputStream(data))) {
+				return CompletableFuture.completedFuture(null);
+			}
+			if (whole.allData) {
+				return CompletableFuture.completedFuture(whole.rows);
+			}
+			Map<String, ?> reportData = SalesforceObjectHelper.readJsonFromStream(new ByteArrayInputStream(data));
+			Map<String, Object> reportMetadata = (Map<String, Object>) reportData.get("reportMetadata");
+			String column = partitionColumn(reportData);
+			String idColumn = idColumn(reportData);
+			if (column == null) {
+				LOG.warn("The report {} is truncated to {} rows, it has no date column to be split by.", reportId, whole.rows.size());
+				metrics.increment("report.partition.truncated");
+				return CompletableFuture.completedFuture(whole.rows);
+			}
+			metrics.increment("report.partitioned");
+			long duration = System.currentTimeMillis();
+			Run run = new Run(creds, reportId, reportMetadata, column);
+			LocalDate maxDate = LocalDate.now().plusYears(MAX_DATE_YEARS_AHEAD);
+			List<CompletableFuture<List<Partition>>> ranges = Arrays.asList(
+					run.extract(new Partition(null, null, true)),
+					run.extract(new Partition(null, MIN_DATE, false)),
+					run.extract(new Partition(MIN_DATE, maxDate, false)),
+					run.extract(new Partition(maxDate, null, false)));
+			return CompletableFuture.allOf(ranges.toArray(new CompletableFuture<?>[ranges.size()])).thenApply(v -> {
+				List<Partition> partitions = ranges.stream().flatMap(range -> range.join().stream()).collect(Collectors.toList());
+				Collection<BasicDBObject> rows = merge(partitions, idColumn);
+				LOG.debug("The report {} is extracted from {} partitions on {}: {} rows in {} m-seconds.",
+						reportId, run.partitionCount.get(), column, rows.size(), System.currentTimeMillis() - duration);
+				metrics.record("report.partition.run", System.currentTimeMillis() - duration);
+				return rows;
+			});
+		}, bulkJobEngine.getDownloadExecutor());
+	}
+
+	/*
+	 * Merge the rows of the partitions in their order. A record returned by
+	 * several partitions is kept once when the rows have a record ID, the
+	 * partitions are simply concatenated otherwise: two identical rows without
+	 * ID may be two distinct records.
+	 */
+	Collection<BasicDBObject> merge(List<Partition> partitions, String idColumn) {
+		List<BasicDBObject> rows = new ArrayList<>();
+		Set<Object> ids = new HashSet<>();
+		int duplicates = 0;
+		for (Partition partition : partitions) {
+			for (BasicDBObject row : partition.rows) {
+				Object id = idColumn == null ? null : row.get(idColumn);
+				if (id == null || ids.add(id)) {
+					rows.add(row);
+				} else {
+					duplicates++;
+				}
+			}
+		}
+		if (duplicates > 0) {
+			LOG.debug("{} duplicate records are removed from the partitions.", duplicates);
+			metrics.add("report.partition.duplicates", duplicates);
+		}
+		return rows;
+	}
+
+	/*
+	 * The row key of the first record ID detail column, NULL if the report
+	 * has none
+	 */
+	@SuppressWarnings("unchecked")
+	static String idColumn(Map<String, ?> reportData) {
+		Map<String, ?> reportMetadata = (Map<String, ?>) reportData.get("reportMetadata");
+		Map<String, ?> extendedMetadata = (Map<String, ?>) reportData.get("reportExtendedMetadata");
+		if (reportMetadata == null || extendedMetadata == null) {
+			return null;
+		}
+		Map<String, Map<String, ?>> columnInfos = (Map<String, Map<String, ?>>) extendedMetadata.get("detailColumnInfo");
+		List<String> detailColumns = (List<String>) reportMetadata.get("detailColumns");
+		if (columnInfos != null && detailColumns != null) {
+			for (String column : detailColumns) {
+				Map<String, ?> columnInfo = columnInfos.get(column);
+				if (columnInfo != null && ID_TYPE.equals(columnInfo.get("dataType"))) {
+					return SalesforceObjectHelper.normalizeFieldname(column).toString();
+				}
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * The first date detail column, the column of the standard date filter
+	 * otherwise. Joined reports are not split, their filters being per block.
+	 */
+	@SuppressWarnings("unchecked")
+	private static String partitionColumn(Map<String, ?> reportData) {
+		Map<String, ?> reportMetadata = (Map<String, ?>) reportData.get("reportMetadata");
+		Map<String, ?> extendedMetadata = (Map<String, ?>) reportData.get("reportExtendedMetadata");
+		if (reportMetadata == null || extendedMetadata == null) {
+			return null;
+		}
+		String reportFormat = (String) reportMetadata.get("reportFormat");
+		if (ReportType.JOINED.name().equals(reportFormat) || ReportType.MULTI_BLOCK.name().equals(reportFormat)) {
+			return null;
+		}
+		Map<String, Map<String, ?>> columnInfos = (Map<String, Map<String, ?>>) extendedMetadata.get("detailColumnInfo");
+		List<String> detailColumns = (List<String>) reportMetadata.get("detailColumns");
+		if (columnInfos != null && detailColumns != null) {
+			for (String column : detailColumns) {
+				Map<String, ?> columnInfo = columnInfos.get(column);
+				if (columnInfo != null && DATE_TYPES.contains(columnInfo.get("dataType"))) {
+					return column;
+				}
+			}
+		}
+		Map<String, ?> standardDateFilter = (Map<String, ?>) reportMetadata.get("standardDateFilter");
+		return standardDateFilter == null ? null : (String) standardDateFilter.get("column");
+	}
+
+	private static byte[] toByteArray(InputStream stream) {
+		try (InputStream in = stream) {
+			return ByteStreams.toByteArray(in);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to read the report data", e);
+		}
+	}
+
+	/*
+	 * Partitioned extraction of a report
+	 */
+	private final class Run {
+		private final SalesforceCredentials creds;
+		private final String reportId;
+		private final Map<String, Object> reportMetadata;
+		private final String column;
+		private final AtomicInteger partitionCount = new AtomicInteger();
+
+		Run(SalesforceCredentials creds, String reportId, Map<String, Object> reportMetadata, String column) {
+			this.creds = creds;
+			this.reportId = reportId;
+			this.reportMetadata = reportMetadata;
+			this.column = column;
+		}
+
+		/*
+		 * Extract a partition, splitting it in halves while it is truncated
+		 */
+		CompletableFuture<List<Partition>> extract(Partition partition) {
+			if (partitionCount.incrementAndGet() > maxPartitions) {
+				return CompletableFuture.completedFuture(new ArrayList<>());
+			}
+			metrics.increment("report.partition.runs");
+			return reportExecutor.execute(creds, reportId, true, partition.filter(reportMetadata, column))
+					.thenComposeAsync(stream -> {
+						if (!partition.read(stream)) {
+							throw new IllegalStateException(String.format("Failed to parse the partition %s of report %s", partition, reportId));
+						}
+						List<Partition> halves = partition.allData ? null : partition.split();
+						if (halves == null) {
+							if (!partition.allData) {
+								LOG.warn("The partition {} of report {} is truncated to {} rows and cannot be split.", partition, reportId, partition.rows.size());
+								metrics.increment("report.partition.truncated");
+							}
+							return CompletableFuture.completedFuture(Arrays.asList(partition));
+						}
+						LOG.debug("The partition {} of report {} is truncated, splitting it.", partition, reportId);
+						CompletableFuture<List<Partition>> first = extract(halves.get(0));
+						CompletableFuture<List<Partition>> second = extract(halves.get(1));
+						return first.thenCombine(second, (firstPartitions, secondPartitions) -> {
+							if (firstPartitions.isEmpty() || secondPartitions.isEmpty()) {
+								// too many partitions, the truncated rows are kept
+								return Arrays.asList(partition);
+							}
+							List<Partition> partitions = new ArrayList<>(firstPartitions);
+							partitions.addAll(secondPartitions);
+							return partitions;
+						});
+					}, bulkJobEngine.getDownloadExecutor());
+		}
+	}
+
+	/*
+	 * Date range [from, to) of a report, a NULL bound being open. The blank
+	 * partition holds the rows having no date.
+	 */
+	static final class Partition {
+		private final LocalDate from;
+		private final LocalDate to;
+		private final boolean blank;
+		final List<BasicDBObject> rows = new ArrayList<>();
+		boolean allData;
+
+		Partition(LocalDate from, LocalDate to, boolean blank) {
+			this.from = from;
+			this.to = to;
+			this.blank = blank;
+		}
+
+		boolean read(InputStream stream) {
+			Boolean complete = SalesforceObjectHelper.streamSalesforceReportDataChunk(stream, rows::add);
+			allData = Boolean.TRUE.equals(complete);
+			return complete != null;
+		}
+
+		/*
+		 * The two halves of the range, NULL if it cannot be split
+		 */
+		List<Partition> split() {
+			if (blank || from == null || to == null || !from.plusDays(1).isBefore(to)) {
+				return null;
+			}
+			LocalDate middle = from.plusDays((to.toEpochDay() - from.toEpochDay()) / 2);
+			return Arrays.asList(new Partition(from, middle, false), new Partition(middle, to, false));
+		}
+
+		/*
+		 * The report metadata with the filters of the range
+		 */
+		Map<String, Object> filter(Map<String, Object> reportMetadata, String column) {
+			Map<String, Object> metadata = new LinkedHashMap<>(reportMetadata);
+			List<Object> filters = reportMetadata.get("reportFilters") == null ? new ArrayList<>()
+					: new ArrayList<>((List<?>) reportMetadata.get("reportFilters"));
+			List<String> conditions = new ArrayList<>();
+			if (blank) {
+				conditions.add(addFilter(filters, column, "equals", ""));
+			}
+			if (from != null) {
+				conditions.add(addFilter(filters, column, "greaterOrEqual", from.toString()));
+			}
+			if (to != null) {
+				conditions.add(addFilter(filters, column, "lessThan", to.toString()));
+			}
+			String booleanFilter = (String) reportMetadata.get("reportBooleanFilter");
+			if (booleanFilter != null && !booleanFilter.trim().isEmpty()) {
+				// the filters of the logic are numbered from 1
+				metadata.put("reportBooleanFilter", new StringBuilder("(").append(booleanFilter).append(")")
+						.append(conditions.stream().map(condition -> " AND " + condition).collect(Collectors.joining())).toString());
+			}
+			metadata.put("reportFilters", filters);
+			return metadata;
+		}
+
+		private static String addFilter(List<Object> filters, String column, String operator, String value) {
+			Map<String, Object> filter = new LinkedHashMap<>();
+			filter.put("column", column);
+			filter.put("operator", operator);
+			filter.put("value", value);
+			filters.add(filter);
+			return String.valueOf(filters.size());
+		}
+
+		@Override
+		public String toString() {
+			return blank ? "[blank]" : new StringBuilder("[").append(from == null ? "" : from).append(", ")
+					.append(to == null ? "" : to).append(")").toString();
+		}
+	}
+}
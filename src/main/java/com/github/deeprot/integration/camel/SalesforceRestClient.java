@@ -0,0 +1,484 @@
+package com.github.deeprot.integration.camel;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.camel.component.salesforce.SalesforceComponent;
+import org.apache.camel.component.salesforce.SalesforceEndpointConfig;
+import org.apache.camel.component.salesforce.api.SalesforceException;
+import org.apache.camel.component.salesforce.api.dto.bulk.JobInfo;
+import org.apache.camel.component.salesforce.api.dto.bulk.ObjectFactory;
+import org.apache.camel.component.salesforce.internal.SalesforceSession;
+import org.eclipse.jetty.client.ContentExchange;
+import org.eclipse.jetty.client.HttpExchange;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.io.ByteArrayBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.github.deeprot.Application;
+import com.github.deeprot.integration.camel.SalesforceRateGovernor.Permit;
+import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
+import com.github.deeprot.integration.camel.router.DynamicSalesforceComponentRouter;
+import com.github.deeprot.integration.camel.router.DynamicSalesforceComponentRouter.ComponentLease;
+import com.github.deeprot.integration.helper.SalesforceObjectHelper;
+
+/**
+ * Thin client of the Salesforce <a href=
+ * "http://www.salesforce.com/us/developer/docs/api_rest/index.htm">REST
+ * API</a> for the requests the Camel Salesforce component does not support
+ * (conditional requests, composite resources, ...). The client reuses the
+ * session and the HttpClient of the Salesforce component bound to the
+ * credentials, so no additional login is needed.
+ * <p>
+ * The asynchronous requests ({@link #getAsync(SalesforceCredentials, String, Map)},
+ * {@link #postAsync(SalesforceCredentials, String, String)}) hold no thread
+ * while waiting for their permit and their response, e.g. to poll many
+ * report instances at once.
+ * </p>
+ *
+ * @author bruce.nguyen
+ *
+ */
+@Component
+public class SalesforceRestClient {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SalesforceRestClient.class);
+
+	public static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+	public static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	public static final int STATUS_NOT_MODIFIED = 304;
+	public static final int STATUS_UNAUTHORIZED = 401;
+	private static final String CONTENT_TYPE_JSON = "application/json;charset=UTF-8";
+	private static final String CONTENT_TYPE_XML = "application/xml;charset=UTF-8";
+	/*
+	 * The Bulk API authenticates with its own session header and speaks XML
+	 */
+	private static final String BULK_PATH_PREFIX = "/services/async/";
+	private static final String HEADER_BULK_SESSION = "X-SFDC-Session";
+	private static final String BULK_INVALID_SESSION = "InvalidSessionId";
+	/*
+	 * Composite batch: at most 25 sub-requests per call, API v34.0 onwards
+	 */
+	public static final int COMPOSITE_BATCH_SIZE = 25;
+	public static final String COMPOSITE_API_VERSION = "34.0";
+
+	@Autowired
+	DynamicSalesforceComponentRouter router;
+
+	@Autowired
+	SalesforceMetrics metrics;
+
+	@Autowired
+	SalesforceRateGovernor governor;
+
+	@Autowired
+	SalesforceRetryPolicy retryPolicy;
+
+	/*
+	 * Used for the rare blocking steps of the async requests only (login)
+	 */
+	@Autowired
+	@Qualifier(Application.SALESFORCE_EXECUTOR)
+	Executor salesforceExecutor;
+
+	/*
+	 * JAXB context of the Bulk API DTOs, thread-safe
+	 */
+	private final JAXBContext bulkContext;
+
+	public SalesforceRestClient() {
+		try {
+			bulkContext = JAXBContext.newInstance(JobInfo.class.getPackage().getName());
+		} catch (JAXBException e) {
+			throw new IllegalStateException("Failed to initialize the Bulk API context", e);
+		}
+	}
+
+	/**
+	 * Build the path of a REST resource for the API version of the component
+	 *
+	 * @param creds Salesforce credentials
+	 * @param resource the resource, e.g. "sobjects/Account/describe"
+	 * @return the path of the resource relative to the instance URL
+	 */
+	public String dataPath(SalesforceCredentials creds, String resource) {
+		String apiVersion = router.getComponent(creds).getConfig().getApiVersion();
+		return new StringBuilder("/services/data/v")
+			.append(apiVersion == null ? SalesforceEndpointConfig.DEFAULT_VERSION : apiVersion)
+			.append('/').append(resource).toString();
+	}
+
+	/**
+	 * Build the path of a <a
+	 * href="http://www.salesforce.com/us/developer/docs/api_asynch/index.htm"
+	 * >Bulk API</a> resource for the API version of the component
+	 *
+	 * @param creds Salesforce credentials
+	 * @param resource the resource, e.g. "job"
+	 * @return the path of the resource relative to the instance URL
+	 */
+	public String bulkPath(SalesforceCredentials creds, String resource) {
+		String apiVersion = router.getComponent(creds).getConfig().getApiVersion();
+		return new StringBuilder(BULK_PATH_PREFIX)
+			.append(apiVersion == null ? SalesforceEndpointConfig.DEFAULT_VERSION : apiVersion)
+			.append('/').append(resource).toString();
+	}
+
+	/**
+	 * Create a Bulk API job with additional request headers, e.g.
+	 * Sforce-Enable-PKChunking, which the Camel Salesforce component does not
+	 * send. The headers apply to this request only. The request is not
+	 * retried.
+	 *
+	 * @param creds Salesforce credentials
+	 * @param jobInfo the job to be created
+	 * @param headers the additional request headers
+	 * @return the created job
+	 * @throws SalesforceException if the job could not be created
+	 */
+	public JobInfo createJob(SalesforceCredentials creds, JobInfo jobInfo, Map<String, String> headers) throws SalesforceException {
+		Assert.notNull(jobInfo, "jobInfo should not be null");
+		try {
+			StringWriter xml = new StringWriter();
+			bulkContext.createMarshaller().marshal(new ObjectFactory().createJobInfo(jobInfo), xml);
+			Response response = execute(creds, "POST", bulkPath(creds, "job"), headers, CONTENT_TYPE_XML, xml.toString(), false);
+			return bulkContext.createUnmarshaller().unmarshal(new StreamSource(response.getContentStream()), JobInfo.class).getValue();
+		} catch (JAXBException e) {
+			throw new SalesforceException(String.format("Failed to create the bulk job on %s: %s", jobInfo.getObject(), e.getMessage()), e);
+		}
+	}
+
+	/**
+	 * Send a GET request
+	 *
+	 * @param creds Salesforce credentials
+	 * @param path the path relative to the instance URL
+	 * @param headers the additional request headers
+	 * @return the response, a 304 (not modified) response is not an error
+	 * @throws SalesforceException if the response status is an error
+	 */
+	public Response get(SalesforceCredentials creds, String path, Map<String, String> headers) throws SalesforceException {
+		return execute(creds, "GET", path, headers, null, null, true);
+	}
+
+	/**
+	 * Send a GET request without holding any thread while waiting for the
+	 * response
+	 *
+	 * @param creds Salesforce credentials
+	 * @param path the path relative to the instance URL
+	 * @param headers the additional request headers
+	 * @return the future of the response, failed with a
+	 *         {@link SalesforceException} if the response status is an error
+	 */
+	public CompletableFuture<Response> getAsync(SalesforceCredentials creds, String path, Map<String, String> headers) {
+		return executeAsync(creds, "GET", path, headers, null, null, true);
+	}
+
+	/**
+	 * Send a POST request with a JSON body without holding any thread while
+	 * waiting for the response. The request is not retried, a POST usually
+	 * creating a resource.
+	 *
+	 * @param creds Salesforce credentials
+	 * @param path the path relative to the instance URL
+	 * @param json the JSON request body
+	 * @return the future of the response, failed with a
+	 *         {@link SalesforceException} if the response status is an error
+	 */
+	public CompletableFuture<Response> postAsync(SalesforceCredentials creds, String path, String json) {
+		return executeAsync(creds, "POST", path, Collections.<String, String>emptyMap(), CONTENT_TYPE_JSON, json, false);
+	}
+
+	/**
+	 * Send a POST request with a JSON body. The request is not retried, a POST
+	 * usually creating a resource.
+	 *
+	 * @param creds Salesforce credentials
+	 * @param path the path relative to the instance URL
+	 * @param json the JSON request body
+	 * @return the response
+	 * @throws SalesforceException if the response status is an error
+	 */
+	public Response post(SalesforceCredentials creds, String path, String json) throws SalesforceException {
+		return post(creds, path, Collections.<String, String>emptyMap(), json);
+	}
+
+	/**
+	 * Send a POST request with a JSON body and additional headers. The
+	 * request is not retried, a POST usually creating a resource.
+	 *
+	 * @param creds Salesforce credentials
+	 * @param path the path relative to the instance URL
+	 * @param headers the additional request headers
+	 * @param json the JSON request body
+	 * @return the response
+	 * @throws SalesforceException if the response status is an error
+	 */
+	public Response post(SalesforceCredentials creds, String path, Map<String, String> headers, String json) throws SalesforceException {
+		return execute(creds, "POST", path, headers, CONTENT_TYPE_JSON, json, false);
+	}
+
+	/**
+	 * Send up to {@link #COMPOSITE_BATCH_SIZE} GET sub-requests in one <a href=
+	 * "https://developer.salesforce.com/docs/atlas.en-us.api_rest.meta/api_rest/resources_composite_batch.htm"
+	 * >Composite Batch</a> request. A failing sub-request does not halt the
+	 * others.
+	 *
+	 * @param creds Salesforce credentials
+	 * @param resources the sub-request resources, relative to the data path,
+	 *            e.g. "sobjects/Account/describe"
+	 * @return the sub-request results in the order of the resources, each
+	 *         having a "statusCode" and a "result" entry
+	 * @throws Exception if the batch request itself failed
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Map<String, Object>> batch(SalesforceCredentials creds, List<String> resources) throws Exception {
+		Assert.isTrue(resources.size() <= COMPOSITE_BATCH_SIZE, 
+				String.format("A composite batch contains at most %d sub-requests", COMPOSITE_BATCH_SIZE));
+		List<Map<String, String>> batchRequests = new ArrayList<>(resources.size());
+		for (String resource : resources) {
+			Map<String, String> batchRequest = new LinkedHashMap<>();
+			batchRequest.put("method", "GET");
+			batchRequest.put("url", "v" + COMPOSITE_API_VERSION + "/" + resource);
+			batchRequests.add(batchRequest);
+		}
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("haltOnError", false);
+		body.put("batchRequests", batchRequests);
+		// only GET sub-requests, so the batch may be retried
+		Response response = execute(creds, "POST", "/services/data/v" + COMPOSITE_API_VERSION + "/composite/batch", 
+				Collections.<String, String>emptyMap(), CONTENT_TYPE_JSON, SalesforceObjectHelper.writeJson(body), true);
+		metrics.increment("rest.composite.batches");
+		metrics.add("rest.composite.subrequests", resources.size());
+		Map<String, Object> batchResult = SalesforceObjectHelper.readJson(response.getContent(), Map.class);
+		List<Map<String, Object>> results = (List<Map<String, Object>>) batchResult.get("results");
+		if (results == null || results.size() != resources.size()) {
+			throw new SalesforceException(String.format("Unexpected composite batch response: %s", response.getContent()), response.getStatus());
+		}
+		return results;
+	}
+
+	private Response execute(SalesforceCredentials creds, String method, String path, Map<String, String> headers, String contentType,
+			String content, boolean idempotent) throws SalesforceException {
+		Assert.notNull(path, "path should not be null");
+		return retryPolicy.call(creds, "rest." + method.toLowerCase(), idempotent, () -> {
+			try (ComponentLease lease = router.lease(creds)) {
+				SalesforceComponent component = lease.getComponent();
+				SalesforceSession session = component.getSession();
+				Permit permit = governor.acquire(creds);
+				long duration = System.currentTimeMillis();
+				try {
+					Response response = send(component, session.getAccessToken(), method, path, headers, contentType, content);
+					if (isSessionExpired(path, response)) {
+						// the session has expired, log in again then retry once
+						LOG.debug("Session expired while requesting {}, logging in again.", path);
+						response = send(component, session.login(session.getAccessToken()), method, path, headers, contentType, content);
+					}
+					governor.updateUsage(SalesforceRateGovernor.orgId(session.getAccessToken()), 
+							response.getHeader(SalesforceRateGovernor.HEADER_LIMIT_INFO));
+					if (response.getStatus() >= 400) {
+						throw new SalesforceException(String.format("Unexpected response {%d} for %s %s: %s",
+								response.getStatus(), method, path, response.getContent()), response.getStatus());
+					}
+					return response;
+				} finally {
+					permit.close();
+					metrics.record("rest." + method.toLowerCase(), System.currentTimeMillis() - duration);
+				}
+			}
+		});
+	}
+
+	private CompletableFuture<Response> executeAsync(SalesforceCredentials creds, String method, String path, Map<String, String> headers, 
+			String contentType, String content, boolean idempotent) {
+		Assert.notNull(path, "path should not be null");
+		return retryPolicy.callAsync(creds, "rest." + method.toLowerCase(), idempotent, () -> {
+			final ComponentLease lease = router.lease(creds);
+			final SalesforceComponent component = lease.getComponent();
+			final SalesforceSession session = component.getSession();
+			CompletableFuture<Response> result = governor.acquireAsync(creds).thenCompose(permit -> {
+				final long duration = System.currentTimeMillis();
+				CompletableFuture<Response> sent = sendAsync(component, session.getAccessToken(), method, path, headers, contentType, content)
+						.thenCompose(response -> {
+							if (!isSessionExpired(path, response)) {
+								return CompletableFuture.completedFuture(response);
+							}
+							// the session has expired, log in again then retry once
+							LOG.debug("Session expired while requesting {}, logging in again.", path);
+							CompletableFuture<String> login = new CompletableFuture<>();
+							salesforceExecutor.execute(() -> {
+								try {
+									login.complete(session.login(session.getAccessToken()));
+								} catch (Exception e) {
+									login.completeExceptionally(e);
+								}
+							});
+							return login.thenCompose(accessToken -> sendAsync(component, accessToken, method, path, headers, contentType, content));
+						})
+						.thenApply(response -> {
+							governor.updateUsage(SalesforceRateGovernor.orgId(session.getAccessToken()), 
+									response.getHeader(SalesforceRateGovernor.HEADER_LIMIT_INFO));
+							if (response.getStatus() >= 400) {
+								throw new CompletionException(new SalesforceException(String.format("Unexpected response {%d} for %s %s: %s",
+										response.getStatus(), method, path, response.getContent()), response.getStatus()));
+							}
+							return response;
+						});
+				sent.whenComplete((response, failure) -> {
+					permit.close();
+					metrics.record("rest." + method.toLowerCase(), System.currentTimeMillis() - duration);
+				});
+				return sent;
+			});
+			result.whenComplete((response, failure) -> lease.close());
+			return result;
+		});
+	}
+
+	/*
+	 * The REST API answers 401 to an expired session, the Bulk API 400 with
+	 * an InvalidSessionId exception code
+	 */
+	private static boolean isSessionExpired(String path, Response response) {
+		if (path.startsWith(BULK_PATH_PREFIX)) {
+			return response.getStatus() == 400 && response.getContent().contains(BULK_INVALID_SESSION);
+		}
+		return response.getStatus() == STATUS_UNAUTHORIZED;
+	}
+
+	private static Response send(SalesforceComponent component, String accessToken, String method, String path,
+			Map<String, String> headers, String contentType, String content) throws SalesforceException {
+		ContentExchange exchange = new ContentExchange(true);
+		prepare(exchange, component, accessToken, method, path, headers, contentType, content);
+		try {
+			component.getConfig().getHttpClient().send(exchange);
+			int state = exchange.waitForDone();
+			if (state != HttpExchange.STATUS_COMPLETED) {
+				throw new SalesforceException(String.format("Request %s %s ended in state {%d}", method, path, state), 0);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SalesforceException(String.format("Request %s %s interrupted", method, path), e);
+		} catch (SalesforceException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SalesforceException(String.format("Request %s %s failed: %s", method, path, e.getMessage()), e);
+		}
+		return new Response(exchange.getResponseStatus(), exchange.getResponseFields(), exchange.getResponseContentBytes());
+	}
+
+	/*
+	 * Send a request, the future is completed from the callbacks of the
+	 * HttpClient
+	 */
+	private static CompletableFuture<Response> sendAsync(SalesforceComponent component, String accessToken, String method, String path,
+			Map<String, String> headers, String contentType, String content) {
+		CompletableFuture<Response> future = new CompletableFuture<>();
+		ContentExchange exchange = new ContentExchange(true) {
+			@Override
+			protected void onResponseComplete() throws IOException {
+				super.onResponseComplete();
+				future.complete(new Response(getResponseStatus(), getResponseFields(), getResponseContentBytes()));
+			}
+
+			@Override
+			protected void onConnectionFailed(Throwable x) {
+				super.onConnectionFailed(x);
+				future.completeExceptionally(new SalesforceException(String.format("Request %s %s failed: %s", method, path, x.getMessage()), x));
+			}
+
+			@Override
+			protected void onException(Throwable x) {
+				super.onException(x);
+				future.completeExceptionally(new SalesforceException(String.format("Request %s %s failed: %s", method, path, x.getMessage()), x));
+			}
+
+			@Override
+			protected void onExpire() {
+				super.onExpire();
+				future.completeExceptionally(new SalesforceException(String.format("Request %s %s timed out", method, path), 0));
+			}
+		};
+		prepare(exchange, component, accessToken, method, path, headers, contentType, content);
+		try {
+			component.getConfig().getHttpClient().send(exchange);
+		} catch (Exception e) {
+			future.completeExceptionally(new SalesforceException(String.format("Request %s %s failed: %s", method, path, e.getMessage()), e));
+		}
+		return future;
+	}
+
+	private static void prepare(ContentExchange exchange, SalesforceComponent component, String accessToken, String method, String path,
+			Map<String, String> headers, String contentType, String content) {
+		exchange.setMethod(method);
+		exchange.setURL(component.getSession().getInstanceUrl() + path);
+		if (path.startsWith(BULK_PATH_PREFIX)) {
+			exchange.setRequestHeader(HEADER_BULK_SESSION, accessToken);
+			exchange.setRequestHeader("Accept", "application/xml");
+		} else {
+			exchange.setRequestHeader("Authorization", "OAuth " + accessToken);
+			exchange.setRequestHeader("Accept", "application/json");
+		}
+		headers.forEach(exchange::setRequestHeader);
+		if (content != null) {
+			exchange.setRequestContentType(contentType);
+			exchange.setRequestContent(new ByteArrayBuffer(content.getBytes(StandardCharsets.UTF_8)));
+		}
+	}
+
+	/**
+	 * Response of a REST request
+	 */
+	public static final class Response {
+		private final int status;
+		private final HttpFields headers;
+		private final byte[] content;
+
+		Response(int status, HttpFields headers, byte[] content) {
+			this.status = status;
+			this.headers = headers;
+			this.content = content == null ? new byte[0] : content;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public boolean isNotModified() {
+			return status == STATUS_NOT_MODIFIED;
+		}
+
+		public String getHeader(String name) {
+			return headers == null ? null : headers.getStringField(name);
+		}
+
+		public String getContent() {
+			return new String(content, StandardCharsets.UTF_8);
+		}
+
+		public InputStream getContentStream() {
+			return new ByteArrayInputStream(content);
+		}
+	}
+}
@@ -0,0 +1,367 @@
+package com.github.deeprot.integration.camel;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.camel.component.salesforce.api.SalesforceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Central retry policy of the Salesforce requests.
+ * <p>
+ * The failures are classified as <b>transient</b> (row lock contention,
+ * server unavailable, 5xx responses, timeouts, connection failures) or
+ * <b>permanent</b>. Only the transient failures of the idempotent requests
+ * are retried, after an exponential backoff with jitter, so the retries of
+ * many threads do not hit the org at the same time. A request creating a
+ * resource (bulk job, batch, report instance) is never retried: a timeout
+ * does not tell whether the resource was created.
+ * </p>
+ * Each tenant has:
+ * <ul>
+ * <li>a retry budget: every request deposits {@link #RETRY_RATIO} token and
+ * every retry withdraws one, so the retries cannot amplify an outage beyond
+ * that share of the traffic;</li>
+ * <li>a circuit breaker: after {@link #FAILURE_THRESHOLD} consecutive
+ * transient failures the requests of the tenant are refused for
+ * {@link #OPEN_DURATION} (<i>salesforce.retry.openDuration</i>), then a single trial request decides whether the
+ * circuit closes again.</li>
+ * </ul>
+ * 
+ * @author bruce.nguyen
+ *
+ */
+@Component
+public class SalesforceRetryPolicy {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SalesforceRetryPolicy.class);
+
+	public static final int MAX_ATTEMPTS = 4;
+	public static final long BASE_BACKOFF = 200; // milliseconds
+	public static final long MAX_BACKOFF = 10_000; // milliseconds
+	public static final double RETRY_RATIO = 0.1;
+	public static final double MAX_RETRY_TOKENS = 10;
+	public static final int FAILURE_THRESHOLD = 5;
+	public static final long OPEN_DURATION = 30_000; // milliseconds
+	private static final long TENANT_EXPIRY = 60; // minutes
+	private static final List<String> TRANSIENT_ERROR_CODES = Arrays.asList(
+			"UNABLE_TO_LOCK_ROW", "SERVER_UNAVAILABLE", "QUERY_TIMEOUT");
+	private static final List<String> TRANSIENT_MESSAGES = Arrays.asList(
+			"expired", "timed out", "Connection failed");
+
+	@Autowired
+	SalesforceMetrics metrics;
+
+	@Value("${salesforce.retry.maxAttempts:" + MAX_ATTEMPTS + "}")
+	int maxAttempts = MAX_ATTEMPTS;
+
+	@Value("${salesforce.retry.openDuration:" + OPEN_DURATION + "}")
+	long openDuration = OPEN_DURATION;
+
+	/*
+	 * Scheduler of the async retries, the tasks only resubmit the requests:
+	 * not the shared executor, a retry must not wait behind the requests
+	 */
+	private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+			new ThreadFactoryBuilder().setNameFormat("sf-retry-%d").setDaemon(true).build());
+	private final Cache<SalesforceCredentials, Tenant> tenants = CacheBuilder.newBuilder()
+			.expireAfterAccess(TENANT_EXPIRY, TimeUnit.MINUTES)
+			.<SalesforceCredentials, Tenant>build();
+
+	/**
+	 * A request which may be retried
+	 */
+	@FunctionalInterface
+	public interface Call<T, E extends Exception> {
+		T call() throws E;
+	}
+
+	/**
+	 * Refusal of a request while the circuit of its tenant is open
+	 */
+	public static class CircuitOpenException extends RejectedExecutionException {
+		private static final long serialVersionUID = 1L;
+
+		public CircuitOpenException(String message) {
+			super(message);
+		}
+	}
+
+	@PostConstruct
+	public void registerGauges() {
+		metrics.gauge("circuit.open", () -> tenants.asMap().values().stream().filter(Tenant::isOpen).count());
+		metrics.gauges("executor.retry", scheduler);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * Execute a request, retrying its transient failures if it is idempotent.
+	 * The calling thread sleeps during the backoff, use
+	 * {@link #callAsync(SalesforceCredentials, String, boolean, Supplier)}
+	 * from a scheduler.
+	 * 
+	 * @param creds Salesforce credentials
+	 * @param operation the operation name, used by the metrics
+	 * @param idempotent whether the request may be sent again safely
+	 * @param call the request
+	 * @return the response
+	 * @throws E the last failure of the request
+	 * @throws CircuitOpenException if the circuit of the tenant is open
+	 */
+	public <T, E extends Exception> T call(SalesforceCredentials creds, String operation, boolean idempotent, Call<T, E> call) throws E {
+		Tenant tenant = tenant(creds);
+		for (int attempt = 0;; attempt++) {
+			tenant.checkCircuit(creds, operation);
+			try {
+				T response = call.call();
+				tenant.onSuccess();
+				return response;
+			} catch (Exception e) {
+				if (!retryable(tenant, operation, idempotent, e, attempt)) {
+					throw e;
+				}
+				try {
+					Thread.sleep(backoff(attempt));
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Execute an async request, retrying its transient failures if it is
+	 * idempotent, from a scheduler so no thread is held during the backoff
+	 * 
+	 * @param creds Salesforce credentials
+	 * @param operation the operation name, used by the metrics
+	 * @param idempotent whether the request may be sent again safely
+	 * @param call the supplier of the request future
+	 * @return the future of the response, failed with the last failure
+	 */
+	public <T> CompletableFuture<T> callAsync(SalesforceCredentials creds, String operation, boolean idempotent, 
+			Supplier<CompletableFuture<T>> call) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		attempt(tenant(creds), creds, operation, idempotent, call, 0, future);
+		return future;
+	}
+
+	/**
+	 * Whether a failure is transient, i.e. worth a retry
+	 * 
+	 * @param failure the failure, or any exception wrapping it
+	 * @return true if the failure is transient
+	 */
+	public static boolean isTransient(Throwable failure) {
+		for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+			if (t instanceof TimeoutException || t instanceof SocketTimeoutException || t instanceof ConnectException) {
+				return true;
+			}
+			if (t instanceof SalesforceException) {
+				int status = ((SalesforceException) t).getStatusCode();
+				if (status >= 500 && status != 501) {
+					return true;
+				}
+				String message = String.valueOf(t.getMessage());
+				if (TRANSIENT_ERROR_CODES.stream().anyMatch(message::contains)) {
+					return true;
+				}
+				if (status == 0 && TRANSIENT_MESSAGES.stream().anyMatch(message::contains)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Whether a failure carries a response of Salesforce
+	 */
+	private static boolean isResponse(Throwable failure) {
+		for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+			if (t instanceof SalesforceException && ((SalesforceException) t).getStatusCode() != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Exponential backoff with jitter: a random delay between the half and
+	 * the full exponential delay of the attempt
+	 * 
+	 * @param attempt the failed attempt, starting at 0
+	 * @return the delay before the next attempt in milliseconds
+	 */
+	public static long backoff(int attempt) {
+		long delay = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(attempt, 16));
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	private <T> void attempt(Tenant tenant, SalesforceCredentials creds, String operation, boolean idempotent, 
+			Supplier<CompletableFuture<T>> call, int attempt, CompletableFuture<T> future) {
+		CompletableFuture<T> response;
+		try {
+			tenant.checkCircuit(creds, operation);
+			response = call.get();
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+			return;
+		}
+		response.whenComplete((value, failure) -> {
+			if (failure == null) {
+				tenant.onSuccess();
+				future.complete(value);
+				return;
+			}
+			Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+			if (retryable(tenant, operation, idempotent, cause, attempt)) {
+				scheduler.schedule(() -> attempt(tenant, creds, operation, idempotent, call, attempt + 1, future), 
+						backoff(attempt), TimeUnit.MILLISECONDS);
+			} else {
+				future.completeExceptionally(cause);
+			}
+		});
+	}
+
+	/*
+	 * Classify the failure of an attempt and decide whether it is retried
+	 */
+	private boolean retryable(Tenant tenant, String operation, boolean idempotent, Throwable failure, int attempt) {
+		if (failure instanceof CircuitOpenException) {
+			return false;
+		}
+		if (!isTransient(failure)) {
+			if (isResponse(failure)) {
+				// the org did respond, the circuit is healthy
+				tenant.onSuccess();
+			} else {
+				// a local failure tells nothing about the org, a trial is given back
+				tenant.onLocalFailure();
+			}
+			metrics.increment("failure.permanent." + operation);
+			return false;
+		}
+		metrics.increment("failure.transient." + operation);
+		if (tenant.onTransientFailure()) {
+			metrics.increment("circuit.opened");
+			LOG.warn("Circuit is opened for {} m-seconds after {} consecutive transient failures, last one on {}: {}", 
+					openDuration, FAILURE_THRESHOLD, operation, failure.getMessage());
+			return false;
+		}
+		if (!idempotent) {
+			metrics.increment("retry.skipped." + operation);
+			return false;
+		}
+		if (attempt + 1 >= maxAttempts) {
+			metrics.increment("retry.exhausted." + operation);
+			return false;
+		}
+		if (!tenant.withdraw()) {
+			metrics.increment("retry.budget.exhausted");
+			return false;
+		}
+		metrics.increment("retry.attempt." + operation);
+		LOG.debug("Retrying {} after transient failure #{}: {}", operation, attempt + 1, failure.getMessage());
+		return true;
+	}
+
+	private Tenant tenant(SalesforceCredentials creds) {
+		try {
+			return tenants.get(creds, Tenant::new);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/*
+	 * Retry budget and circuit breaker of a tenant
+	 */
+	private class Tenant {
+		private double tokens = MAX_RETRY_TOKENS;
+		private int consecutiveFailures;
+		private long openUntil;
+		private boolean trial;
+
+		synchronized void checkCircuit(SalesforceCredentials creds, String operation) {
+			tokens = Math.min(MAX_RETRY_TOKENS, tokens + RETRY_RATIO);
+			if (openUntil == 0) {
+				return;
+			}
+			if (System.currentTimeMillis() >= openUntil && !trial) {
+				// half-open: let a single trial request through
+				trial = true;
+				return;
+			}
+			metrics.increment("circuit.rejected." + operation);
+			throw new CircuitOpenException(String.format("Circuit of %s is open after repeated transient failures", creds.getEmail()));
+		}
+
+		synchronized void onSuccess() {
+			consecutiveFailures = 0;
+			openUntil = 0;
+			trial = false;
+		}
+
+		/*
+		 * The trial request failed before reaching the org, let another one
+		 * through
+		 */
+		synchronized void onLocalFailure() {
+			trial = false;
+		}
+
+		/*
+		 * Return true if the failure opened the circuit
+		 */
+		synchronized boolean onTransientFailure() {
+			if (trial || ++consecutiveFailures >= FAILURE_THRESHOLD) {
+				// opened, or re-opened after a failed trial
+				openUntil = System.currentTimeMillis() + openDuration;
+				trial = false;
+				return true;
+			}
+			return false;
+		}
+
+		synchronized boolean withdraw() {
+			if (tokens < 1) {
+				return false;
+			}
+			tokens--;
+			return true;
+		}
+
+		synchronized boolean isOpen() {
+			return openUntil != 0;
+		}
+	}
+}
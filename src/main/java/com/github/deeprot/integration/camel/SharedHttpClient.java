@@ -0,0 +1,69 @@
+package com.github.deeprot.integration.camel;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Jetty HttpClient shared by all the Salesforce components. The thread pool is
+ * bounded and the connections are limited per address, i.e. per Salesforce
+ * instance URL, so the tenants of one instance cannot starve the others.
+ * <p>
+ * A Salesforce component stops its HttpClient when it is stopped, the stop
+ * requests of the components are therefore ignored: the shared client is only
+ * released by {@link #close()}.
+ * </p>
+ * 
+ * @author bruce.nguyen
+ *
+ */
+public class SharedHttpClient extends LimitInfoHttpClient {
+
+	public static final int MIN_THREADS = 8;
+	public static final int MAX_THREADS = 64;
+	public static final int MAX_CONNECTIONS_PER_ADDRESS = 32;
+	public static final long IDLE_TIMEOUT = 60_000; // keep-alive, milliseconds
+	public static final int REQUEST_BUFFER_SIZE = 16 * 1024;
+	public static final int RESPONSE_BUFFER_SIZE = 64 * 1024;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	public SharedHttpClient(int connectTimeout, long responseTimeout) {
+		QueuedThreadPool threadPool = new QueuedThreadPool(MAX_THREADS);
+		threadPool.setMinThreads(MIN_THREADS);
+		threadPool.setName("sf-http");
+		threadPool.setDaemon(true);
+		setThreadPool(threadPool);
+		setConnectorType(CONNECTOR_SELECT_CHANNEL);
+		setMaxConnectionsPerAddress(MAX_CONNECTIONS_PER_ADDRESS);
+		setIdleTimeout(IDLE_TIMEOUT);
+		setRequestBufferSize(REQUEST_BUFFER_SIZE);
+		setResponseBufferSize(RESPONSE_BUFFER_SIZE);
+		setConnectTimeout(connectTimeout);
+		setTimeout(responseTimeout);
+	}
+
+	@Override
+	protected void doStart() throws Exception {
+		// started by the first component only
+		if (running.compareAndSet(false, true)) {
+			super.doStart();
+		}
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		// stopped by close() only
+	}
+
+	/**
+	 * Release the selector, the threads and the connections of the client
+	 * 
+	 * @throws Exception
+	 */
+	public void close() throws Exception {
+		if (running.compareAndSet(true, false)) {
+			super.doStop();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package com.github.deeprot.integration.camel.dto;
+
+import org.apache.camel.component.salesforce.api.dto.bulk.ContentType;
+
+/**
+ * Tuning options of a Salesforce Bulk API query.
+ * 
+ * @author bruce.nguyen
+ *
+ */
+public class BulkQueryOptions {
+
+	public static final int DEFAULT_PARALLELISM = 4;
+	public static final int DEFAULT_PK_CHUNK_SIZE = 100_000;
+	/*
+	 * Objects having more records than this threshold are queried with PK
+	 * chunking enabled
+	 */
+	public static final int PK_CHUNKING_THRESHOLD = 1_000_000;
+
+	/*
+	 * Maximum number of result sets being downloaded and parsed at the same time
+	 */
+	int parallelism = DEFAULT_PARALLELISM;
+	/*
+	 * Whether the result sets are pushed to the sink in the order returned by
+	 * Salesforce, or as soon as they are ready
+	 */
+	boolean ordered = true;
+	/*
+	 * Number of records per chunk when PK chunking is enabled, 0 to disable it
+	 */
+	int pkChunkSize = 0;
+	/*
+	 * Format of the result sets, either XML or CSV. CSV payloads are several
+	 * times smaller and cheaper to decode.
+	 */
+	ContentType contentType = ContentType.XML;
+
+	/**
+	 * Build the options of a bulk query on an object, enabling PK chunking if
+	 * the object is large enough.
+	 * 
+	 * @param rowCount
+	 *            the number of records of the object, as counted during the
+	 *            metadata discovery
+	 * @return the bulk query options
+	 */
+	public static BulkQueryOptions forRowCount(int rowCount) {
+		BulkQueryOptions options = new BulkQueryOptions();
+		if (rowCount > PK_CHUNKING_THRESHOLD) {
+			options.setPkChunkSize(DEFAULT_PK_CHUNK_SIZE);
+		}
+		return options;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+	public boolean isOrdered() {
+		return ordered;
+	}
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+	public int getPkChunkSize() {
+		return pkChunkSize;
+	}
+	public void setPkChunkSize(int pkChunkSize) {
+		this.pkChunkSize = Math.max(0, pkChunkSize);
+	}
+	public boolean isPkChunking() {
+		return pkChunkSize > 0;
+	}
+	public ContentType getContentType() {
+		return contentType;
+	}
+	public void setContentType(ContentType contentType) {
+		if (contentType != ContentType.XML && contentType != ContentType.CSV) {
+			throw new IllegalArgumentException("Unsupported bulk query content type: " + contentType);
+		}
+		this.contentType = contentType;
+	}
+}
@@ -2,6 +2,7 @@ package com.github.deeprot.integration.camel.dto;
 
 import java.io.Serializable;
 import java.nio.charset.Charset;
+import java.util.Objects;
 
 import com.google.common.hash.Hashing;
 
@@ -19,8 +20,13 @@ public class SalesforceCredentials implements Serializable {
 	 */
 	private static final long serialVersionUID = -4875666467593592646L;
 	
-	String email;
-	String password;
+	private final String email;
+	private final String password;
+	/*
+	 * Hashes computed once, the credentials never change
+	 */
+	private transient volatile Long uniqueHash;
+	private transient volatile Long fingerprint;
 	
 	public SalesforceCredentials(String email, String password) {
 		super();
@@ -31,26 +37,71 @@ public class SalesforceCredentials implements Serializable {
 	public String getEmail() {
 		return email;
 	}
-	public void setEmail(String email) {
-		this.email = email;
-	}
 	public String getPassword() {
 		return password;
 	}
-	public void setPassword(String password) {
-		this.password = password;
-	}
 	
 	/**
 	 * The unique hash number for the object, considerable as a primary key.
 	 * Utilize the Guava library's <a href=
 	 * "http://docs.guava-libraries.googlecode.com/git/javadoc/com/google/common/hash/HashFunction.html"
-	 * >hash function</a>.
+	 * >hash function</a>. It names the Salesforce component of the
+	 * credentials, the in-process keys use the cheaper {@link #fingerprint()}.
 	 * 
 	 * @return the unique hash code
 	 */
 	public long uniqueHash() {
-		return Hashing.md5().hashString(email + password, 
-				Charset.forName("UTF-8")).asLong();
+		Long hash = uniqueHash;
+		if (hash == null) {
+			hash = Hashing.md5().hashString(email + password, 
+					Charset.forName("UTF-8")).asLong();
+			uniqueHash = hash;
+		}
+		return hash;
+	}
+	
+	/**
+	 * A cheap non-cryptographic hash of the credentials, for in-process keying
+	 * only: the registry of the components, the caches, the report runs and
+	 * the tenants of the governor. Unlike {@link #uniqueHash()}, it does not
+	 * name any resource.
+	 * <p>
+	 * The hash is computed once per credentials object: a new object is built
+	 * for each datasource request, but that object then travels in the
+	 * exchange headers of all the Salesforce requests of the scan or export.
+	 * </p>
+	 * 
+	 * @return the fingerprint of the credentials
+	 */
+	public long fingerprint() {
+		Long hash = fingerprint;
+		if (hash == null) {
+			hash = Hashing.murmur3_128().newHasher()
+					.putUnencodedChars(String.valueOf(email))
+					.putChar('\0')
+					.putUnencodedChars(String.valueOf(password))
+					.hash().asLong();
+			fingerprint = hash;
+		}
+		return hash;
+	}
+
+	@Override
+	public int hashCode() {
+		long hash = fingerprint();
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SalesforceCredentials)) {
+			return false;
+		}
+		SalesforceCredentials other = (SalesforceCredentials) obj;
+		return Objects.equals(email, other.email)
+				&& Objects.equals(password, other.password);
 	}
 }
@@ -9,6 +9,7 @@ import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_
 import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_CREATE_REPORT_INSTANCE;
 import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_DESCRIBE_REPORT;
 import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_FAILED_LOGIN;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_ALL_BATCHES;
 import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_BATCH_DATA;
 import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_BATCH_RESULTS;
 import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_DESCRIPTION;
@@ -19,32 +20,54 @@ import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_
 import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_REPORT_DATA;
 import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_VERSIONS;
 import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_LIST_REPORTS;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_QUERY_MORE;
 import static com.github.deeprot.integration.camel.SalesforceProcessor.HEADER_CREDENTIALS;
 import static com.github.deeprot.integration.camel.SalesforceProcessor.RESPONSE_TIMEOUT;
-import static org.apache.camel.component.salesforce.internal.OperationName.*;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.camel.Body;
 import org.apache.camel.CamelContext;
 import org.apache.camel.Consume;
 import org.apache.camel.DynamicRouter;
 import org.apache.camel.Header;
+import org.apache.camel.Headers;
 import org.apache.camel.Properties;
 import org.apache.camel.component.salesforce.SalesforceComponent;
 import org.apache.camel.component.salesforce.SalesforceEndpointConfig;
 import org.apache.camel.component.salesforce.api.dto.bulk.BatchInfo;
+import org.apache.camel.component.salesforce.api.dto.bulk.JobInfo;
 import org.apache.camel.component.salesforce.internal.OperationName;
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
+import com.github.deeprot.integration.camel.SalesforceMetrics;
+import com.github.deeprot.integration.camel.LimitInfoHttpClient;
+import com.github.deeprot.integration.camel.SharedHttpClient;
 import com.github.deeprot.integration.camel.dto.QueryRecords;
 import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
 import com.github.deeprot.integration.helper.SalesforceLoginConfigHelper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * Camel DynamicRouter for Salesforce Components, following the EIP pattern.
@@ -67,9 +90,67 @@ public class DynamicSalesforceComponentRouter {
 
 	private static final Logger LOG = LoggerFactory.getLogger(DynamicSalesforceComponentRouter.class);
 	
+	/*
+	 * Eviction policy of the components: idle ones are stopped, then the least
+	 * recently used ones while the registry exceeds its maximum size. A
+	 * component serving a request is never evicted.
+	 */
+	public static final int MAX_COMPONENTS = 500;
+	public static final long MAX_IDLE_MINUTES = 30;
+	public static final long EVICTION_INTERVAL = 60_000; // milliseconds
+	private static final int EVICTED_HISTORY_SIZE = 10_000;
+	
 	@Autowired
 	protected CamelContext camelContext;
 	
+	@Autowired
+	SalesforceMetrics metrics;
+	
+	@Value("${salesforce.component.maxCount:" + MAX_COMPONENTS + "}")
+	int maxComponents = MAX_COMPONENTS;
+	
+	@Value("${salesforce.component.maxIdleMinutes:" + MAX_IDLE_MINUTES + "}")
+	long maxIdleMinutes = MAX_IDLE_MINUTES;
+	
+	@Value("${salesforce.http.shared:true}")
+	boolean shareHttpClient = true;
+	
+	/*
+	 * HttpClient shared by the components, unless disabled
+	 */
+	private final SharedHttpClient sharedHttpClient = new SharedHttpClient(CONNECTION_TIMEOUT, RESPONSE_TIMEOUT);
+	/*
+	 * Listener of the Sforce-Limit-Info headers of all the HttpClients
+	 */
+	private volatile BiConsumer<String, String> limitInfoListener;
+	
+	/*
+	 * Registry of the Salesforce components, keyed by credentials fingerprint
+	 */
+	private final ConcurrentMap<Long, ComponentEntry> components = new ConcurrentHashMap<>();
+	/*
+	 * Recently evicted credentials fingerprints, to count the re-creations
+	 */
+	private final Cache<Long, Boolean> evictedHashes = CacheBuilder.newBuilder()
+			.maximumSize(EVICTED_HISTORY_SIZE)
+			.<Long, Boolean>build();
+	
+	@PostConstruct
+	public void registerGauges() {
+		metrics.gauge("component.live", components::size);
+		metrics.gauge("component.inFlight", () -> components.values().stream().mapToInt(ComponentEntry::getInFlight).sum());
+		metrics.gauge("http.shared.threads", () -> ((QueuedThreadPool) sharedHttpClient.getThreadPool()).getThreads());
+	}
+	
+	@PreDestroy
+	public void closeHttpClient() {
+		try {
+			sharedHttpClient.close();
+		} catch (Exception e) {
+			LOG.error("Failed to close the shared HttpClient due to: " + e.getMessage(), e);
+		}
+	}
+	
 	/**
 	 * Build the Salesforce Component name based on the user credentials. The
 	 * name should be UNIQUE as the component will be cached.
@@ -85,36 +166,224 @@ public class DynamicSalesforceComponentRouter {
 	/**
 	 * Ensure the Salesforce component of a user exists in the Camel context,
 	 * and started. Otherwise the payload is not routed to the Salesforce API.
+	 * <p>
+	 * The steady-state lookup is a lock-free read of the component registry.
+	 * Only the first request of a user pays the creation of the component and
+	 * the login, under a lock of its own component, so the other users are
+	 * never blocked. A component being evicted is waited for, then created
+	 * again.
+	 * </p>
 	 * 
 	 * @param creds Salesforce Credentials
+	 * @param retain whether a request is put in flight on the component,
+	 *            which then cannot be evicted until the request is released
 	 */
-	private synchronized SalesforceComponent ensureComponentExistence(SalesforceCredentials creds) {
+	private ComponentEntry ensureComponentExistence(SalesforceCredentials creds, boolean retain) {
 		Assert.notNull(creds, "Salesforce Credentials must be set in the message header");
-		SalesforceComponent component = (SalesforceComponent) camelContext.getComponent(componentName(creds));
-		if (component == null) {
-			component = new SalesforceComponent();
-			// configure login
-			component.setLoginConfig(SalesforceLoginConfigHelper.getLoginConfig(creds));
-			// configure HttpClient
-			SalesforceEndpointConfig config = new SalesforceEndpointConfig();
-			HttpClient httpClient = new HttpClient();
-            httpClient.setConnectorType(HttpClient.CONNECTOR_SELECT_CHANNEL);
-            httpClient.setConnectTimeout(CONNECTION_TIMEOUT);
-            httpClient.setTimeout(RESPONSE_TIMEOUT);
-            config.setHttpClient(httpClient);
-            component.setConfig(config);
-            
-			camelContext.addComponent(componentName(creds), component);
+		long fingerprint = creds.fingerprint();
+		while (true) {
+			ComponentEntry entry = components.get(fingerprint);
+			if (entry == null) {
+				entry = components.computeIfAbsent(fingerprint, hash -> createComponent(creds));
+			}
+			if (retain ? entry.retain() : !entry.isEvicted()) {
+				entry.lastAccess = System.currentTimeMillis();
+				if (!entry.component.isStarted()) {
+					startComponent(entry);
+				}
+				return entry;
+			}
+			// evicted concurrently: the eviction holds the component lock until
+			// the component is removed from the Camel context
+			synchronized (entry.component) {
+				components.remove(fingerprint, entry);
+			}
 		}
-		try {
-			if (!component.isStarted() && !component.isStarting()) {
-				component.start();
+	}
+	
+	/*
+	 * Create and register the component of a user, no network call here
+	 */
+	private ComponentEntry createComponent(SalesforceCredentials creds) {
+		String name = componentName(creds);
+		if (camelContext.hasComponent(name) != null) {
+			return new ComponentEntry(name, (SalesforceComponent) camelContext.getComponent(name));
+		}
+		SalesforceComponent component = new SalesforceComponent();
+		// configure login
+		component.setLoginConfig(SalesforceLoginConfigHelper.getLoginConfig(creds));
+		// configure HttpClient
+		SalesforceEndpointConfig config = new SalesforceEndpointConfig();
+		if (shareHttpClient) {
+			config.setHttpClient(sharedHttpClient);
+		} else {
+			LimitInfoHttpClient httpClient = new LimitInfoHttpClient();
+			httpClient.setLimitInfoListener(limitInfoListener);
+			httpClient.setConnectorType(HttpClient.CONNECTOR_SELECT_CHANNEL);
+			httpClient.setConnectTimeout(CONNECTION_TIMEOUT);
+			httpClient.setTimeout(RESPONSE_TIMEOUT);
+			config.setHttpClient(httpClient);
+		}
+		component.setConfig(config);
+
+		camelContext.addComponent(name, component);
+		metrics.increment("component.created");
+		if (evictedHashes.getIfPresent(creds.fingerprint()) != null) {
+			evictedHashes.invalidate(creds.fingerprint());
+			metrics.increment("component.recreated");
+		}
+		return new ComponentEntry(name, component);
+	}
+	
+	/*
+	 * Start (log in) the component, locking the component of this user only
+	 */
+	private void startComponent(ComponentEntry entry) {
+		synchronized (entry.component) {
+			if (entry.component.isStarted() || entry.component.isStarting()) {
+				return;
 			}
-			LOG.debug("Salesforce component session: " + component.getSession().getAccessToken());
-		} catch (Exception e) {
-			LOG.error("Failed to start component {" + componentName(creds) + "} due to: " + e.getMessage(), e);
+			try {
+				long duration = System.currentTimeMillis();
+				entry.component.start();
+				LOG.debug("Salesforce component {} is started in {} m-seconds.", entry.name, System.currentTimeMillis() - duration);
+			} catch (Exception e) {
+				LOG.error("Failed to start component {" + entry.name + "} due to: " + e.getMessage(), e);
+			}
+		}
+	}
+	
+	/**
+	 * Evict the components idle for more than the maximum idle time, then the
+	 * least recently used ones until the registry fits its maximum size. An
+	 * evicted component is stopped and removed from the Camel context with its
+	 * endpoints, it is created again on the next request of its user.
+	 */
+	@Scheduled(fixedDelay = EVICTION_INTERVAL)
+	public void evictComponents() {
+		long idleSince = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(maxIdleMinutes);
+		components.forEach((hash, entry) -> {
+			long lastAccess = entry.lastAccess;
+			if (lastAccess < idleSince) {
+				evict(hash, entry, lastAccess, "idle");
+			}
+		});
+		int excess = components.size() - maxComponents;
+		if (excess > 0) {
+			// snapshot the last access times, they change while sorting
+			List<Map.Entry<Long, Long>> lastAccesses = new ArrayList<>(components.size());
+			components.forEach((hash, entry) -> lastAccesses.add(new AbstractMap.SimpleImmutableEntry<>(hash, entry.lastAccess)));
+			lastAccesses.sort(Map.Entry.comparingByValue());
+			lastAccesses.stream().limit(excess).forEach(lastAccess -> {
+				ComponentEntry entry = components.get(lastAccess.getKey());
+				if (entry != null) {
+					evict(lastAccess.getKey(), entry, lastAccess.getValue(), "lru");
+				}
+			});
+		}
+	}
+	
+	/*
+	 * Evict a component unless it is serving a request or was used since the
+	 * eviction decision. Marking the entry as evicted and removing the
+	 * component happen under the component lock, so no request can retain
+	 * the entry in between.
+	 */
+	private void evict(Long hash, ComponentEntry entry, long lastAccess, String reason) {
+		synchronized (entry.component) {
+			if (!entry.inFlight.compareAndSet(0, ComponentEntry.EVICTED)) {
+				metrics.increment("component.eviction.deferred");
+				return;
+			}
+			if (entry.lastAccess != lastAccess) {
+				// used in the meantime, keep it
+				entry.inFlight.set(0);
+				return;
+			}
+			components.remove(hash, entry);
+			removeComponent(entry);
+		}
+		evictedHashes.put(hash, Boolean.TRUE);
+		metrics.increment("component.evicted." + reason);
+		LOG.debug("Salesforce component {} is evicted ({}).", entry.name, reason);
+	}
+	
+	/*
+	 * Stop the component then remove it and its endpoints from the Camel context
+	 */
+	private void removeComponent(ComponentEntry entry) {
+		synchronized (entry.component) {
+			try {
+				if (!entry.component.isStoppingOrStopped()) {
+					entry.component.stop(); // release the resource used by the component
+				}
+				camelContext.removeEndpoints(entry.name + ":*");
+			} catch (Exception e) {
+				LOG.error("Failed to stop component {" + entry.name + "} due to: " + e.getMessage(), e);
+			}
+			camelContext.removeComponent(entry.name);
+		}
+	}
+	
+	/**
+	 * Get the started Salesforce component of a user. The component session
+	 * and HttpClient are shared with the requests which are not supported by
+	 * the Camel Salesforce component.
+	 * 
+	 * @param creds Salesforce Credentials
+	 * @return the salesforce component
+	 */
+	public SalesforceComponent getComponent(SalesforceCredentials creds) {
+		return ensureComponentExistence(creds, false).component;
+	}
+	
+	/**
+	 * Put a request in flight on the started Salesforce component of a user.
+	 * The component is not evicted until the lease is closed, which must be
+	 * done once the response is received.
+	 * 
+	 * @param creds Salesforce Credentials
+	 * @return the lease of the component
+	 */
+	public ComponentLease lease(SalesforceCredentials creds) {
+		return new ComponentLease(ensureComponentExistence(creds, true));
+	}
+	
+	/**
+	 * Get the Salesforce component of a user without creating nor starting it
+	 * 
+	 * @param creds Salesforce Credentials
+	 * @return the started salesforce component, NULL if none
+	 */
+	public SalesforceComponent getComponentIfStarted(SalesforceCredentials creds) {
+		ComponentEntry entry = components.get(creds.fingerprint());
+		return entry != null && entry.component.isStarted() ? entry.component : null;
+	}
+	
+	/**
+	 * @return the HttpClient shared by the components, always returned but
+	 *         only used if <i>salesforce.http.shared</i> is enabled (default)
+	 */
+	public SharedHttpClient getSharedHttpClient() {
+		return sharedHttpClient;
+	}
+	
+	/**
+	 * Listen to the <i>Sforce-Limit-Info</i> headers received by the
+	 * components, whether their HttpClient is shared or not.
+	 * 
+	 * @param limitInfoListener the listener, receiving the org ID and the
+	 *            header value
+	 */
+	public void setLimitInfoListener(BiConsumer<String, String> limitInfoListener) {
+		this.limitInfoListener = limitInfoListener;
+		sharedHttpClient.setLimitInfoListener(limitInfoListener);
+		if (!shareHttpClient) {
+			components.values().stream()
+					.map(entry -> entry.component.getConfig().getHttpClient())
+					.filter(httpClient -> httpClient instanceof LimitInfoHttpClient)
+					.forEach(httpClient -> ((LimitInfoHttpClient) httpClient).setLimitInfoListener(limitInfoListener));
 		}
-		return component;
 	}
 	
 	/**
@@ -128,13 +397,15 @@ public class DynamicSalesforceComponentRouter {
 	 */
 	private void evictComponent(SalesforceCredentials creds) {
 		Assert.notNull(creds, "Salesforce Credentials must be set in the message header");
-		SalesforceComponent component = (SalesforceComponent) camelContext.getComponent(componentName(creds));
-		try {
-			if (component != null && !component.isStoppingOrStopped()) {
-				component.stop(); // release the resource used by the component
+		ComponentEntry entry = components.get(creds.fingerprint());
+		if (entry != null) {
+			// the session is unusable, evicted even with requests in flight
+			synchronized (entry.component) {
+				entry.inFlight.set(ComponentEntry.EVICTED);
+				components.remove(creds.fingerprint(), entry);
+				removeComponent(entry);
 			}
-		} catch (Exception e) {
-			LOG.error("Failed to stop component {" + componentName(creds) + "} due to: " + e.getMessage(), e);
+			metrics.increment("component.evicted.failedLogin");
 		}
 	}	
 
@@ -142,75 +413,206 @@ public class DynamicSalesforceComponentRouter {
 	 * Forward the payload from the DIRECT endpoint to the Salesforce component relevant to the credentials object.
 	 * The exit condition ensures the payload to be forwarded ONCE.
 	 * 
-	 * @param creds SF credentials
+	 * @param route the operation, identified by the consumer of the DIRECT endpoint
+	 * @param headers the message headers, including the credentials
 	 * @param properties Exchange properties - this is modified after each forward loop 
+	 * @param body the message body
 	 * @return the next OUT endpoint
 	 */
-	private String slipOnce(SalesforceCredentials creds, Map<String, Object> properties, Object messageBody) {
-		
-		ensureComponentExistence(creds);
-
+	private String slipOnce(Route route, Map<String, Object> headers, Map<String, Object> properties, Object body) {
 		if (properties.containsKey("CamelSlipEndpoint")) {
 			/*
 			 * NOTE: this is the exit condition
 			 */
 			return null;
-		} else {
-			String toEndpoint = properties.get("CamelToEndpoint").toString();
-			if (toEndpoint.endsWith(FROM_URI_GET_VERSIONS)) {
-				return componentName(creds) + ":getVersions";
-			} else if (toEndpoint.endsWith(FROM_URI_GET_GLOBAL_OBJECTS)) {
-				return componentName(creds) + ":getGlobalObjects";
-			} else if (toEndpoint.endsWith(FROM_URI_GET_DESCRIPTION)) {
-				return componentName(creds) + ":getDescription";
-			} else if (toEndpoint.endsWith(FROM_URI_COUNT_OBJECTS)) {
-				String objectName = (String) messageBody;
-				return componentName(creds) + ":query?sObjectQuery=SELECT COUNT() FROM " + objectName + "&sObjectClass=" + QueryRecords.class.getName();
-			} else if (toEndpoint.endsWith(FROM_URI_GET_OBJECT)) {
-				return componentName(creds) + ":query?sObjectClass=" + QueryRecords.class.getName();
-			} else if (toEndpoint.endsWith(FROM_URI_GET_OBJECT_WINDOW)) {
-				return componentName(creds) + ":query?sObjectClass=" + QueryRecords.class.getName();
-			} else if (toEndpoint.endsWith(FROM_URI_CREATE_JOB)) {
-				return componentName(creds) + ":createJob";
-			} else if (toEndpoint.endsWith(FROM_URI_CLOSE_JOB)) {
-				return componentName(creds) + ":closeJob";
-			} else if (toEndpoint.endsWith(FROM_URI_CREATE_BATCH)) {
-				return componentName(creds) + ":createBatch?contentType="
-						+ properties.get("contentType") + "&jobId="
-						+ properties.get("jobId");
-			} else if (toEndpoint.endsWith(FROM_URI_CHECK_BATCH_STATUS)) {
-				return componentName(creds) + ":getBatch";
-			} else if (toEndpoint.endsWith(FROM_URI_GET_BATCH_RESULTS)) {
-				return componentName(creds) + ":getQueryResultIds" + "?jobId="
-				+ properties.get("jobId");
-			} else if (toEndpoint.endsWith(FROM_URI_GET_BATCH_DATA)) {
-				return componentName(creds) + ":getQueryResult?"
-						+ "jobId=" + properties.get("jobId")
-						+ "&batchId=" + properties.get("batchId");
-			} else if (toEndpoint.endsWith(FROM_URI_LIST_REPORTS)) {
-				StringBuilder query = new StringBuilder(componentName(creds))
-					.append(":query?sObjectClass=").append(QueryRecords.class.getName());
-				return query.toString();
-			} else if (toEndpoint.endsWith(FROM_URI_DESCRIBE_REPORT)) {
-				return componentName(creds) + ":"
-						+ DESCRIBE_REPORT.value();
-			} else if (toEndpoint.endsWith(FROM_URI_GET_REPORT_DATA)) {
-				return componentName(creds) + ":"
-						+ GET_REPORT_DATA.value()
-						+ "?includeDetails=" + properties.get("includeDetails");
-			} else if (toEndpoint.endsWith(FROM_URI_CREATE_REPORT_INSTANCE)) {
-				return componentName(creds) + ":" 
-					+ CREATE_REPORT_DATA_INSTANCE.value()
-					+ "?includeDetails=" + properties.get("includeDetails");
-			} else if (toEndpoint.endsWith(FROM_URI_GET_INSTANCE_DATA)) {
-				return componentName(creds) + ":" 
-					+ GET_REPORT_INSTANCE_DATA.value()
-					+ "?reportId=" + properties.get("reportId");
-			} else {
-				/*
-				 * NOTE: this is the exit condition
-				 */
-				return null;
+		}
+		return endpoint((SalesforceCredentials) headers.get(HEADER_CREDENTIALS), route, route.params(headers, body));
+	}
+	
+	/*
+	 * Build the endpoint URI of an operation from the precomputed endpoints of the component
+	 */
+	private String endpoint(SalesforceCredentials creds, Route route, Object... params) {
+		ComponentEntry entry = ensureComponentExistence(creds, false);
+		String endpoint = entry.endpoints[route.ordinal()];
+		if (params.length == 0) {
+			return endpoint;
+		}
+		StringBuilder uri = new StringBuilder(endpoint.length() + 64).append(endpoint);
+		for (int i = 0; i < params.length; i++) {
+			uri.append(route.paramPrefixes[i]).append(params[i]);
+		}
+		return uri.toString();
+	}
+	
+	/**
+	 * Resolve the endpoint of the Salesforce component an operation would be
+	 * routed to, so that the request can be sent straight to it. The
+	 * parameters are read from the message headers and body exactly like the
+	 * consumers of the DIRECT endpoints do.
+	 * 
+	 * @param fromUri
+	 *            the DIRECT endpoint of the operation
+	 * @param headers
+	 *            the message headers, including the credentials
+	 * @param body
+	 *            the message body
+	 * @return the endpoint URI, NULL if the operation is not routed to a
+	 *         Salesforce component
+	 */
+	public String resolveEndpoint(String fromUri, Map<String, Object> headers, Object body) {
+		Route route = Route.of(fromUri);
+		if (route == null) {
+			return null;
+		}
+		return endpoint((SalesforceCredentials) headers.get(HEADER_CREDENTIALS), route, route.params(headers, body));
+	}
+
+	/*
+	 * Operations of the Salesforce components: the path of the endpoint and
+	 * the names of its parameters
+	 */
+	private enum Route {
+		GET_VERSIONS("getVersions", from(FROM_URI_GET_VERSIONS)),
+		GET_GLOBAL_OBJECTS("getGlobalObjects", from(FROM_URI_GET_GLOBAL_OBJECTS)),
+		GET_DESCRIPTION("getDescription", from(FROM_URI_GET_DESCRIPTION)),
+		QUERY("query?sObjectClass=" + QueryRecords.class.getName(), from(FROM_URI_GET_OBJECT, FROM_URI_GET_OBJECT_WINDOW, FROM_URI_LIST_REPORTS)),
+		COUNT("query?sObjectClass=" + QueryRecords.class.getName(), from(FROM_URI_COUNT_OBJECTS), "sObjectQuery") {
+			@Override
+			Object[] params(Map<String, Object> headers, Object body) {
+				// the body is the object name
+				return new Object[] { "SELECT COUNT() FROM " + body };
+			}
+		},
+		QUERY_MORE("queryMore?sObjectClass=" + QueryRecords.class.getName(), from(FROM_URI_QUERY_MORE)),
+		CREATE_JOB("createJob", from(FROM_URI_CREATE_JOB)),
+		CLOSE_JOB("closeJob", from(FROM_URI_CLOSE_JOB)),
+		CREATE_BATCH("createBatch", from(FROM_URI_CREATE_BATCH), "contentType", "jobId"),
+		GET_BATCH("getBatch", from(FROM_URI_CHECK_BATCH_STATUS)),
+		GET_ALL_BATCHES("getAllBatches", from(FROM_URI_GET_ALL_BATCHES), "jobId"),
+		GET_QUERY_RESULT_IDS("getQueryResultIds", from(FROM_URI_GET_BATCH_RESULTS), "jobId"),
+		GET_QUERY_RESULT("getQueryResult", from(FROM_URI_GET_BATCH_DATA), "jobId", "batchId"),
+		DESCRIBE_REPORT(OperationName.DESCRIBE_REPORT.value(), from(FROM_URI_DESCRIBE_REPORT)),
+		GET_REPORT_DATA(OperationName.GET_REPORT_DATA.value(), from(FROM_URI_GET_REPORT_DATA), "includeDetails"),
+		CREATE_REPORT_INSTANCE(OperationName.CREATE_REPORT_DATA_INSTANCE.value(), from(FROM_URI_CREATE_REPORT_INSTANCE), "includeDetails"),
+		GET_REPORT_INSTANCE_DATA(OperationName.GET_REPORT_INSTANCE_DATA.value(), from(FROM_URI_GET_INSTANCE_DATA), "reportId");
+		
+		/*
+		 * Routes keyed by the DIRECT endpoints they consume
+		 */
+		private static final Map<String, Route> BY_FROM_URI = new HashMap<>();
+		static {
+			for (Route route : values()) {
+				for (String fromUri : route.fromUris) {
+					BY_FROM_URI.put(fromUri, route);
+				}
+			}
+		}
+		
+		final String path;
+		final String[] fromUris;
+		final String[] paramNames;
+		final String[] paramPrefixes;
+		
+		Route(String path, String[] fromUris, String... paramNames) {
+			this.path = path;
+			this.fromUris = fromUris;
+			this.paramNames = paramNames;
+			this.paramPrefixes = new String[paramNames.length];
+			for (int i = 0; i < paramNames.length; i++) {
+				paramPrefixes[i] = (i == 0 && path.indexOf('?') < 0 ? "?" : "&") + paramNames[i] + "=";
+			}
+		}
+		
+		/*
+		 * The values of the parameters, read from the message headers of the
+		 * same names
+		 */
+		Object[] params(Map<String, Object> headers, Object body) {
+			Object[] params = new Object[paramNames.length];
+			for (int i = 0; i < paramNames.length; i++) {
+				params[i] = headers.get(paramNames[i]);
+			}
+			return params;
+		}
+		
+		static Route of(String fromUri) {
+			return BY_FROM_URI.get(fromUri);
+		}
+		
+		private static String[] from(String... fromUris) {
+			return fromUris;
+		}
+	}
+	
+	/*
+	 * Registry entry of a component, with its precomputed endpoint URIs and
+	 * its number of requests in flight, EVICTED once evicted
+	 */
+	private static class ComponentEntry {
+		static final int EVICTED = -1;
+		
+		final String name;
+		final SalesforceComponent component;
+		final String[] endpoints;
+		final AtomicInteger inFlight = new AtomicInteger();
+		volatile long lastAccess = System.currentTimeMillis();
+		
+		ComponentEntry(String name, SalesforceComponent component) {
+			this.name = name;
+			this.component = component;
+			this.endpoints = new String[Route.values().length];
+			for (Route route : Route.values()) {
+				endpoints[route.ordinal()] = name + ":" + route.path;
+			}
+		}
+		
+		boolean retain() {
+			int count;
+			do {
+				count = inFlight.get();
+				if (count == EVICTED) {
+					return false;
+				}
+			} while (!inFlight.compareAndSet(count, count + 1));
+			return true;
+		}
+		
+		void release() {
+			inFlight.updateAndGet(count -> count > 0 ? count - 1 : count);
+		}
+		
+		boolean isEvicted() {
+			return inFlight.get() == EVICTED;
+		}
+		
+		int getInFlight() {
+			return Math.max(0, inFlight.get());
+		}
+	}
+	
+	/**
+	 * Request in flight on a Salesforce component, released once
+	 */
+	public static final class ComponentLease implements AutoCloseable {
+		private final ComponentEntry entry;
+		private final AtomicInteger released = new AtomicInteger();
+		
+		private ComponentLease(ComponentEntry entry) {
+			this.entry = entry;
+		}
+		
+		/**
+		 * @return the started component
+		 */
+		public SalesforceComponent getComponent() {
+			return entry.component;
+		}
+		
+		@Override
+		public void close() {
+			if (released.compareAndSet(0, 1)) {
+				entry.release();
 			}
 		}
 	}
@@ -224,132 +626,109 @@ public class DynamicSalesforceComponentRouter {
 	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_GET_VERSIONS)
 	@DynamicRouter
-	public String getVersions(@Header(HEADER_CREDENTIALS) SalesforceCredentials creds, @Properties Map<String, Object> properties) {
-		return slipOnce(creds, properties, null);
+	public String getVersions(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.GET_VERSIONS, headers, properties, body);
 	}
 	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_GET_GLOBAL_OBJECTS)
 	@DynamicRouter
-	public String getGlobalObjects(@Header(HEADER_CREDENTIALS) SalesforceCredentials creds, @Properties Map<String, Object> properties) {
-		return slipOnce(creds, properties, null);
+	public String getGlobalObjects(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.GET_GLOBAL_OBJECTS, headers, properties, body);
 	}
 	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_GET_DESCRIPTION)
 	@DynamicRouter
-	public String describeObject(@Header(HEADER_CREDENTIALS) SalesforceCredentials creds, @Properties Map<String, Object> properties) {
-		return slipOnce(creds, properties, null);
+	public String describeObject(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.GET_DESCRIPTION, headers, properties, body);
 	}
 	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_COUNT_OBJECTS)
 	@DynamicRouter
-	public String count(@Header(HEADER_CREDENTIALS) SalesforceCredentials creds, @Properties Map<String, Object> properties, @Body String objectName) {
-		return slipOnce(creds, properties, objectName);
+	public String count(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.COUNT, headers, properties, body);
 	}
 	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_GET_OBJECT)
 	@DynamicRouter
-	public String get(@Header(HEADER_CREDENTIALS) SalesforceCredentials creds, 
-			@Header("objectName") String objectName,
-			@Header("fields") String fields,
-			@Properties Map<String, Object> properties, @Body String query) {
-		properties.put("objectName", objectName);
-		properties.put("fields", fields);
-		return slipOnce(creds, properties, query);
+	public String get(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.QUERY, headers, properties, body);
 	}
 	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_GET_OBJECT_WINDOW)
 	@DynamicRouter
-	public String getWindow(@Header(HEADER_CREDENTIALS) SalesforceCredentials creds, 
-			@Header("objectName") String objectName,
-			@Header("fields") String fields,
-			@Properties Map<String, Object> properties, @Body String query) {
-		properties.put("objectName", objectName);
-		properties.put("fields", fields);
-		return slipOnce(creds, properties, query);
+	public String getWindow(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.QUERY, headers, properties, body);
+	}
+	
+	@Consume(uri = FROM_COMPONENT + FROM_URI_QUERY_MORE)
+	@DynamicRouter
+	public String queryMore(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.QUERY_MORE, headers, properties, body);
 	}
 	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_CREATE_JOB)
 	@DynamicRouter
-	public String bulkCreateJob(@Header(HEADER_CREDENTIALS) SalesforceCredentials creds, 
-			@Properties Map<String, Object> properties) {
-		return slipOnce(creds, properties, null);
+	public String bulkCreateJob(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.CREATE_JOB, headers, properties, body);
 	}
 	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_CLOSE_JOB)
 	@DynamicRouter
-	public String bulkCloseJob(@Header(HEADER_CREDENTIALS) SalesforceCredentials creds, 
-			@Properties Map<String, Object> properties) {
-		return slipOnce(creds, properties, null);
+	public String bulkCloseJob(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.CLOSE_JOB, headers, properties, body);
 	}
 	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_CREATE_BATCH)
 	@DynamicRouter
-	public String bulkCreateBatch(@Header(HEADER_CREDENTIALS) SalesforceCredentials creds,
-			@Header("jobId") String jobId,
-			@Header("contentType") String contentType,
-			@Properties Map<String, Object> properties, @Body String query) {
-		properties.put("jobId", jobId);
-		properties.put("contentType", contentType);
-		return slipOnce(creds, properties, query);
+	public String bulkCreateBatch(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.CREATE_BATCH, headers, properties, body);
 	}
 	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_CHECK_BATCH_STATUS)
 	@DynamicRouter
-	public String bulkGetBatch(@Header(HEADER_CREDENTIALS) SalesforceCredentials creds,
-			@Properties Map<String, Object> properties, @Body BatchInfo batchInfo) {
-		return slipOnce(creds, properties, batchInfo);
+	public String bulkGetBatch(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.GET_BATCH, headers, properties, body);
+	}
+	
+	@Consume(uri = FROM_COMPONENT + FROM_URI_GET_ALL_BATCHES)
+	@DynamicRouter
+	public String bulkGetAllBatches(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.GET_ALL_BATCHES, headers, properties, body);
 	}
 	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_GET_BATCH_RESULTS)
 	@DynamicRouter
-	public String bulkGetBatchResults(@Header(HEADER_CREDENTIALS) SalesforceCredentials creds,
-			@Header("jobId") String jobId,
-			@Properties Map<String, Object> properties, @Body String batchId) {
-		properties.put("jobId", jobId);	
-		return slipOnce(creds, properties, batchId);
+	public String bulkGetBatchResults(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.GET_QUERY_RESULT_IDS, headers, properties, body);
 	}
 	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_GET_BATCH_DATA)
 	@DynamicRouter
-	public String bulkGetBatchResultData(@Header(HEADER_CREDENTIALS) SalesforceCredentials creds,
-			@Header("jobId") String jobId,
-			@Header("batchId") String batchId,
-			@Properties Map<String, Object> properties, @Body Object body) {
-
+	public String bulkGetBatchResultData(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
 		if (body instanceof String) {
-			properties.put("jobId", jobId);
-			properties.put("batchId", batchId);
-			return slipOnce(creds, properties, body);
+			return slipOnce(Route.GET_QUERY_RESULT, headers, properties, body);
 		} else {
 			return null;
 		}
-	}	
-
+	}
+	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_LIST_REPORTS)
 	@DynamicRouter
-	public String listReports(
-			@Header(HEADER_CREDENTIALS) SalesforceCredentials creds,
-			@Properties Map<String, Object> properties, @Body String query) {
-		return slipOnce(creds, properties, query);
+	public String listReports(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.QUERY, headers, properties, body);
 	}
-
+	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_DESCRIBE_REPORT)
 	@DynamicRouter
-	public String describeReport(
-			@Header(HEADER_CREDENTIALS) SalesforceCredentials creds,
-			@Properties Map<String, Object> properties, @Body String reportId) {
-		return slipOnce(creds, properties, reportId);
+	public String describeReport(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.DESCRIBE_REPORT, headers, properties, body);
 	}
-
+	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_GET_REPORT_DATA)
 	@DynamicRouter
-	public String getReportData(
-			@Header(HEADER_CREDENTIALS) SalesforceCredentials creds,
-			@Header("includeDetails") boolean includeDetails,
-			@Properties Map<String, Object> properties, @Body Object body) {
-		properties.put("includeDetails", includeDetails);
+	public String getReportData(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
 		if (body instanceof String) {
-			return slipOnce(creds, properties, body);
+			return slipOnce(Route.GET_REPORT_DATA, headers, properties, body);
 		} else {
 			return null;
 		}
@@ -357,23 +736,15 @@ public class DynamicSalesforceComponentRouter {
 	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_CREATE_REPORT_INSTANCE)
 	@DynamicRouter
-	public String executeReportAsync(
-			@Header(HEADER_CREDENTIALS) SalesforceCredentials creds,
-			@Header("includeDetails") boolean includeDetails,
-			@Properties Map<String, Object> properties, @Body String reportId) {
-		properties.put("includeDetails", includeDetails);
-		return slipOnce(creds, properties, reportId);
+	public String executeReportAsync(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
+		return slipOnce(Route.CREATE_REPORT_INSTANCE, headers, properties, body);
 	}
-
+	
 	@Consume(uri = FROM_COMPONENT + FROM_URI_GET_INSTANCE_DATA)
 	@DynamicRouter
-	public String getReportDataAsync(
-			@Header(HEADER_CREDENTIALS) SalesforceCredentials creds,
-			@Header("reportId") String reportId,
-			@Properties Map<String, Object> properties, @Body Object body) {
+	public String getReportDataAsync(@Headers Map<String, Object> headers, @Properties Map<String, Object> properties, @Body Object body) {
 		if (body instanceof String) {
-			properties.put("reportId", reportId);
-			return slipOnce(creds, properties, body);
+			return slipOnce(Route.GET_REPORT_INSTANCE_DATA, headers, properties, body);
 		} else {
 			return null;
 		}
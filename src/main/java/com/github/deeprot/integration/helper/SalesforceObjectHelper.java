@@ -1,10 +1,15 @@
 package com.github.deeprot.integration.helper;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -12,10 +17,19 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.apache.camel.CamelExecutionException;
 import org.apache.camel.component.salesforce.api.SalesforceException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.DeserializationConfig;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.SerializationConfig;
@@ -28,6 +42,7 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.github.deeprot.integration.camel.SalesforceProcessor.ReportType;
+import com.github.deeprot.integration.camel.SalesforceRetryPolicy;
 import com.github.deeprot.model.ColumnFieldMetadata;
 import com.github.deeprot.model.DataType;
 import com.jayway.jsonpath.Configuration;
@@ -59,6 +74,21 @@ public class SalesforceObjectHelper {
 		objectMapper.configure(SerializationConfig.Feature.INDENT_OUTPUT, false);
 		objectMapper.setSerializationInclusion(Inclusion.NON_NULL);
 	}
+	/*
+	 * Rows of a joined report are tagged with the ID of their block, e.g. "B0"
+	 */
+	public static final String REPORT_BLOCK_FIELD = "BLOCK_ID";
+	private static final char REPORT_BLOCK_SEPARATOR = '#';
+	/*
+	 * Body of a CSV bulk result set having no record
+	 */
+	private static final String CSV_NO_RECORDS = "Records not found for this query";
+	private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+	static {
+		xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
 	private static Configuration jsonConfig = Configuration.defaultConfiguration();
 	static {
 		jsonConfig.addOptions(Option.DEFAULT_PATH_LEAF_TO_NULL);
@@ -80,6 +110,40 @@ public class SalesforceObjectHelper {
 		}
 	}
 
+    /**
+     * Convert a JSON string to an object, e.g. a Salesforce DTO
+     *
+     * @param content the JSON string
+     * @param type the type of the object
+     * @return the object
+     * @throws IOException if the content is not a valid JSON of the type
+     */
+    public static <T> T readJson(String content, Class<T> type) throws IOException {
+        return objectMapper.readValue(content, type);
+    }
+
+    /**
+     * Convert a JSON structure, e.g. a parsed JSON map, to an object
+     *
+     * @param fromValue the JSON structure
+     * @param type the type of the object
+     * @return the object
+     */
+    public static <T> T convertJson(Object fromValue, Class<T> type) {
+        return objectMapper.convertValue(fromValue, type);
+    }
+
+    /**
+     * Write an object as a compact JSON string
+     *
+     * @param obj the object
+     * @return the JSON string
+     * @throws IOException if the object cannot be serialized
+     */
+    public static String writeJson(Object obj) throws IOException {
+        return objectMapper.writeValueAsString(obj);
+    }
+
     /**
      * Convert an input stream to JSON structure
      *
@@ -126,28 +190,309 @@ public class SalesforceObjectHelper {
 		return null;
 	}
 
+	/**
+	 * Convert Salesforce XML stream to Mongo basic object using a pull parser.
+	 * Unlike {@link #readSalesforceXmlStreamToMongoObject(InputStream, Map)}, no
+	 * intermediate tree is built: the &lt;records&gt; elements are walked one at
+	 * a time and their fields are converted straight into the Mongo object. The
+	 * output is identical.
+	 * 
+	 * @param inputStream the XML inputstream
+	 * @param metadata the metadata map
+	 * @return the collection of basic DB object
+	 */
+	public static Collection<BasicDBObject> streamSalesforceXmlToMongoObject(InputStream inputStream, Map<String, String> metadata) {
+		List<BasicDBObject> records = new ArrayList<>();
+		return streamSalesforceXmlToMongoObject(inputStream, metadata, records::add) < 0 ? null : records;
+	}
+
+	/**
+	 * Push-based variant of
+	 * {@link #streamSalesforceXmlToMongoObject(InputStream, Map)}, each record
+	 * is handed to the consumer as soon as it is parsed.
+	 * 
+	 * @param inputStream the XML inputstream
+	 * @param metadata the metadata map
+	 * @param consumer the consumer of the basic DB objects
+	 * @return the number of records parsed, or -1 if the stream could not be parsed
+	 */
+	public static int streamSalesforceXmlToMongoObject(InputStream inputStream, Map<String, String> metadata, Consumer<BasicDBObject> consumer) {
+		XMLStreamReader reader = null;
+		int count = 0;
+		try {
+			reader = xmlInputFactory.createXMLStreamReader(inputStream);
+			reader.nextTag(); // <queryResult>
+			while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				consumer.accept(readXmlRecord(reader, metadata));
+				count++;
+			}
+			return count;
+		} catch (Exception e) {
+			LOG.warn("Failed to parse XML input stream", e);
+			return -1;
+		} finally {
+			if (reader != null) try {
+				reader.close();
+			} catch (Exception ex) {
+				LOG.error("Failed to close XML reader.", ex);
+			}
+			if (inputStream != null) try {
+				inputStream.close();
+			} catch (Exception ex) {
+				LOG.error("Failed to close input stream.", ex);
+			}
+		}
+	}
+
+	/**
+	 * Convert Salesforce CSV stream to Mongo basic object
+	 * 
+	 * @param inputStream the CSV inputstream
+	 * @param metadata the metadata map
+	 * @return the collection of basic DB object
+	 */
+	public static Collection<BasicDBObject> streamSalesforceCsvToMongoObject(InputStream inputStream, Map<String, String> metadata) {
+		List<BasicDBObject> records = new ArrayList<>();
+		return streamSalesforceCsvToMongoObject(inputStream, metadata, records::add) < 0 ? null : records;
+	}
+
+	/**
+	 * Convert Salesforce CSV stream to Mongo basic object, each record is
+	 * handed to the consumer as soon as it is decoded. The column names and
+	 * types are resolved once from the header line, the values are then
+	 * decoded from a single reused buffer and put straight into the Mongo
+	 * object. An empty value is a null field.
+	 * 
+	 * @param inputStream the CSV inputstream
+	 * @param metadata the metadata map
+	 * @param consumer the consumer of the basic DB objects
+	 * @return the number of records decoded, or -1 if the stream could not be decoded
+	 */
+	public static int streamSalesforceCsvToMongoObject(InputStream inputStream, Map<String, String> metadata, Consumer<BasicDBObject> consumer) {
+		int count = 0;
+		try (CsvReader csv = new CsvReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+			List<String> header = new ArrayList<>();
+			do {
+				String column = csv.nextField();
+				if (column == null) {
+					return 0;
+				}
+				header.add(column);
+			} while (!csv.isEndOfRecord());
+			if (header.size() == 1 && CSV_NO_RECORDS.equals(header.get(0))) {
+				return 0;
+			}
+			final int columnCount = header.size();
+			final String[] keys = new String[columnCount];
+			final String[] types = new String[columnCount];
+			for (int i = 0; i < columnCount; i++) {
+				keys[i] = normalizeFieldname(header.get(i)).toString();
+				types[i] = metadata.get(header.get(i));
+			}
+			String value;
+			while ((value = csv.nextField()) != null) {
+				final BasicDBObject mObject = new BasicDBObject(columnCount);
+				int column = 0;
+				while (true) {
+					if (column < columnCount) {
+						putTypedField(mObject, keys[column], types[column], value.isEmpty() ? null : value);
+					}
+					column++;
+					if (csv.isEndOfRecord() || (value = csv.nextField()) == null) {
+						break;
+					}
+				}
+				consumer.accept(mObject);
+				count++;
+			}
+			return count;
+		} catch (Exception e) {
+			LOG.warn("Failed to parse CSV input stream", e);
+			return -1;
+		}
+	}
+
+	/*
+	 * Minimal RFC 4180 reader as produced by the Bulk API: comma separated,
+	 * optionally double-quoted fields, doubled quotes as escape, CRLF or LF
+	 * line endings. Fields are decoded in a single reused buffer.
+	 */
+	private static final class CsvReader implements AutoCloseable {
+		private final Reader reader;
+		private final char[] buffer = new char[65536];
+		private final StringBuilder field = new StringBuilder(256);
+		private int position;
+		private int limit;
+		private int pushback = -1;
+		private boolean endOfRecord = true;
+
+		CsvReader(Reader reader) {
+			this.reader = reader;
+		}
+
+		/*
+		 * @return the next field, or null at the end of the stream
+		 */
+		String nextField() throws IOException {
+			field.setLength(0);
+			int c = read();
+			if (c == -1) {
+				return null;
+			}
+			if (endOfRecord) {
+				// skip blank lines between records
+				while (c == '\r' || c == '\n') {
+					c = read();
+				}
+				if (c == -1) {
+					return null;
+				}
+			}
+			if (c == '"') {
+				while ((c = read()) != -1) {
+					if (c == '"') {
+						c = read();
+						if (c != '"') {
+							break;
+						}
+					}
+					field.append((char) c);
+				}
+			} else {
+				while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+					field.append((char) c);
+					c = read();
+				}
+			}
+			if (c == '\r') {
+				c = read();
+				if (c != '\n') {
+					pushback = c;
+					c = '\n';
+				}
+			}
+			endOfRecord = c != ',';
+			return field.toString();
+		}
+
+		boolean isEndOfRecord() {
+			return endOfRecord;
+		}
+
+		private int read() throws IOException {
+			if (pushback != -1) {
+				int c = pushback;
+				pushback = -1;
+				return c;
+			}
+			if (position == limit) {
+				limit = reader.read(buffer, 0, buffer.length);
+				position = 0;
+				if (limit <= 0) {
+					limit = 0;
+					return -1;
+				}
+			}
+			return buffer[position++];
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+
+	/*
+	 * Read one <records> element, the reader is positioned on its start tag.
+	 * Attributes come first then child elements, a repeated field overrides
+	 * the previous value, as done by the XML mapper.
+	 */
+	private static BasicDBObject readXmlRecord(XMLStreamReader reader, Map<String, String> metadata) throws XMLStreamException {
+		final BasicDBObject mObject = new BasicDBObject();
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			putField(mObject, reader.getAttributeLocalName(i), reader.getAttributeValue(i), metadata);
+		}
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String key = reader.getLocalName();
+			putField(mObject, key, readXmlValue(reader), metadata);
+		}
+		return mObject;
+	}
+
+	/*
+	 * Read the value of an element, the reader is positioned on its start tag.
+	 * A text-only element is read as a String, otherwise as a LinkedHashMap of
+	 * its attributes, child elements and text (keyed by an empty name).
+	 */
+	private static Object readXmlValue(XMLStreamReader reader) throws XMLStreamException {
+		LinkedHashMap<String, Object> fieldData = null;
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			if (fieldData == null) {
+				fieldData = new LinkedHashMap<>();
+			}
+			fieldData.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+		}
+		StringBuilder text = new StringBuilder();
+		int event;
+		while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+			switch (event) {
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					text.append(reader.getText());
+					break;
+				case XMLStreamConstants.START_ELEMENT:
+					if (fieldData == null) {
+						fieldData = new LinkedHashMap<>();
+					}
+					String key = reader.getLocalName();
+					fieldData.put(key, readXmlValue(reader));
+					break;
+				default:
+					break;
+			}
+		}
+		if (fieldData == null) {
+			return text.toString();
+		}
+		if (text.toString().trim().length() > 0) {
+			fieldData.put("", text.toString());
+		}
+		return fieldData;
+	}
+
 	/**
 	 * Convert Salesforce JSON report metadata to Mongo basic object
 	 * 
 	 * @param document the JSON document
 	 * @param fieldList the composed field list object
-	 * @return the number of records of that report - or 0 if the report is not TABULAR (to be filtered out)
+	 * @return the number of records of that report - or 0 if the report format is not supported (to be filtered out)
 	 * @throws Exception
 	 */
 	public static int readReportMetadata(DocumentContext document, BasicDBObject fieldList) throws Exception {
+		return readReportColumns(document, fieldList) ? readReportRowCount(document) : 0;
+	}
+
+	/**
+	 * Convert the detail columns of a Salesforce JSON report metadata to Mongo
+	 * basic object. Unlike {@link #readReportMetadata(DocumentContext, BasicDBObject)},
+	 * the fact map is not needed, so the output of a report <a href=
+	 * "https://developer.salesforce.com/docs/atlas.en-us.api_analytics.meta/api_analytics/sforce_analytics_rest_api_getbasic_reportmetadata.htm"
+	 * >Describe</a> is enough. The columns of the blocks of a JOINED report are
+	 * merged, their block prefix removed, and the {@link #REPORT_BLOCK_FIELD}
+	 * column is added.
+	 * 
+	 * @param document the JSON document
+	 * @param fieldList the composed field list object
+	 * @return false if the report format is not supported (to be filtered out)
+	 * @throws Exception
+	 */
+	public static boolean readReportColumns(DocumentContext document, BasicDBObject fieldList) throws Exception {
 		String reportType = document.read("$.reportMetadata.reportFormat");
-		List<String> reportAggregates = document.read("$['reportMetadata']['aggregates'][*]");
-		int count = 0;
 		switch (ReportType.valueOf(reportType)) {
 			case TABULAR:
 			case SUMMARY:
 			case MATRIX:
-				if (reportAggregates.contains("RowCount")) {
-					count = document.read("$['factMap']['T!T']['aggregates'][(@.length-1)]['value']");
-				} else {
-					LOG.warn("The report {} doesn't support row count.", (String) document.read("$.reportMetadata.name"));
-					count = -1;
-				}
 				Map<String, Map<String, Object>> columnInfos = document.read("$.reportExtendedMetadata.detailColumnInfo");
 				columnInfos.entrySet().stream().forEach(entry -> {
 					StringBuilder key = normalizeFieldname(entry.getKey());
@@ -156,11 +501,60 @@ public class SalesforceObjectHelper {
 					columnMetadata.setType(DataType.guess((String) entry.getValue().get("dataType")).getName());
 					fieldList.put(key.toString(), columnMetadata);
 				});
-				break;
-			case JOINED:	
+				return true;
+			case JOINED:
+			case MULTI_BLOCK:
+				Map<String, Map<String, Object>> blockColumnInfos = document.read("$.reportExtendedMetadata.detailColumnInfo");
+				blockColumnInfos.entrySet().stream().forEach(entry -> {
+					// the same column may be used by several blocks, the first one wins
+					StringBuilder key = normalizeFieldname(reportBlockColumn(entry.getKey()));
+					if (!fieldList.containsField(key.toString())) {
+						ColumnFieldMetadata columnMetadata = new ColumnFieldMetadata();
+						columnMetadata.setAlias((String) entry.getValue().get("label"));
+						columnMetadata.setType(DataType.guess((String) entry.getValue().get("dataType")).getName());
+						fieldList.put(key.toString(), columnMetadata);
+					}
+				});
+				ColumnFieldMetadata blockMetadata = new ColumnFieldMetadata();
+				blockMetadata.setAlias("Block");
+				blockMetadata.setType(DataType.guess("string").getName());
+				fieldList.put(REPORT_BLOCK_FIELD, blockMetadata);
+				return true;
+			default:
 				LOG.error("The current report's format {} will be supported in the next release.", reportType);
+				return false;
+		}
+	}
+
+	/**
+	 * Read the number of records of a report from the RowCount aggregate of
+	 * its grand total, summed over the blocks of a JOINED report
+	 * 
+	 * @param document the JSON document of a report run, having a fact map
+	 * @return the number of records of that report - or -1 if the report does not support row count
+	 */
+	public static int readReportRowCount(DocumentContext document) {
+		List<String> reportAggregates = document.read("$['reportMetadata']['aggregates'][*]");
+		if (!reportAggregates.stream().anyMatch(aggregate -> "RowCount".equals(reportBlockColumn(aggregate)))) {
+			LOG.warn("The report {} doesn't support row count.", (String) document.read("$.reportMetadata.name"));
+			return -1;
+		}
+		Map<String, Map<String, Object>> factMap = document.read("$.factMap");
+		if (factMap == null) {
+			return -1;
 		}
-		return count;
+		if (factMap.containsKey("T!T")) {
+			return document.read("$['factMap']['T!T']['aggregates'][(@.length-1)]['value']");
+		}
+		int rowCount = -1;
+		for (String factKey : factMap.keySet()) {
+			String blockId = reportBlockId(factKey);
+			if (blockId != null && factKey.equals(blockId + REPORT_BLOCK_SEPARATOR + "T!T")) {
+				Number blockCount = document.read("$['factMap']['" + factKey + "']['aggregates'][(@.length-1)]['value']");
+				rowCount = Math.max(rowCount, 0) + (blockCount == null ? 0 : blockCount.intValue());
+			}
+		}
+		return rowCount;
 	}
 
 	/**
@@ -168,7 +562,9 @@ public class SalesforceObjectHelper {
 	 * 
 	 * @param inputStream the JSON inputstream
 	 * @return the collection of basic DB object
+	 * @deprecated the whole document is loaded, use {@link #streamSalesforceReportDataToMongoObject(InputStream)}
 	 */
+	@Deprecated
 	public static Collection<BasicDBObject> readSalesforceReportDataStreamToMongoObject(InputStream inputStream) {
 		DocumentContext document;
 		try {
@@ -180,9 +576,9 @@ public class SalesforceObjectHelper {
 				case SUMMARY:
 				case MATRIX:
 					return readReportData(document);
-				case JOINED:	
-					LOG.error("The current report's format {} will be supported in the next release.", reportType);
-					break;
+				case JOINED:
+				case MULTI_BLOCK:
+					return readReportBlockData(document);
 			}
 		} catch (Exception e) {
 			LOG.warn("Failed to parse JSON input stream", e);
@@ -213,6 +609,502 @@ public class SalesforceObjectHelper {
 			return fromMap(rowObj, metadata);
 		}).collect(Collectors.toList());
 	}
+
+	/**
+	 * Parse a JSON-alike report data having format JOINED to MongoDB object
+	 * using jSonPath, block by block
+	 * 
+	 * @param document Json document
+	 * @return MongoDB object, tagged with their block ID
+	 * @throws Exception
+	 */
+	private static Collection<BasicDBObject> readReportBlockData(DocumentContext document) throws Exception {
+		Map<String, Map<String, Object>> columnInfos = document.read("$.reportExtendedMetadata.detailColumnInfo");
+		final Map<String, String> columnTypes = columnInfos.entrySet().stream().
+				collect(Collectors.<Map.Entry<String, Map<String, Object>>, String, String>toMap(Map.Entry::getKey, p -> (String) p.getValue().get("dataType")));
+		List<String> columnList = document.read("$.reportMetadata.detailColumns");
+		Map<String, Map<String, Object>> factMap = document.read("$.factMap");
+		Map<String, List<Object[]>> blocks = new LinkedHashMap<>();
+		for (String factKey : factMap.keySet()) {
+			String blockId = reportBlockId(factKey);
+			List<List<Object>> jsonRows = document.read("$['factMap']['" + factKey + "']['rows'][*]['dataCells']");
+			jsonRows.forEach(row -> blocks.computeIfAbsent(blockId == null ? "" : blockId, id -> new ArrayList<>()).add(row.toArray()));
+		}
+		return blocks.entrySet().parallelStream().flatMap(block -> {
+			BlockLayout layout = new BlockLayout(columnList, columnTypes, block.getKey());
+			return block.getValue().stream().map(cells -> layout.toMongoObject(cells));
+		}).collect(Collectors.toList());
+	}
+
+	/**
+	 * Convert Salesforce JSON report to Mongo basic object using a streaming
+	 * parser. Unlike {@link #readSalesforceReportDataStreamToMongoObject(InputStream)},
+	 * neither the whole document nor the JsonPath copies of the rows are built:
+	 * the rows of the fact map are walked token by token. The output is
+	 * identical.
+	 * <p>
+	 * <b>NOTE:</b> Salesforce sends the report metadata after the fact map, and
+	 * the rows cannot be converted before the metadata gives their columns and
+	 * types. The cells of all the rows are therefore buffered until the
+	 * reportMetadata arrives, so the peak memory is still proportional to the
+	 * size of the report, only with a smaller constant than the tree mapper.
+	 * </p>
+	 * 
+	 * @param inputStream the JSON inputstream
+	 * @return the collection of basic DB object
+	 */
+	public static Collection<BasicDBObject> streamSalesforceReportDataToMongoObject(InputStream inputStream) {
+		List<BasicDBObject> records = new ArrayList<>();
+		return streamSalesforceReportDataToMongoObject(inputStream, records::add) < 0 ? null : records;
+	}
+
+	/**
+	 * Push-based variant of
+	 * {@link #streamSalesforceReportDataToMongoObject(InputStream)}, each row is
+	 * handed to the consumer as soon as both the row and the report metadata are
+	 * parsed.
+	 * 
+	 * @param inputStream the JSON inputstream
+	 * @param consumer the consumer of the basic DB objects
+	 * @return the number of rows parsed, or -1 if the stream could not be parsed
+	 *         or the report format is not supported
+	 */
+	public static int streamSalesforceReportDataToMongoObject(InputStream inputStream, Consumer<BasicDBObject> consumer) {
+		ReportDataStream report = streamReportData(inputStream, consumer);
+		return report == null ? -1 : report.count;
+	}
+
+	/**
+	 * Variant of
+	 * {@link #streamSalesforceReportDataToMongoObject(InputStream, Consumer)}
+	 * telling whether all the detail rows were returned: Salesforce silently
+	 * caps the detail rows of a report run, see the allData flag.
+	 * 
+	 * @param inputStream the JSON inputstream
+	 * @param consumer the consumer of the basic DB objects
+	 * @return FALSE if the detail rows were truncated, NULL if the stream could
+	 *         not be parsed or the report format is not supported
+	 */
+	public static Boolean streamSalesforceReportDataChunk(InputStream inputStream, Consumer<BasicDBObject> consumer) {
+		ReportDataStream report = streamReportData(inputStream, consumer);
+		return report == null ? null : report.allData;
+	}
+
+	/*
+	 * Walk the fields of a report data, NULL if it could not be parsed
+	 */
+	private static ReportDataStream streamReportData(InputStream inputStream, Consumer<BasicDBObject> consumer) {
+		JsonParser parser = null;
+		try {
+			parser = objectMapper.getJsonFactory().createJsonParser(inputStream);
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new IOException("Report data should be a JSON object");
+			}
+			ReportDataStream report = new ReportDataStream(consumer);
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				parser.nextToken();
+				switch (field) {
+					case "allData":
+						report.allData = parser.getCurrentToken() != JsonToken.VALUE_FALSE;
+						break;
+					case "factMap":
+						report.readFactMap(parser);
+						break;
+					case "reportMetadata":
+						report.readReportMetadata(parser);
+						break;
+					case "reportExtendedMetadata":
+						report.readExtendedMetadata(parser);
+						break;
+					default:
+						parser.skipChildren();
+				}
+			}
+			return report.finish() < 0 ? null : report;
+		} catch (Exception e) {
+			LOG.warn("Failed to parse JSON input stream", e);
+			return null;
+		} finally {
+			if (parser != null) try {
+				parser.close();
+			} catch (Exception ex) {
+				LOG.error("Failed to close JSON parser.", ex);
+			}
+			if (inputStream != null) try {
+				inputStream.close();
+			} catch (Exception ex) {
+				LOG.error("Failed to close input stream.", ex);
+			}
+		}
+	}
+
+	/**
+	 * Convert the blocks of a Salesforce JSON report to Mongo basic object
+	 * using the streaming parser. The blocks of a JOINED report are parsed in
+	 * parallel, each row being tagged with its {@link #REPORT_BLOCK_FIELD}; the
+	 * rows of the other formats are returned as a single block keyed by "".
+	 * 
+	 * @param inputStream the JSON inputstream
+	 * @return the rows keyed by block ID in the order of the report, NULL if
+	 *         the stream could not be parsed
+	 */
+	public static Map<String, Collection<BasicDBObject>> streamSalesforceReportBlocks(InputStream inputStream) {
+		Map<String, Collection<BasicDBObject>> blocks = new LinkedHashMap<>();
+		return streamSalesforceReportDataToMongoObject(inputStream, row -> blocks.computeIfAbsent(
+				row.containsField(REPORT_BLOCK_FIELD) ? row.getString(REPORT_BLOCK_FIELD) : "", 
+				blockId -> new ArrayList<>()).add(row)) < 0 ? null : blocks;
+	}
+
+	/*
+	 * State of a report data being streamed: the rows are converted as soon as
+	 * the format, the detail columns and their types are known, they are kept
+	 * as compact cell arrays until then. The rows of a joined report are kept
+	 * per block, the blocks are then converted in parallel.
+	 */
+	private static final class ReportDataStream {
+		private final Consumer<BasicDBObject> consumer;
+		private final Map<String, List<Object[]>> pendingBlocks = new LinkedHashMap<>();
+		private String reportFormat;
+		private List<String> detailColumns;
+		private Map<String, String> columnTypes;
+		private boolean supported;
+		private boolean joined;
+		private boolean ready;
+		private BlockLayout layout;
+		private boolean allData = true;
+		private int count;
+
+		ReportDataStream(Consumer<BasicDBObject> consumer) {
+			this.consumer = consumer;
+		}
+
+		void readFactMap(JsonParser parser) throws IOException {
+			if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+				parser.skipChildren();
+				return;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String blockId = reportBlockId(parser.getCurrentName()); // the fact, e.g. "T!T" or "B0#T!T"
+				parser.nextToken();
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String field = parser.getCurrentName();
+					if (parser.nextToken() == JsonToken.START_ARRAY && "rows".equals(field)) {
+						readRows(parser, blockId);
+					} else {
+						parser.skipChildren();
+					}
+				}
+			}
+		}
+
+		void readReportMetadata(JsonParser parser) throws IOException {
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if ("reportFormat".equals(field)) {
+					reportFormat = token == JsonToken.VALUE_NULL ? null : parser.getText();
+				} else if ("detailColumns".equals(field) && token == JsonToken.START_ARRAY) {
+					detailColumns = new ArrayList<>();
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						detailColumns.add((String) readJsonValue(parser));
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+			prepare();
+		}
+
+		void readExtendedMetadata(JsonParser parser) throws IOException {
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				if (parser.nextToken() == JsonToken.START_OBJECT && "detailColumnInfo".equals(field)) {
+					columnTypes = new HashMap<>();
+					while (parser.nextToken() == JsonToken.FIELD_NAME) {
+						String column = parser.getCurrentName();
+						parser.nextToken();
+						while (parser.nextToken() == JsonToken.FIELD_NAME) {
+							String property = parser.getCurrentName();
+							JsonToken token = parser.nextToken();
+							if ("dataType".equals(property)) {
+								columnTypes.put(column, token == JsonToken.VALUE_NULL ? null : parser.getText());
+							} else {
+								parser.skipChildren();
+							}
+						}
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+			prepare();
+		}
+
+		int finish() {
+			if (!ready) {
+				LOG.warn("The report data has no format, detail columns or column types.");
+				return -1;
+			}
+			if (!supported) {
+				LOG.error("The current report's format {} will be supported in the next release.", reportFormat);
+				return -1;
+			}
+			if (joined) {
+				// one row stream per block, decoded in parallel then handed over block by block
+				List<List<BasicDBObject>> blocks = new ArrayList<>(pendingBlocks.entrySet()).parallelStream()
+						.map(block -> {
+							BlockLayout blockLayout = new BlockLayout(detailColumns, columnTypes, block.getKey());
+							return block.getValue().stream()
+									.map(cells -> blockLayout.toMongoObject(cells))
+									.collect(Collectors.toList());
+						})
+						.collect(Collectors.toList());
+				pendingBlocks.clear();
+				blocks.forEach(rows -> rows.forEach(row -> {
+					consumer.accept(row);
+					count++;
+				}));
+			}
+			return count;
+		}
+
+		private void readRows(JsonParser parser, String blockId) throws IOException {
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String field = parser.getCurrentName();
+					if (parser.nextToken() == JsonToken.START_ARRAY && "dataCells".equals(field)) {
+						List<Object> cells = new ArrayList<>();
+						while (parser.nextToken() != JsonToken.END_ARRAY) {
+							cells.add(readReportCell(parser));
+						}
+						accept(blockId, cells.toArray());
+					} else {
+						parser.skipChildren();
+					}
+				}
+			}
+		}
+
+		private void accept(String blockId, Object[] cells) {
+			if (!ready || (supported && joined)) {
+				pendingBlocks.computeIfAbsent(blockId == null ? "" : blockId, id -> new ArrayList<>()).add(cells);
+			} else if (supported) {
+				consumer.accept(layout.toMongoObject(cells));
+				count++;
+			}
+		}
+
+		/*
+		 * Resolve the column order and types once all the metadata are known,
+		 * then flush the rows parsed so far
+		 */
+		private void prepare() {
+			if (ready || reportFormat == null || detailColumns == null || columnTypes == null) {
+				return;
+			}
+			ready = true;
+			try {
+				switch (ReportType.valueOf(reportFormat)) {
+					case TABULAR:
+					case SUMMARY:
+					case MATRIX:
+						supported = true;
+						break;
+					case JOINED:
+					case MULTI_BLOCK:
+						supported = joined = true;
+						break;
+				}
+			} catch (IllegalArgumentException e) {
+				LOG.warn("Unknown report format {}.", reportFormat);
+			}
+			if (supported && !joined) {
+				layout = new BlockLayout(detailColumns, columnTypes, null);
+				pendingBlocks.values().forEach(rows -> rows.forEach(cells -> accept(null, cells)));
+			}
+			if (!joined) {
+				pendingBlocks.clear();
+			}
+		}
+	}
+
+	/*
+	 * Columns of a report block in the iteration order of the tree mapper row
+	 * map. The columns of a joined report are prefixed by their block ID, e.g.
+	 * "B0#AMOUNT", the rows of a block are then tagged with its ID.
+	 */
+	private static final class BlockLayout {
+		private final String blockId;
+		private final List<String> columns = new ArrayList<>();
+		private final Map<String, String> columnTypes = new HashMap<>();
+		private final String[] keys;
+		private final String[] types;
+		private final int[] indexes;
+
+		BlockLayout(List<String> detailColumns, Map<String, String> detailColumnTypes, String blockId) {
+			this.blockId = blockId == null || blockId.isEmpty() ? null : blockId;
+			String prefix = this.blockId == null ? null : this.blockId + REPORT_BLOCK_SEPARATOR;
+			boolean prefixed = prefix != null && detailColumns.stream().anyMatch(column -> column.startsWith(prefix));
+			for (String column : detailColumns) {
+				if (!prefixed || column.startsWith(prefix)) {
+					String name = prefixed ? column.substring(prefix.length()) : column;
+					columns.add(name);
+					columnTypes.put(name, detailColumnTypes.get(column));
+				}
+			}
+			// same insertion sequence as the row map of the tree mapper, the later duplicate column wins
+			Map<String, Integer> columnIndexes = new HashMap<>();
+			for (int i = 0; i < columns.size(); i++) {
+				columnIndexes.put(columns.get(i), i);
+			}
+			keys = new String[columnIndexes.size()];
+			types = new String[columnIndexes.size()];
+			indexes = new int[columnIndexes.size()];
+			int i = 0;
+			for (Map.Entry<String, Integer> entry : columnIndexes.entrySet()) {
+				keys[i] = normalizeFieldname(entry.getKey()).toString();
+				types[i] = columnTypes.get(entry.getKey());
+				indexes[i++] = entry.getValue();
+			}
+		}
+
+		BasicDBObject toMongoObject(Object[] cells) {
+			final BasicDBObject mObject = new BasicDBObject();
+			if (cells.length >= columns.size()) {
+				for (int i = 0; i < keys.length; i++) {
+					putReportCell(mObject, keys[i], types[i], cells[indexes[i]]);
+				}
+			} else {
+				// short row: the key set differs, so does the iteration order of the row map
+				Map<String, Object> rowObj = new HashMap<>();
+				for (int i = 0; i < cells.length; i++) {
+					rowObj.put(columns.get(i), cells[i]);
+				}
+				rowObj.forEach((key, cell) -> putReportCell(mObject, normalizeFieldname(key).toString(), columnTypes.get(key), cell));
+			}
+			if (blockId != null) {
+				mObject.put(REPORT_BLOCK_FIELD, blockId);
+			}
+			return mObject;
+		}
+	}
+
+	/*
+	 * Block ID of a fact map key of a joined report, e.g. "B0" of "B0#T!T"
+	 */
+	private static String reportBlockId(String factKey) {
+		int separator = factKey.indexOf(REPORT_BLOCK_SEPARATOR);
+		if (separator < 2 || factKey.charAt(0) != 'B') {
+			return null;
+		}
+		for (int i = 1; i < separator; i++) {
+			if (!Character.isDigit(factKey.charAt(i))) {
+				return null;
+			}
+		}
+		return factKey.substring(0, separator);
+	}
+
+	/*
+	 * Column of a joined report without its block prefix, e.g. "AMOUNT" of "B0#AMOUNT"
+	 */
+	private static String reportBlockColumn(String column) {
+		String blockId = reportBlockId(column);
+		return blockId == null ? column : column.substring(blockId.length() + 1);
+	}
+
+	/*
+	 * Label and value of a report cell, the common shape of the cells
+	 */
+	private static final class ReportCell {
+		final Object label;
+		final Object value;
+
+		ReportCell(Object label, Object value) {
+			this.label = label;
+			this.value = value;
+		}
+	}
+
+	private static void putReportCell(BasicDBObject mObject, String normalizedKey, String type, Object cell) {
+		if (cell instanceof ReportCell) {
+			mObject.put(normalizedKey, "string".equals(type) ? ((ReportCell) cell).label : ((ReportCell) cell).value);
+		} else {
+			putTypedField(mObject, normalizedKey, type, cell);
+		}
+	}
+
+	/*
+	 * Read a report cell: a compact cell if it only has a label and a value,
+	 * otherwise the same map as the tree mapper
+	 */
+	private static Object readReportCell(JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+			return readJsonValue(parser);
+		}
+		Object label = null, value = null;
+		boolean hasLabel = false, hasValue = false, valueFirst = false;
+		LinkedHashMap<String, Object> fields = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			parser.nextToken();
+			Object fieldValue = readJsonValue(parser);
+			if (fields == null && "label".equals(name)) {
+				label = fieldValue;
+				hasLabel = true;
+			} else if (fields == null && "value".equals(name)) {
+				value = fieldValue;
+				valueFirst = !hasLabel;
+				hasValue = true;
+			} else {
+				if (fields == null) {
+					fields = cellFields(hasLabel, label, hasValue, value, valueFirst);
+				}
+				fields.put(name, fieldValue);
+			}
+		}
+		if (fields != null) {
+			return fields;
+		}
+		return hasLabel && hasValue ? new ReportCell(label, value) : cellFields(hasLabel, label, hasValue, value, valueFirst);
+	}
+
+	private static LinkedHashMap<String, Object> cellFields(boolean hasLabel, Object label, boolean hasValue, Object value, boolean valueFirst) {
+		LinkedHashMap<String, Object> fields = new LinkedHashMap<>();
+		if (hasValue && valueFirst) {
+			fields.put("value", value);
+		}
+		if (hasLabel) {
+			fields.put("label", label);
+		}
+		if (hasValue && !valueFirst) {
+			fields.put("value", value);
+		}
+		return fields;
+	}
+
+	/*
+	 * Read the current JSON value with the same types as the tree mapper
+	 */
+	private static Object readJsonValue(JsonParser parser) throws IOException {
+		switch (parser.getCurrentToken()) {
+			case VALUE_STRING:
+				return parser.getText();
+			case VALUE_NUMBER_INT:
+				return parser.getNumberValue();
+			case VALUE_NUMBER_FLOAT:
+				return Double.valueOf(parser.getDoubleValue());
+			case VALUE_TRUE:
+				return Boolean.TRUE;
+			case VALUE_FALSE:
+				return Boolean.FALSE;
+			case VALUE_NULL:
+				return null;
+			default:
+				return objectMapper.readValue(parser, Object.class);
+		}
+	}
 	
 	/**
 	 * Convert Salesforce attributes map to Mongo basic object
@@ -223,48 +1115,71 @@ public class SalesforceObjectHelper {
 	 */
 	private static BasicDBObject fromMap(Map<String, ?> mapObj, Map<String, String> metadata) {
 		final BasicDBObject mObject = new BasicDBObject();
-		mapObj.entrySet().forEach(entry -> {
-			StringBuilder normalizedKey = normalizeFieldname(entry.getKey());
-			try {
-				String type = metadata.get(entry.getKey());
-				if (entry.getValue() instanceof LinkedHashMap) {
-					LinkedHashMap<String, String> fieldData = (LinkedHashMap<String, String>) entry.getValue();
-					if (fieldData.containsKey("nil")) {
-						mObject.put(normalizedKey.toString(), null);
-					} else if (fieldData.containsKey("label") && fieldData.containsKey("value")){
-						if ("string".equals(type)) {
-							mObject.put(normalizedKey.toString(), fieldData.get("label"));
-						} else {
-							mObject.put(normalizedKey.toString(), fieldData.get("value"));
-						}
-					} else {
-						mObject.put(normalizedKey.toString(), fieldData);
-					}
-				} else if (entry.getValue() instanceof String) {
-					
-					String value = (String) entry.getValue();
-					if ("string".equals(type) || "textarea".equals(type)) {
-						mObject.put(normalizedKey.toString(), value);
-					} else if ("int".equals(type)) {
-						mObject.put(normalizedKey.toString(), Integer.valueOf(value));
-					} else if ("double".equals(type) || "percent".equals(type) || "currency".equals(type)) {
-						mObject.put(normalizedKey.toString(), Double.valueOf(value));
-					} else if ("boolean".equals(type)) {
-						mObject.put(normalizedKey.toString(), Boolean.valueOf(value));
-					} else if ("date".equals(type) || "datetime".equals(type)) {
-						mObject.put(normalizedKey.toString(), parseDate(value));
+		mapObj.entrySet().forEach(entry -> putField(mObject, entry.getKey(), entry.getValue(), metadata));
+		return mObject;
+	}
+
+	/**
+	 * Convert a Salesforce field to its Mongo type and put it into the Mongo
+	 * basic object
+	 * 
+	 * @param mObject the target object
+	 * @param key the Salesforce field name
+	 * @param value the Salesforce field value
+	 * @param metadata the metadata map
+	 */
+	private static void putField(BasicDBObject mObject, String key, Object value, Map<String, String> metadata) {
+		putTypedField(mObject, normalizeFieldname(key), metadata.get(key), value);
+	}
+
+	/**
+	 * Convert a Salesforce field to the given type and put it into the Mongo
+	 * basic object
+	 * 
+	 * @param mObject the target object
+	 * @param normalizedKey the normalized field name
+	 * @param type the Salesforce type of the field
+	 * @param value the Salesforce field value
+	 */
+	@SuppressWarnings("unchecked")
+	private static void putTypedField(BasicDBObject mObject, CharSequence normalizedKey, String type, Object value) {
+		try {
+			if (value instanceof LinkedHashMap) {
+				LinkedHashMap<String, String> fieldData = (LinkedHashMap<String, String>) value;
+				if (fieldData.containsKey("nil")) {
+					mObject.put(normalizedKey.toString(), null);
+				} else if (fieldData.containsKey("label") && fieldData.containsKey("value")){
+					if ("string".equals(type)) {
+						mObject.put(normalizedKey.toString(), fieldData.get("label"));
 					} else {
-						mObject.put(normalizedKey.toString(), entry.getValue());
+						mObject.put(normalizedKey.toString(), fieldData.get("value"));
 					}
 				} else {
-					mObject.put(normalizedKey.toString(), entry.getValue());
+					mObject.put(normalizedKey.toString(), fieldData);
 				}
-			} catch (Exception e) {
-				LOG.warn(String.format("Failed parsing field {%s} with value {%s}", normalizedKey.toString(), entry.getValue()), e);
-				mObject.put(normalizedKey.toString(), null);
+			} else if (value instanceof String) {
+				
+				String strValue = (String) value;
+				if ("string".equals(type) || "textarea".equals(type)) {
+					mObject.put(normalizedKey.toString(), strValue);
+				} else if ("int".equals(type)) {
+					mObject.put(normalizedKey.toString(), Integer.valueOf(strValue));
+				} else if ("double".equals(type) || "percent".equals(type) || "currency".equals(type)) {
+					mObject.put(normalizedKey.toString(), Double.valueOf(strValue));
+				} else if ("boolean".equals(type)) {
+					mObject.put(normalizedKey.toString(), Boolean.valueOf(strValue));
+				} else if ("date".equals(type) || "datetime".equals(type)) {
+					mObject.put(normalizedKey.toString(), parseDate(strValue));
+				} else {
+					mObject.put(normalizedKey.toString(), value);
+				}
+			} else {
+				mObject.put(normalizedKey.toString(), value);
 			}
-		});
-		return mObject;
+		} catch (Exception e) {
+			LOG.warn(String.format("Failed parsing field {%s} with value {%s}", normalizedKey.toString(), value), e);
+			mObject.put(normalizedKey.toString(), null);
+		}
 	}
 
 	// Column name in MongoDB should NOT contain "." or "$"
@@ -302,6 +1217,14 @@ public class SalesforceObjectHelper {
 	 * @throws Exception
 	 */
 	public static void throwRootCause(Exception e) throws Exception {
+		if (e instanceof SalesforceRetryPolicy.CircuitOpenException) {
+			// refused after repeated transient failures of the org
+			throw new Exception("ERROR_SALESFORCE_UNAVAILABLE", e);
+		}
+		if (e instanceof RejectedExecutionException) {
+			// refused by the rate governor to preserve the API allowance of the org
+			throw new Exception("ERROR_SALESFORCE_API_LIMIT_EXCEED", e);
+		}
 		if (e instanceof CamelExecutionException) {
 			Throwable t = e.getCause();
 			while (t.getCause() != null) {
@@ -528,6 +528,18 @@ public class DataSet extends BaseModel {
         put("firstImportedDate", firstImportedDate);
     }
 
+    // describedAt
+    public Date getDescribedAt() {
+        if (containsField("describedAt")) {
+            return getDate("describedAt");
+        }
+        return null;
+    }
+
+    public void setDescribedAt(Date describedAt) {
+        put("describedAt", describedAt);
+    }
+
     // roles
     @SuppressWarnings("unchecked")
     public List<String> getRoles() {
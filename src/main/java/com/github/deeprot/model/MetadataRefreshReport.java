@@ -0,0 +1,85 @@
+package com.github.deeprot.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Model as the report of a metadata refresh: how many data sets were actually
+ * re-described, how many were not modified since their last description and
+ * which ones failed.
+ *
+ * @author bruce.nguyen
+ */
+public class MetadataRefreshReport extends BaseModel {
+
+    private static final long serialVersionUID = -2871503622916214361L;
+
+    public MetadataRefreshReport() {
+    }
+
+    public MetadataRefreshReport(Map<String, Object> map) {
+        super(map);
+    }
+
+    // total
+    public int getTotal() {
+        return containsField("total") ? getInt("total") : 0;
+    }
+
+    public void setTotal(int total) {
+        put("total", total);
+    }
+
+    // redescribed
+    public int getRedescribed() {
+        return containsField("redescribed") ? getInt("redescribed") : 0;
+    }
+
+    public void setRedescribed(int redescribed) {
+        put("redescribed", redescribed);
+    }
+
+    // notModified
+    public int getNotModified() {
+        return containsField("notModified") ? getInt("notModified") : 0;
+    }
+
+    public void setNotModified(int notModified) {
+        put("notModified", notModified);
+    }
+
+    // skipped
+    public int getSkipped() {
+        return containsField("skipped") ? getInt("skipped") : 0;
+    }
+
+    public void setSkipped(int skipped) {
+        put("skipped", skipped);
+    }
+
+    // failed
+    @SuppressWarnings("unchecked")
+    public List<String> getFailed() {
+        if (containsField("failed")) {
+            Object failed = get("failed");
+            if (List.class.isAssignableFrom(failed.getClass())) {
+                return (List<String>) failed;
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    public void setFailed(List<String> failed) {
+        put("failed", failed);
+    }
+
+    // duration
+    public long getDurationMillis() {
+        return containsField("durationMillis") ? getLong("durationMillis") : 0;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        put("durationMillis", durationMillis);
+    }
+}
@@ -1,9 +1,11 @@
 package com.github.deeprot.service;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.github.deeprot.model.DataSet;
 import com.github.deeprot.model.DataSource;
+import com.github.deeprot.model.MetadataRefreshReport;
 import com.github.deeprot.model.RawData;
 
 /**
@@ -41,7 +43,11 @@ public interface CrmDatasourceManager {
 
 	/**
 	 * Build the meta-data of all the objects used within the CRM system and
-	 * count the number of objects per type.
+	 * count the number of objects per type. The objects having no record are
+	 * left out. The reports are described without being run: their row count
+	 * is unknown (-1) until
+	 * {@link #countReportsRecordset(DataSource, List)} runs them, so an empty
+	 * report is kept, only the reports of an unsupported format are left out.
 	 * 
 	 * @param dataSource
 	 *            the DTO containing the credentials
@@ -54,7 +60,44 @@ public interface CrmDatasourceManager {
 			throws Exception;
 	
 	/**
-	 * Get all objects data regarding to an object type. Pagination supported
+	 * Refresh the meta-data of the objects previously built by
+	 * {@link #buildObjectsMetadata(DataSource, String)}. An object is
+	 * re-described only if its meta-data changed since its last description,
+	 * otherwise its fields are kept as they are.
+	 * 
+	 * @param dataSource
+	 *            the DTO containing the credentials
+	 * @param dataSets
+	 *            the data sets to be refreshed in place
+	 * @return the report of the refresh
+	 * @throws Exception
+	 */
+	MetadataRefreshReport refreshObjectsMetadata(DataSource dataSource, List<DataSet> dataSets)
+			throws Exception;
+	
+	/**
+	 * Count the rows of the reports previously built by
+	 * {@link #buildObjectsMetadata(DataSource, String)}. The reports are only
+	 * described when built, their row count being unknown (-1) until this
+	 * method runs them, so it should be scheduled apart from the metadata scan.
+	 * 
+	 * @param dataSource
+	 *            the DTO containing the credentials
+	 * @param dataSets
+	 *            the data sets to be counted in place, only the reports having
+	 *            an unknown row count are run
+	 * @return the number of reports counted
+	 * @throws Exception
+	 */
+	int countReportsRecordset(DataSource dataSource, List<DataSet> dataSets)
+			throws Exception;
+	
+	/**
+	 * Get all objects data regarding to an object type. Pagination supported,
+	 * the pages being ordered by object ID. Reading the pages in sequence is
+	 * cheap, a deep page read out of sequence is not: prefer
+	 * {@link #getObjectsPage(DataSource, DataSet, int, String)}, passing back
+	 * the ID of the last object of the previous page.
 	 * 
 	 * @param dataSource
 	 *            the DTO containing the credentials
@@ -69,4 +112,45 @@ public interface CrmDatasourceManager {
 	 */
 	List<RawData> getObjectsData(DataSource dataSource, DataSet dataSet, int limit, int offset)
 			throws Exception;
-}
\ No newline at end of file
+
+	/**
+	 * Get a page of objects data regarding to an object type. Pages are ordered
+	 * by object ID and located by the ID of the last object of the previous
+	 * page, so the cost of a page does not depend on its depth.
+	 * 
+	 * @param dataSource
+	 *            the DTO containing the credentials
+	 * @param dataSet
+	 *            the object type
+	 * @param limit
+	 *            paging limit
+	 * @param afterId
+	 *            the ID of the last object of the previous page, null for the
+	 *            first page
+	 * @return objects data in JSON format, an empty list after the last page;
+	 *         the "Id" of the last object is the cursor of the next page
+	 * @throws IllegalArgumentException if afterId is not a Salesforce ID
+	 * @throws Exception
+	 */
+	List<RawData> getObjectsPage(DataSource dataSource, DataSet dataSet, int limit, String afterId)
+			throws Exception;
+	
+	/**
+	 * Stream all objects data regarding to an object type to the consumer,
+	 * chunk by chunk, without holding the whole data set in memory.
+	 * 
+	 * @param dataSource
+	 *            the DTO containing the credentials
+	 * @param dataSet
+	 *            the object type
+	 * @param limit
+	 *            the upper limit
+	 * @param consumer
+	 *            the consumer receiving objects data in JSON format, one
+	 *            chunk at a time
+	 * @return the total number of objects streamed
+	 * @throws Exception
+	 */
+	int getObjectsData(DataSource dataSource, DataSet dataSet, int limit, Consumer<List<RawData>> consumer)
+			throws Exception;
+}
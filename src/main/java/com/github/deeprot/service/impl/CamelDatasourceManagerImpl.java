@@ -1,8 +1,8 @@
 package com.github.deeprot.service.impl;
 
-import java.io.InputStream;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -15,11 +15,15 @@ import org.apache.camel.component.salesforce.api.dto.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
+import com.github.deeprot.Application;
 import com.github.deeprot.integration.camel.SalesforceProcessor;
+import com.github.deeprot.integration.camel.SalesforceRestClient;
+import com.github.deeprot.integration.camel.dto.BulkQueryOptions;
 import com.github.deeprot.integration.camel.dto.QueryRecords;
 import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
 import com.github.deeprot.integration.helper.SalesforceLoginConfigHelper;
@@ -29,7 +33,9 @@ import com.github.deeprot.model.DataSet;
 import com.github.deeprot.model.DataSource;
 import com.github.deeprot.model.DataType;
 import com.github.deeprot.model.DatasourceType;
+import com.github.deeprot.model.MetadataRefreshReport;
 import com.github.deeprot.model.RawData;
+import com.google.common.collect.Lists;
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
@@ -62,6 +68,10 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 	@Autowired
 	SalesforceProcessor salesforceProcessor;
 	
+	@Autowired
+	@Qualifier(Application.SALESFORCE_EXECUTOR)
+	Executor salesforceExecutor;
+	
 	@Override
 	public boolean testConnection(DataSource dataSource) throws Exception {
 		switch (DatasourceType.valueOf(dataSource.getType())) {
@@ -96,7 +106,7 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 			case SALESFORCE:
 				SalesforceCredentials creds = SalesforceLoginConfigHelper.getCredentials(dataSource);
 				try {
-					ExecutorService executor = Executors.newCachedThreadPool();
+					final Executor executor = salesforceExecutor;
 					final DataSet template = new DataSet();
 					// copy information from DataSource
 					template.setDataSourceId(dataSource.getId());
@@ -127,17 +137,20 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 					LOG.info("Getting Salesforce object & report types completely takes {} m-seconds.", System.currentTimeMillis() - duration);
 
 
-					List<CompletableFuture<DataSet>> objectMetaDSFutures = objectDSFuture.get().stream()
-							.map(dataset -> CompletableFuture.supplyAsync(() -> getObjectMetadata(creds, dataset), executor))
-							.map(dataSetFuture -> (CompletableFuture<DataSet>) dataSetFuture.thenApply(dataset -> countObjectRecordset(creds, dataset)))
-							.collect(Collectors.<CompletableFuture<DataSet>>toList());
+					// describe and count the objects by composite batches
+					List<CompletableFuture<List<DataSet>>> objectMetaDSFutures = Lists.partition(objectDSFuture.get(), SalesforceRestClient.COMPOSITE_BATCH_SIZE).stream()
+							.map(batch -> CompletableFuture.supplyAsync(() -> getObjectsMetadata(creds, batch), executor))
+							.map(batchFuture -> batchFuture.thenApply(batch -> countObjectsRecordset(creds, batch)))
+							.collect(Collectors.<CompletableFuture<List<DataSet>>>toList());
+					// the reports are described without being run, their rows are counted by countReportsRecordset
 					List<CompletableFuture<DataSet>> reportMetaDSFutures = reportDSFuture.get().stream()
-							.map(dataset -> CompletableFuture.supplyAsync(() -> getReportMetadata(creds, dataset), Executors.newFixedThreadPool(20)))
+							.map(dataset -> getReportMetadataFuture(creds, dataset))
 							.collect(Collectors.<CompletableFuture<DataSet>>toList());
-					objectMetaDSFutures.addAll(reportMetaDSFutures);
-					executor.shutdown();
-					executor.awaitTermination(3, TimeUnit.SECONDS);
-					List<DataSet> objectMetaList = expectAllDone(objectMetaDSFutures).get().parallelStream()
+					List<DataSet> objectMetaList = Stream.concat(
+							expectAllDone(objectMetaDSFutures).get().stream().flatMap(List::stream),
+							expectAllDone(reportMetaDSFutures).get().stream())
+						.parallel()
+						// empty objects and unsupported reports, an uncounted report (-1) is kept even if empty
 						.filter(dataset -> dataset.getRowCount() != 0)
 						.collect(Collectors.toList());
 
@@ -155,7 +168,13 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 	
 	@Deprecated
 	public List<DataSet> buildSalesforceObjectsMetadata(final DataSet template, final SalesforceCredentials creds, final String objectName,
-			ExecutorService executor, boolean withRowCount) throws Exception {
+			Executor executor, boolean withRowCount) throws Exception {
+		return buildSalesforceObjectsMetadata(template, creds, objectName, executor, withRowCount, false);
+	}
+	
+	@Deprecated
+	public List<DataSet> buildSalesforceObjectsMetadata(final DataSet template, final SalesforceCredentials creds, final String objectName,
+			Executor executor, boolean withRowCount, boolean batched) throws Exception {
 		try {
 			long duration = System.currentTimeMillis();
 			List<DataSet> objectDS = salesforceProcessor.getObjectTypes(creds, objectName).stream()
@@ -171,7 +190,18 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 			
 			duration = System.currentTimeMillis();
 			List<CompletableFuture<DataSet>> objectDSFutures;
-			if (withRowCount) {
+			if (batched) {
+				List<CompletableFuture<List<DataSet>>> batchFutures = Lists.partition(objectDS, SalesforceRestClient.COMPOSITE_BATCH_SIZE).stream()
+					.map(batch -> CompletableFuture.supplyAsync(() -> withRowCount 
+							? countObjectsRecordset(creds, getObjectsMetadata(creds, batch)) 
+							: getObjectsMetadata(creds, batch), executor))
+					.collect(Collectors.<CompletableFuture<List<DataSet>>>toList());
+				// all the batches are submitted, wait for them
+				objectDSFutures = batchFutures.stream()
+					.flatMap(batchFuture -> batchFuture.join().stream())
+					.map(CompletableFuture::completedFuture)
+					.collect(Collectors.<CompletableFuture<DataSet>>toList());
+			} else if (withRowCount) {
 				objectDSFutures = objectDS.stream()
 					.map(dataset -> CompletableFuture.supplyAsync(() -> getObjectMetadata(creds, dataset), executor))
 					.map(dataSetFuture -> (CompletableFuture<DataSet>) dataSetFuture.thenApply(dataset -> countObjectRecordset(creds, dataset)))
@@ -181,8 +211,6 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 					.map(dataset -> CompletableFuture.supplyAsync(() -> getObjectMetadata(creds, dataset), executor))
 					.collect(Collectors.<CompletableFuture<DataSet>>toList());
 			}
-			executor.shutdown();
-			executor.awaitTermination(3, TimeUnit.SECONDS);
 			List<DataSet> objectMetaDS = expectAllDone(objectDSFutures).get().parallelStream()
 				.collect(Collectors.toList());
 
@@ -197,7 +225,7 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 	}
 
 	@Deprecated
-	public List<DataSet> buildSalesforceReportsMetadata(final DataSet template, final SalesforceCredentials creds, final String objectName, ExecutorService executor) throws Exception {
+	public List<DataSet> buildSalesforceReportsMetadata(final DataSet template, final SalesforceCredentials creds, final String objectName, Executor executor) throws Exception {
 		try {
 			long duration = System.currentTimeMillis();
 			List<DataSet> reportDS = salesforceProcessor.getReportTypes(creds, objectName).stream()
@@ -216,16 +244,9 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 			//executor.shutdown();
 			//executor.awaitTermination(3, TimeUnit.SECONDS);
 			//List<DataSet> reportMetaList = expectAllDone(reportMetaDSFutures).get().parallelStream().collect(Collectors.toList());
+			// the transient failures are retried per request by the SalesforceRetryPolicy
 			List<DataSet> reportMetaList = new CopyOnWriteArrayList<DataSet>();
-			List<DataSet> failedList = new CopyOnWriteArrayList<DataSet>();
-			int retry = 1;
-			do {
-				failedList.clear();
-				failedList = batchGetReportMetadata(reportDS, creds, executor, reportMetaList);
-				reportDS.clear();
-				reportDS.addAll(failedList);
-				retry --;
-			} while (retry >= 0 && failedList.size() > 0);
+			batchGetReportMetadata(reportDS, creds, executor, reportMetaList);
 
 			LOG.info("Getting Salesforce metadata for {"
 					+ (objectName == null ? "ALL reports" : objectName) + "} takes {"
@@ -238,8 +259,8 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 	}
 
 	@Deprecated
-	private List<DataSet> batchGetReportMetadata(List<DataSet> sourceList, SalesforceCredentials creds, ExecutorService executor, List<DataSet> composedList) {
-		List<DataSet> failedList = new ArrayList<>();
+	private List<DataSet> batchGetReportMetadata(List<DataSet> sourceList, SalesforceCredentials creds, Executor executor, List<DataSet> composedList) {
+		List<DataSet> failedList = new CopyOnWriteArrayList<>();
 		CompletableFuture[] reportDSFutures = sourceList.stream()
 				.map(dataset -> CompletableFuture.supplyAsync(() -> {
 					DataSet newDS = null;
@@ -258,7 +279,6 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 				}, executor))
 				.toArray(CompletableFuture[]::new);
 		CompletableFuture.allOf(reportDSFutures).join();
-		executor.shutdown();
 		LOG.debug("Successfully getting metdata for #{} additional reports out of #{}.", reportDSFutures.length - failedList.size(), sourceList.size());
 		return failedList;
 	}	
@@ -274,37 +294,165 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 				String.format("Method is not applicable for Salesforce DS type {%s}", dataSet.get(DSFIELD_SF_DSTYPE)));
 		
 		long duration = System.currentTimeMillis();
+		try {
+			Date describedAt = new Date();
+			SObjectDescription oDesc = salesforceProcessor.describeObject(creds, dataSet.getName());
+			applyObjectDescription(dataSet, oDesc);
+			dataSet.setDescribedAt(describedAt);
+			LOG.info("Describing object {} takes {} m-seconds.", dataSet.getName(), System.currentTimeMillis() - duration);
+		} catch (Exception e) {
+			LOG.warn(String.format("Failed to describe Salesforce object {%s}.", dataSet.getName()), e);
+		}
+		return dataSet;
+	}
+	
+	/*
+	 * Store the fields, primary and foreign keys of a SF object description into the dataset
+	 */
+	private static void applyObjectDescription(DataSet dataSet, SObjectDescription oDesc) {
 		final BasicDBObject columnMetadataList = new BasicDBObject();
 		final BasicDBList primaryKeys = new BasicDBList();
 		final BasicDBObject foreignKeys = new BasicDBObject();
 		
+		oDesc.getFields().stream().forEach(f -> {
+			StringBuilder key = SalesforceObjectHelper.normalizeFieldname(f.getName());
+			//LOG.debug("Storing field: " + f.getName());
+			ColumnFieldMetadata columnMetadata = new ColumnFieldMetadata();
+			columnMetadata.setAlias(f.getLabel());
+			columnMetadata.setType(DataType.guess(f.getType()).getName());
+			columnMetadataList.put(key.toString(), columnMetadata);
+			if ("id".equals(f.getType())) {
+				primaryKeys.add(key.toString());
+			}
+		});
+		dataSet.setOriginalFields(columnMetadataList);
+		dataSet.setHasPrimaryKey(primaryKeys.size() > 0);
+		dataSet.setPrimaryKeys(primaryKeys);
+		oDesc.getChildRelationships().stream().forEach(child -> {
+			//LOG.debug("Storing child object: " + child.getChildSObject());
+			foreignKeys.put(SalesforceObjectHelper.normalizeFieldname(child.getField()).toString(), child.getChildSObject());
+		});
+		dataSet.setHasForeignKey(foreignKeys.size() > 0);
+		dataSet.setForeignKeys(foreignKeys);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.github.deeprot.service.CrmDatasourceManager#refreshObjectsMetadata(com.github.deeprot.model.DataSource, java.util.List)
+	 */
+	@Override
+	public MetadataRefreshReport refreshObjectsMetadata(DataSource dataSource, List<DataSet> dataSets) throws Exception {
+		Assert.notNull(dataSets, "dataSets should not be null");
+		MetadataRefreshReport report = new MetadataRefreshReport();
+		switch (DatasourceType.valueOf(dataSource.getType())) {
+		case SALESFORCE:
+			SalesforceCredentials creds = SalesforceLoginConfigHelper.getCredentials(dataSource);
+			long duration = System.currentTimeMillis();
+			try {
+				List<DataSet> objectDS = dataSets.stream()
+						.filter(dataset -> SalesforceProcessor.DatasetType.OBJECT.toString().equals(dataset.get(DSFIELD_SF_DSTYPE)))
+						.collect(Collectors.toList());
+				List<CompletableFuture<Boolean>> refreshFutures = objectDS.stream()
+						.map(dataset -> CompletableFuture.supplyAsync(() -> refreshObjectMetadata(creds, dataset), salesforceExecutor))
+						.collect(Collectors.<CompletableFuture<Boolean>>toList());
+				List<Boolean> outcomes = expectAllDone(refreshFutures).get();
+				List<String> failed = new ArrayList<>();
+				int redescribed = 0;
+				for (int i = 0; i < outcomes.size(); i++) {
+					if (outcomes.get(i) == null) {
+						failed.add(objectDS.get(i).getName());
+					} else if (outcomes.get(i)) {
+						redescribed++;
+					}
+				}
+				report.setTotal(dataSets.size());
+				report.setSkipped(dataSets.size() - objectDS.size());
+				report.setRedescribed(redescribed);
+				report.setNotModified(objectDS.size() - redescribed - failed.size());
+				report.setFailed(failed);
+				report.setDurationMillis(System.currentTimeMillis() - duration);
+				LOG.info("Refreshing Salesforce metadata of {} objects re-describes {} of them and takes {} m-seconds.", 
+						objectDS.size(), redescribed, report.getDurationMillis());
+			} catch (Exception e) {
+				SalesforceObjectHelper.throwRootCause(e);
+			}
+			break;
+		default:
+			break;
+		}
+		return report;
+	}
+	
+	/*
+	 * Private (blocking) method to refresh the description of a SF object with a conditional request.
+	 * Return TRUE if the object was re-described, FALSE if not modified, NULL if failed.
+	 * NOTE: applicable only for Salesforce Objects
+	 */
+	private Boolean refreshObjectMetadata(SalesforceCredentials creds, DataSet dataSet) {
+		// never trust a timestamp without the fields it describes
+		Date since = dataSet.getOriginalFields().isEmpty() ? null : dataSet.getDescribedAt();
 		try {
-			SObjectDescription oDesc = salesforceProcessor.describeObject(creds, dataSet.getName());
-			oDesc.getFields().stream().forEach(f -> {
-				StringBuilder key = SalesforceObjectHelper.normalizeFieldname(f.getName());
-				//LOG.debug("Storing field: " + f.getName());
-				ColumnFieldMetadata columnMetadata = new ColumnFieldMetadata();
-				columnMetadata.setAlias(f.getLabel());
-				columnMetadata.setType(DataType.guess(f.getType()).getName());
-				columnMetadataList.put(key.toString(), columnMetadata);
-				if ("id".equals(f.getType())) {
-					primaryKeys.add(key.toString());
+			Date describedAt = new Date();
+			SObjectDescription oDesc = salesforceProcessor.describeObjectIfModified(creds, dataSet.getName(), since);
+			if (oDesc != null) {
+				applyObjectDescription(dataSet, oDesc);
+			}
+			dataSet.setDescribedAt(describedAt);
+			return oDesc != null;
+		} catch (Exception e) {
+			LOG.warn(String.format("Failed to refresh the description of Salesforce object {%s}.", dataSet.getName()), e);
+			return null;
+		}
+	}
+	
+	/*
+	 * Private (blocking) method to get the descriptions of a batch of SF objects in one round trip,
+	 * batched counterpart of getObjectMetadata
+	 * NOTE: applicable only for Salesforce Objects
+	 */
+	private List<DataSet> getObjectsMetadata(SalesforceCredentials creds, List<DataSet> dataSets) {
+		long duration = System.currentTimeMillis();
+		try {
+			Date describedAt = new Date();
+			Map<String, SObjectDescription> descriptions = salesforceProcessor.describeObjects(creds, 
+					dataSets.stream().map(DataSet::getName).collect(Collectors.toList()));
+			dataSets.forEach(dataSet -> {
+				SObjectDescription oDesc = descriptions.get(dataSet.getName());
+				if (oDesc != null) {
+					applyObjectDescription(dataSet, oDesc);
+					dataSet.setDescribedAt(describedAt);
+				} else {
+					LOG.warn("Failed to describe Salesforce object {}.", dataSet.getName());
 				}
 			});
-			dataSet.setOriginalFields(columnMetadataList);
-			dataSet.setHasPrimaryKey(primaryKeys.size() > 0);
-			dataSet.setPrimaryKeys(primaryKeys);
-			oDesc.getChildRelationships().stream().forEach(child -> {
-				//LOG.debug("Storing child object: " + child.getChildSObject());
-				foreignKeys.put(SalesforceObjectHelper.normalizeFieldname(child.getField()).toString(), child.getChildSObject());
+			LOG.info("Describing a batch of {} objects takes {} m-seconds.", dataSets.size(), System.currentTimeMillis() - duration);
+		} catch (Exception e) {
+			LOG.warn(String.format("Failed to describe a batch of {%d} Salesforce objects.", dataSets.size()), e);
+		}
+		return dataSets;
+	}
+	
+	/*
+	 * Private (blocking) method to count the number of records of a batch of SF objects in one round trip,
+	 * batched counterpart of countObjectRecordset
+	 * NOTE: applicable only for Salesforce Objects
+	 */
+	private List<DataSet> countObjectsRecordset(SalesforceCredentials creds, List<DataSet> dataSets) {
+		long duration = System.currentTimeMillis();
+		try {
+			Map<String, Integer> counts = salesforceProcessor.countObjects(creds, 
+					dataSets.stream().map(DataSet::getName).collect(Collectors.toList()));
+			dataSets.forEach(dataSet -> {
+				Integer rowCount = counts.get(dataSet.getName());
+				if (rowCount != null) {
+					dataSet.setRowCount(rowCount);
+				}
 			});
-			dataSet.setHasForeignKey(foreignKeys.size() > 0);
-			dataSet.setForeignKeys(foreignKeys);
-			LOG.info("Describing object {} takes {} m-seconds.", dataSet.getName(), System.currentTimeMillis() - duration);
+			LOG.info("Counting a batch of {} objects takes {} m-seconds.", dataSets.size(), System.currentTimeMillis() - duration);
 		} catch (Exception e) {
-			LOG.warn(String.format("Failed to describe Salesforce object {%s}.", dataSet.getName()), e);
+			LOG.warn(String.format("Failed to count a batch of {%d} Salesforce objects.", dataSets.size()), e);
 		}
-		return dataSet;
+		return dataSets;
 	}
 	
 	/*
@@ -336,33 +484,111 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 	 * NOTE: applicable only for Salesforce Reports
 	 */
 	private DataSet getReportMetadata(SalesforceCredentials creds, DataSet dataSet) { //throws Exception {
+		return getReportMetadataFuture(creds, dataSet).join();
+	}
+	
+	/*
+	 * Private (non-blocking) method to get the description of a SF report without running it,
+	 * the row count is left unknown (-1) to be fetched later by countReportsRecordset.
+	 * The future always completes with the dataset
+	 * NOTE: applicable only for Salesforce Reports
+	 */
+	private CompletableFuture<DataSet> getReportMetadataFuture(SalesforceCredentials creds, DataSet dataSet) {
+		assertReport(dataSet);
+		final long duration = System.currentTimeMillis();
+		return salesforceProcessor.describeReportMetadataFuture(creds, (String) dataSet.get(DSFIELD_SF_REPORTID))
+				.handle((reportMetadata, failure) -> {
+					try {
+						if (failure != null) {
+							throw failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+						}
+						final BasicDBObject columnMetadataList = new BasicDBObject();
+						DocumentContext document = JsonPath.using(reportConfiguration()).parse(reportMetadata);
+						boolean supported = SalesforceObjectHelper.readReportColumns(document, columnMetadataList);
+						dataSet.setOriginalFields(columnMetadataList);
+						dataSet.setHasPrimaryKey(false);
+						dataSet.setHasForeignKey(false);
+						dataSet.setRowCount(supported ? -1 : 0);
+						LOG.info("Describing report {} takes {} m-seconds.", dataSet.getName(), System.currentTimeMillis() - duration);
+					} catch (Throwable e) {
+						LOG.warn(String.format("Failed to describe Salesforce report {%s}.", dataSet.getName()), e);
+					}
+					return dataSet;
+				});
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.github.deeprot.service.CrmDatasourceManager#countReportsRecordset(com.github.deeprot.model.DataSource, java.util.List)
+	 */
+	@Override
+	public int countReportsRecordset(DataSource dataSource, List<DataSet> dataSets) throws Exception {
+		Assert.notNull(dataSets, "dataSets should not be null");
+		switch (DatasourceType.valueOf(dataSource.getType())) {
+		case SALESFORCE:
+			SalesforceCredentials creds = SalesforceLoginConfigHelper.getCredentials(dataSource);
+			long duration = System.currentTimeMillis();
+			try {
+				// the report instances are polled without holding any thread
+				List<CompletableFuture<Boolean>> countFutures = dataSets.stream()
+						.filter(dataset -> SalesforceProcessor.DatasetType.REPORT.toString().equals(dataset.get(DSFIELD_SF_DSTYPE)))
+						.filter(dataset -> dataset.getRowCount() < 0)
+						.map(dataset -> countReportRecordsetFuture(creds, dataset))
+						.collect(Collectors.<CompletableFuture<Boolean>>toList());
+				int counted = (int) expectAllDone(countFutures).get().stream().filter(Boolean.TRUE::equals).count();
+				LOG.info("Counting the rows of {} Salesforce reports out of {} takes {} m-seconds.", 
+						counted, countFutures.size(), System.currentTimeMillis() - duration);
+				return counted;
+			} catch (Exception e) {
+				SalesforceObjectHelper.throwRootCause(e);
+			}
+			break;
+		default:
+			break;
+		}
+		return 0;
+	}
+	
+	/*
+	 * Private (non-blocking) method to count the rows of a SF report from the grand total of a report instance,
+	 * a fresh instance being reused. The future completes with TRUE if the row count is known
+	 * NOTE: applicable only for Salesforce Reports
+	 */
+	private CompletableFuture<Boolean> countReportRecordsetFuture(SalesforceCredentials creds, DataSet dataSet) {
+		assertReport(dataSet);
+		final long duration = System.currentTimeMillis();
+		return salesforceProcessor.describeReportFuture(creds, (String) dataSet.get(DSFIELD_SF_REPORTID))
+				.handle((reportData, failure) -> {
+					try {
+						if (failure != null) {
+							throw failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+						}
+						int count = SalesforceObjectHelper.readReportRowCount(JsonPath.using(reportConfiguration()).parse(reportData));
+						dataSet.setRowCount(count);
+						LOG.info("Counting report {} takes {} m-seconds.", dataSet.getName(), System.currentTimeMillis() - duration);
+						return count >= 0;
+					} catch (Throwable e) {
+						LOG.warn(String.format("Failed to count Salesforce report {%s}.", dataSet.getName()), e);
+						return false;
+					}
+				});
+	}
+	
+	private static void assertReport(DataSet dataSet) {
 		Assert.notNull(dataSet.get(DSFIELD_SF_DSTYPE), 
 				String.format("Dataset does not contain mandatory custom field {%s}", DSFIELD_SF_DSTYPE));
 		Assert.isTrue(dataSet.get(DSFIELD_SF_DSTYPE).equals(SalesforceProcessor.DatasetType.REPORT.toString()), 
 				String.format("Method is not applicable for Salesforce DS type {%s}", dataSet.get(DSFIELD_SF_DSTYPE)));
 		Assert.notNull(dataSet.get(DSFIELD_SF_REPORTID), 
 				String.format("Dataset does not contain mandatory custom field {%s}", DSFIELD_SF_REPORTID));
-		
-		long duration = System.currentTimeMillis();
-		final BasicDBObject columnMetadataList = new BasicDBObject();
-		DocumentContext document;
-		Map<String, ?> reportMetadata;
-		try {
-			reportMetadata = salesforceProcessor.describeReportAsync(creds, (String) dataSet.get(DSFIELD_SF_REPORTID));
-			Configuration conf = Configuration.defaultConfiguration();
-			conf.addOptions(Option.DEFAULT_PATH_LEAF_TO_NULL);
-			document = JsonPath.using(conf).parse(reportMetadata);
-			int count = SalesforceObjectHelper.readReportMetadata(document, columnMetadataList);
-			dataSet.setOriginalFields(columnMetadataList);
-			dataSet.setHasPrimaryKey(false);
-			dataSet.setHasForeignKey(false);
-			dataSet.setRowCount(count);
-			LOG.info("Describing report {} takes {} m-seconds.", dataSet.getName(), System.currentTimeMillis() - duration);
-		} catch (Exception e) {
-			LOG.warn(String.format("Failed to describe Salesforce report {%s}.", dataSet.getName()), e);
-		}
-		return dataSet;
-	}	
+	}
+	
+	private static Configuration reportConfiguration() {
+		Configuration conf = Configuration.defaultConfiguration();
+		conf.addOptions(Option.DEFAULT_PATH_LEAF_TO_NULL);
+		return conf;
+	}
+	
 	/*
 	 * Utility to get the result of a list of ALL-COMPLETED future tasks
 	 */
@@ -401,8 +627,7 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 					case REPORT:
 						Assert.notNull(dataSet.get(DSFIELD_SF_REPORTID), 
 								String.format("Dataset does not contain mandatory custom field {%s}", DSFIELD_SF_REPORTID));
-						InputStream reportDataStream = salesforceProcessor.getReportData(creds, (String) dataSet.get(DSFIELD_SF_REPORTID), true);
-						sfDataset = SalesforceObjectHelper.readSalesforceReportDataStreamToMongoObject(reportDataStream);
+						sfDataset = salesforceProcessor.extractReport(creds, (String) dataSet.get(DSFIELD_SF_REPORTID));
 						break;
 					default:
 						SObjectDescription oDesc = salesforceProcessor.describeObject(creds, objectName);
@@ -411,13 +636,14 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 						if (offset > 0) {
 							fields = oDesc.getFields().stream()
 									.map(SObjectField::getName).collect(Collectors.toList());
-							resultObj = salesforceProcessor.getObjectWindows(creds, objectName, fields, limit, offset);
+							// ordered by ID, the windows read in sequence follow a keyset cursor
+							resultObj = salesforceProcessor.getObjectWindowAt(creds, objectName, fields, limit, offset);
 						} else {
 							fields = oDesc.getFields().stream()
 									// FUNCTIONALITY_NOT_ENABLED: Selecting compound data not supported in Bulk Query
 									.filter(f -> !f.getSoapType().startsWith("urn:"))
 									.map(SObjectField::getName).collect(Collectors.toList());
-							resultObj = salesforceProcessor.bulkQueryObjects(creds, objectName, fields, limit);
+							resultObj = bulkQueryObjects(creds, dataSet, fields, limit);
 						}
 						if (resultObj != null && resultObj.getTotalSize() > 0) {
 							sfDataset = resultObj.getRecords();
@@ -442,4 +668,116 @@ public class CamelDatasourceManagerImpl extends AbstractDatasourceManagerCamelIm
 		}
 		return resultSet;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.github.deeprot.service.CrmDatasourceManager#getObjectsData(com.github.deeprot.model.DataSource, com.github.deeprot.model.DataSet, int, java.util.function.Consumer)
+	 */
+	@Override
+	public int getObjectsData(DataSource dataSource, DataSet dataSet, int limit, Consumer<List<RawData>> consumer)
+			throws Exception {
+		Assert.notNull(consumer, "[consumer] must not be NULL");
+		int rowCount = 0;
+		switch (DatasourceType.valueOf(dataSource.getType())) {
+		case FILE:
+			break;
+		case DATABASE:
+			break;
+		case SALESFORCE:
+			Assert.notNull(dataSet.get(DSFIELD_SF_DSTYPE), 
+					String.format("Dataset does not contain mandatory custom field {%s}", DSFIELD_SF_DSTYPE));
+			SalesforceCredentials creds = SalesforceLoginConfigHelper.getCredentials(dataSource);
+			String objectName = dataSet.getName();
+			SalesforceProcessor.DatasetType dsType = SalesforceProcessor.DatasetType.valueOf((String)dataSet.get(DSFIELD_SF_DSTYPE));
+			try {
+				long duration = System.currentTimeMillis();
+				switch (dsType) {
+					case REPORT:
+						List<RawData> resultSet = getObjectsData(dataSource, dataSet, limit, 0);
+						if (resultSet != null) {
+							rowCount = resultSet.size();
+							consumer.accept(resultSet);
+						}
+						break;
+					default:
+						SObjectDescription oDesc = salesforceProcessor.describeObject(creds, objectName);
+						List<String> fields = oDesc.getFields().stream()
+								// FUNCTIONALITY_NOT_ENABLED: Selecting compound data not supported in Bulk Query
+								.filter(f -> !f.getSoapType().startsWith("urn:"))
+								.map(SObjectField::getName).collect(Collectors.toList());
+						rowCount = salesforceProcessor.bulkQueryObjects(creds, objectName, fields, limit,
+								BulkQueryOptions.forRowCount(dataSet.getRowCount()),
+								jsonObjs -> consumer.accept(toRawData(dataSet, jsonObjs)));
+						break;
+				}
+				duration = System.currentTimeMillis() - duration;
+				LOG.info("Streaming {" + rowCount + "} Salesforce records for dataset {" + objectName
+						+ "} takes {" + duration + "} mili-seconds.");
+			} catch (Exception e) {
+				SalesforceObjectHelper.throwRootCause(e);
+			}
+		}
+		return rowCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.github.deeprot.service.CrmDatasourceManager#getObjectsPage(com.github.deeprot.model.DataSource, com.github.deeprot.model.DataSet, int, java.lang.String)
+	 */
+	@Override
+	public List<RawData> getObjectsPage(DataSource dataSource, DataSet dataSet, int limit, String afterId)
+			throws Exception {
+		List<RawData> resultSet = null;
+		switch (DatasourceType.valueOf(dataSource.getType())) {
+		case FILE:
+			break;
+		case DATABASE:
+			break;
+		case SALESFORCE:
+			Assert.isTrue(SalesforceProcessor.DatasetType.OBJECT.toString().equals(dataSet.get(DSFIELD_SF_DSTYPE)), 
+					String.format("Method is not applicable for Salesforce DS type {%s}", dataSet.get(DSFIELD_SF_DSTYPE)));
+			SalesforceCredentials creds = SalesforceLoginConfigHelper.getCredentials(dataSource);
+			String objectName = dataSet.getName();
+			try {
+				long duration = System.currentTimeMillis();
+				SObjectDescription oDesc = salesforceProcessor.describeObject(creds, objectName);
+				List<String> fields = oDesc.getFields().stream()
+						.map(SObjectField::getName).collect(Collectors.toList());
+				QueryRecords<?> resultObj = salesforceProcessor.getObjectWindowAfter(creds, objectName, fields, limit, afterId);
+				resultSet = resultObj == null || resultObj.getRecords() == null
+						? new ArrayList<RawData>() : toRawData(dataSet, resultObj.getRecords());
+				duration = System.currentTimeMillis() - duration;
+				LOG.info("Getting Salesforce page after {" + afterId + "} for dataset {" + objectName
+						+ "} takes {" + duration + "} mili-seconds.");
+			} catch (Exception e) {
+				SalesforceObjectHelper.throwRootCause(e);
+			}
+		}
+		return resultSet;
+	}
+
+	/*
+	 * Bulk query all the records of a dataset, PK chunking is enabled based on
+	 * the row count computed during the metadata discovery
+	 */
+	private QueryRecords<?> bulkQueryObjects(SalesforceCredentials creds, DataSet dataSet, List<String> fields, int limit) throws Exception {
+		QueryRecords<Object> tobeimported = new QueryRecords<Object>();
+		tobeimported.setRecords(new ArrayList<Object>());
+		int rowCount = salesforceProcessor.bulkQueryObjects(creds, dataSet.getName(), fields, limit,
+				BulkQueryOptions.forRowCount(dataSet.getRowCount()), jsonObjs -> tobeimported.getRecords().addAll(jsonObjs));
+		tobeimported.setTotalSize(rowCount);
+		return tobeimported;
+	}
+
+	/*
+	 * Wrap the Salesforce records of a dataset into RawData objects
+	 */
+	private List<RawData> toRawData(DataSet dataSet, Collection<?> sfDataset) {
+		return sfDataset.parallelStream().map(o -> {
+			RawData record = new RawData();
+			record.setDatasetId(dataSet.getId());
+			record.put("data", o);
+			return record;
+		}).collect(Collectors.toList());
+	}
 }
@@ -0,0 +1,114 @@
+package com.github.deeprot.integration.camel;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.deeprot.integration.camel.SalesforceRateGovernor.Permit;
+import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
+
+public class SalesforceRateGovernorTest {
+
+	private static final String ORG_ID = "00D28000000abcd";
+
+	private SalesforceRateGovernor governor;
+	private SalesforceCredentials creds;
+
+	@Before
+	public void setUp() {
+		governor = new SalesforceRateGovernor() {
+			@Override
+			String resolveOrgId(SalesforceCredentials creds) {
+				return ORG_ID;
+			}
+		};
+		governor.metrics = new SalesforceMetrics();
+		creds = new SalesforceCredentials("user@example.com", "secret");
+	}
+
+	@After
+	public void tearDown() {
+		governor.shutdown();
+	}
+
+	@Test
+	public void testTokenBucketRefusesBurst() throws Exception {
+		org.junit.Assert.assertNotNull(governor.tryAcquire(creds));
+		// the bucket is empty right after the first permit
+		org.junit.Assert.assertNull(governor.tryAcquire(creds));
+		Thread.sleep(2 * (long) (1000 / SalesforceRateGovernor.PERMITS_PER_SECOND));
+		org.junit.Assert.assertNotNull(governor.tryAcquire(creds));
+	}
+
+	@Test
+	public void testConcurrencyCap() throws Exception {
+		Permit permit = null;
+		for (int i = 0; i < SalesforceRateGovernor.MAX_CONCURRENT_REQUESTS; i++) {
+			permit = governor.acquire(creds);
+		}
+		Thread.sleep(2 * (long) (1000 / SalesforceRateGovernor.PERMITS_PER_SECOND));
+		org.junit.Assert.assertNull(governor.tryAcquire(creds));
+		permit.close();
+		org.junit.Assert.assertNotNull(governor.tryAcquire(creds));
+		// the permits are kept per tenant
+		org.junit.Assert.assertNotNull(governor.tryAcquire(new SalesforceCredentials("other@example.com", "secret")));
+	}
+
+	@Test
+	public void testReleaseAfterTenantExpiry() throws Exception {
+		Permit permit = governor.acquire(creds);
+		// the tenant expires while its request is in flight
+		governor.tenants.invalidateAll();
+		permit.close();
+		permit.close();
+		// the permits go back to the expired tenant, the new one keeps its cap
+		for (int i = 0; i < SalesforceRateGovernor.MAX_CONCURRENT_REQUESTS; i++) {
+			governor.acquire(creds);
+		}
+		Thread.sleep(2 * (long) (1000 / SalesforceRateGovernor.PERMITS_PER_SECOND));
+		org.junit.Assert.assertNull(governor.tryAcquire(creds));
+	}
+
+	@Test
+	public void testReserveRefusal() {
+		governor.updateUsage(ORG_ID, "api-usage=14000/15000");
+		// throttled but still served above the reserve
+		governor.acquire(creds).close();
+
+		governor.updateUsage(ORG_ID, "api-usage=14300/15000");
+		try {
+			governor.acquire(creds);
+			org.junit.Assert.fail("The reserve of the daily allowance must be kept");
+		} catch (RejectedExecutionException e) {
+			org.junit.Assert.assertEquals(1, governor.metrics.count("governor.rejected.allowance"));
+		}
+		try {
+			governor.tryAcquire(creds);
+			org.junit.Assert.fail("The reserve of the daily allowance must be kept");
+		} catch (RejectedExecutionException e) {
+			org.junit.Assert.assertEquals(2, governor.metrics.count("governor.rejected.allowance"));
+		}
+		try {
+			governor.acquireAsync(creds).join();
+			org.junit.Assert.fail("The reserve of the daily allowance must be kept");
+		} catch (CompletionException e) {
+			org.junit.Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+
+		// the usage of another org does not matter
+		governor.updateUsage("00D28000000wxyz", "api-usage=10/15000");
+		governor.updateUsage(ORG_ID, "per-app-api-usage=1/10;api-usage=100/15000");
+		governor.acquire(creds).close();
+	}
+
+	@Test
+	public void testOrgId() {
+		org.junit.Assert.assertEquals(ORG_ID, SalesforceRateGovernor.orgId(ORG_ID + "!AQ4AQFtNvzqJ"));
+		org.junit.Assert.assertEquals(ORG_ID, SalesforceRateGovernor.orgId("Bearer " + ORG_ID + "!AQ4AQFtNvzqJ"));
+		org.junit.Assert.assertNull(SalesforceRateGovernor.orgId("AQ4AQFtNvzqJ"));
+		org.junit.Assert.assertNull(SalesforceRateGovernor.orgId(null));
+	}
+}
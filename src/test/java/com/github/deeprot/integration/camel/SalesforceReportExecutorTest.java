@@ -0,0 +1,134 @@
+package com.github.deeprot.integration.camel;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.deeprot.integration.camel.SalesforceReportExecutor.InstanceSlots;
+import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
+import com.google.common.io.ByteStreams;
+
+public class SalesforceReportExecutorTest {
+
+	private static final String REPORT_ID = "00O28000000abcd";
+
+	private SalesforceReportExecutor executor;
+	private SalesforceCredentials creds;
+	/*
+	 * The runs started by the executor, completed by the tests
+	 */
+	private final List<CompletableFuture<byte[]>> runs = new ArrayList<>();
+
+	@Before
+	public void setUp() {
+		executor = new SalesforceReportExecutor() {
+			@Override
+			CompletableFuture<byte[]> start(String key, Map<String, Object> headers) {
+				CompletableFuture<byte[]> run = new CompletableFuture<>();
+				runs.add(run);
+				return run;
+			}
+		};
+		executor.metrics = new SalesforceMetrics();
+		executor.init();
+		creds = new SalesforceCredentials("user@example.com", "secret");
+	}
+
+	@Test
+	public void testSlotHandover() {
+		InstanceSlots slots = new InstanceSlots(2);
+		org.junit.Assert.assertTrue(slots.acquire().isDone());
+		org.junit.Assert.assertTrue(slots.acquire().isDone());
+		CompletableFuture<Void> third = slots.acquire();
+		CompletableFuture<Void> fourth = slots.acquire();
+		org.junit.Assert.assertFalse(third.isDone());
+		org.junit.Assert.assertEquals(2, slots.getUsed());
+		org.junit.Assert.assertEquals(2, slots.getQueued());
+
+		// a released slot goes to the first waiting run, the count is unchanged
+		org.junit.Assert.assertSame(third, slots.release());
+		org.junit.Assert.assertEquals(2, slots.getUsed());
+		org.junit.Assert.assertEquals(1, slots.getQueued());
+
+		org.junit.Assert.assertSame(fourth, slots.release());
+		org.junit.Assert.assertEquals(2, slots.getUsed());
+		org.junit.Assert.assertEquals(0, slots.getQueued());
+
+		// no run is waiting any more, the slots are freed
+		org.junit.Assert.assertNull(slots.release());
+		org.junit.Assert.assertEquals(1, slots.getUsed());
+		org.junit.Assert.assertNull(slots.release());
+		org.junit.Assert.assertEquals(0, slots.getUsed());
+		org.junit.Assert.assertTrue(slots.acquire().isDone());
+	}
+
+	@Test
+	public void testSlotReleasedOnCreatorFailure() {
+		// the REST client is missing, the instance creation fails right away
+		for (int i = 0; i < 2 * SalesforceReportExecutor.MAX_INSTANCES_PER_ORG; i++) {
+			CompletableFuture<InputStream> data = executor.execute(creds, REPORT_ID, true, Collections.<String, Object>emptyMap());
+			org.junit.Assert.assertTrue("Run #" + i + " must not wait for a leaked slot", data.isCompletedExceptionally());
+		}
+		Map<String, Object> snapshot = executor.metrics.snapshot();
+		org.junit.Assert.assertEquals(0, snapshot.get("report.instance.running"));
+		org.junit.Assert.assertEquals(0, snapshot.get("report.instance.queued"));
+		// the slots of an idle org are dropped
+		org.junit.Assert.assertEquals(0, snapshot.get("report.instance.orgs"));
+	}
+
+	@Test
+	public void testSharedRun() throws Exception {
+		CompletableFuture<InputStream> first = executor.execute(creds, REPORT_ID, true);
+		CompletableFuture<InputStream> second = executor.execute(creds, REPORT_ID, true);
+		org.junit.Assert.assertEquals(1, runs.size());
+		org.junit.Assert.assertEquals(1, executor.metrics.count("report.instance.shared"));
+
+		// another details flag, report or tenant is another run
+		executor.execute(creds, REPORT_ID, false);
+		executor.execute(creds, "00O28000000wxyz", true);
+		executor.execute(new SalesforceCredentials("other@example.com", "secret"), REPORT_ID, true);
+		org.junit.Assert.assertEquals(4, runs.size());
+
+		runs.get(0).complete("{\"factMap\":{}}".getBytes(StandardCharsets.UTF_8));
+		// each caller reads its own stream
+		org.junit.Assert.assertEquals("{\"factMap\":{}}", read(first.get()));
+		org.junit.Assert.assertEquals("{\"factMap\":{}}", read(second.get()));
+
+		// a completed run is not shared any more
+		executor.execute(creds, REPORT_ID, true);
+		org.junit.Assert.assertEquals(5, runs.size());
+	}
+
+	@Test
+	public void testSharedRunFailure() throws Exception {
+		CompletableFuture<InputStream> first = executor.execute(creds, REPORT_ID, true);
+		CompletableFuture<InputStream> second = executor.execute(creds, REPORT_ID, true);
+		IllegalStateException failure = new IllegalStateException("Report instance failed");
+		runs.get(0).completeExceptionally(failure);
+		for (CompletableFuture<InputStream> data : Arrays.asList(first, second)) {
+			try {
+				data.get();
+				org.junit.Assert.fail("The failure of the run must be shared");
+			} catch (ExecutionException e) {
+				org.junit.Assert.assertSame(failure, e.getCause());
+			}
+		}
+
+		// a failed run is not shared any more
+		executor.execute(creds, REPORT_ID, true);
+		org.junit.Assert.assertEquals(2, runs.size());
+	}
+
+	private static String read(InputStream in) throws Exception {
+		return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,171 @@
+package com.github.deeprot.integration.camel;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.github.deeprot.integration.camel.SalesforceReportPartitioner.Partition;
+import com.mongodb.BasicDBObject;
+
+public class SalesforceReportPartitionerTest {
+
+	private static final String COLUMN = "CREATED_DATE";
+
+	@Test
+	public void testSplit() {
+		Partition range = new Partition(LocalDate.of(2015, 1, 1), LocalDate.of(2015, 1, 11), false);
+		List<Partition> halves = range.split();
+		org.junit.Assert.assertEquals(2, halves.size());
+		org.junit.Assert.assertEquals("[2015-01-01, 2015-01-06)", halves.get(0).toString());
+		org.junit.Assert.assertEquals("[2015-01-06, 2015-01-11)", halves.get(1).toString());
+
+		// odd number of days
+		halves = new Partition(LocalDate.of(2015, 1, 1), LocalDate.of(2015, 1, 4), false).split();
+		org.junit.Assert.assertEquals("[2015-01-01, 2015-01-02)", halves.get(0).toString());
+		org.junit.Assert.assertEquals("[2015-01-02, 2015-01-04)", halves.get(1).toString());
+	}
+
+	@Test
+	public void testSplitNotSplittable() {
+		// a single day
+		org.junit.Assert.assertNull(new Partition(LocalDate.of(2015, 1, 1), LocalDate.of(2015, 1, 2), false).split());
+		// open ranges
+		org.junit.Assert.assertNull(new Partition(null, LocalDate.of(2015, 1, 1), false).split());
+		org.junit.Assert.assertNull(new Partition(LocalDate.of(2015, 1, 1), null, false).split());
+		// the rows without date
+		org.junit.Assert.assertNull(new Partition(null, null, true).split());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testFilter() {
+		Map<String, Object> reportMetadata = reportMetadata(null);
+		Map<String, Object> metadata = new Partition(LocalDate.of(2015, 1, 1), LocalDate.of(2015, 2, 1), false)
+				.filter(reportMetadata, COLUMN);
+
+		List<Map<String, Object>> filters = (List<Map<String, Object>>) metadata.get("reportFilters");
+		org.junit.Assert.assertEquals(4, filters.size());
+		org.junit.Assert.assertEquals("STAGE_NAME", filters.get(0).get("column"));
+		assertFilter(filters.get(2), "greaterOrEqual", "2015-01-01");
+		assertFilter(filters.get(3), "lessThan", "2015-02-01");
+		// the filters are ANDed by default, no logic is needed
+		org.junit.Assert.assertFalse(metadata.containsKey("reportBooleanFilter"));
+		// the saved report metadata is unchanged
+		org.junit.Assert.assertEquals(2, ((List<?>) reportMetadata.get("reportFilters")).size());
+		org.junit.Assert.assertEquals("Opportunity", metadata.get("reportType"));
+
+		// open ranges have a single bound
+		metadata = new Partition(null, LocalDate.of(1970, 1, 1), false).filter(reportMetadata, COLUMN);
+		filters = (List<Map<String, Object>>) metadata.get("reportFilters");
+		org.junit.Assert.assertEquals(3, filters.size());
+		assertFilter(filters.get(2), "lessThan", "1970-01-01");
+
+		// the rows without date
+		metadata = new Partition(null, null, true).filter(Collections.<String, Object>emptyMap(), COLUMN);
+		filters = (List<Map<String, Object>>) metadata.get("reportFilters");
+		org.junit.Assert.assertEquals(1, filters.size());
+		assertFilter(filters.get(0), "equals", "");
+	}
+
+	@Test
+	public void testFilterBooleanLogic() {
+		Map<String, Object> reportMetadata = reportMetadata("1 OR 2");
+		Map<String, Object> metadata = new Partition(LocalDate.of(2015, 1, 1), LocalDate.of(2015, 2, 1), false)
+				.filter(reportMetadata, COLUMN);
+		// the filters of the range are numbered after the saved ones
+		org.junit.Assert.assertEquals("(1 OR 2) AND 3 AND 4", metadata.get("reportBooleanFilter"));
+		org.junit.Assert.assertEquals("1 OR 2", reportMetadata.get("reportBooleanFilter"));
+
+		metadata = new Partition(null, null, true).filter(reportMetadata, COLUMN);
+		org.junit.Assert.assertEquals("(1 OR 2) AND 3", metadata.get("reportBooleanFilter"));
+
+		// a blank logic is not rewritten
+		metadata = new Partition(null, null, true).filter(reportMetadata(" "), COLUMN);
+		org.junit.Assert.assertEquals(" ", metadata.get("reportBooleanFilter"));
+	}
+
+	@Test
+	public void testMerge() {
+		SalesforceReportPartitioner partitioner = new SalesforceReportPartitioner();
+		partitioner.metrics = new SalesforceMetrics();
+		Partition first = new Partition(null, LocalDate.of(2015, 1, 1), false);
+		first.rows.add(row("006A", "Acme"));
+		first.rows.add(row("006B", "Globex"));
+		Partition second = new Partition(LocalDate.of(2015, 1, 1), null, false);
+		// modified between the two runs
+		second.rows.add(row("006B", "Globex Corp"));
+		second.rows.add(row("006C", "Initech"));
+		List<Partition> partitions = Arrays.asList(first, second);
+
+		Collection<BasicDBObject> rows = partitioner.merge(partitions, "OPPORTUNITY_ID");
+		org.junit.Assert.assertEquals(3, rows.size());
+		org.junit.Assert.assertEquals(Arrays.asList("Acme", "Globex", "Initech"), names(rows));
+		org.junit.Assert.assertEquals(1, partitioner.metrics.count("report.partition.duplicates"));
+
+		// without record ID, identical rows may be distinct records
+		second.rows.add(row("006C", "Initech"));
+		rows = partitioner.merge(partitions, null);
+		org.junit.Assert.assertEquals(5, rows.size());
+	}
+
+	@Test
+	public void testIdColumn() {
+		Map<String, Object> reportData = new HashMap<>();
+		Map<String, Object> reportMetadata = reportMetadata(null);
+		reportMetadata.put("detailColumns", Arrays.asList("OPPORTUNITY_NAME", "Account.Id", "OPPORTUNITY_ID"));
+		Map<String, Object> columnInfos = new HashMap<>();
+		columnInfos.put("OPPORTUNITY_NAME", Collections.singletonMap("dataType", "string"));
+		columnInfos.put("Account.Id", Collections.singletonMap("dataType", "id"));
+		columnInfos.put("OPPORTUNITY_ID", Collections.singletonMap("dataType", "id"));
+		reportData.put("reportMetadata", reportMetadata);
+		reportData.put("reportExtendedMetadata", Collections.singletonMap("detailColumnInfo", columnInfos));
+		// the first ID column, with the row key of the column
+		org.junit.Assert.assertEquals("Account!Id", SalesforceReportPartitioner.idColumn(reportData));
+
+		columnInfos.put("Account.Id", Collections.singletonMap("dataType", "string"));
+		columnInfos.put("OPPORTUNITY_ID", Collections.singletonMap("dataType", "string"));
+		org.junit.Assert.assertNull(SalesforceReportPartitioner.idColumn(reportData));
+	}
+
+	private static Map<String, Object> reportMetadata(String booleanFilter) {
+		Map<String, Object> stage = new LinkedHashMap<>();
+		stage.put("column", "STAGE_NAME");
+		stage.put("operator", "equals");
+		stage.put("value", "Closed Won");
+		Map<String, Object> amount = new LinkedHashMap<>();
+		amount.put("column", "AMOUNT");
+		amount.put("operator", "greaterThan");
+		amount.put("value", "1000");
+		Map<String, Object> reportMetadata = new LinkedHashMap<>();
+		reportMetadata.put("reportType", "Opportunity");
+		reportMetadata.put("reportFilters", Arrays.asList(stage, amount));
+		if (booleanFilter != null) {
+			reportMetadata.put("reportBooleanFilter", booleanFilter);
+		}
+		return reportMetadata;
+	}
+
+	private static void assertFilter(Map<String, Object> filter, String operator, String value) {
+		org.junit.Assert.assertEquals(COLUMN, filter.get("column"));
+		org.junit.Assert.assertEquals(operator, filter.get("operator"));
+		org.junit.Assert.assertEquals(value, filter.get("value"));
+	}
+
+	private static BasicDBObject row(String id, String name) {
+		return new BasicDBObject("OPPORTUNITY_ID", id).append("OPPORTUNITY_NAME", name);
+	}
+
+	private static List<Object> names(Collection<BasicDBObject> rows) {
+		List<Object> names = new ArrayList<>();
+		rows.forEach(row -> names.add(row.get("OPPORTUNITY_NAME")));
+		return names;
+	}
+}
@@ -0,0 +1,225 @@
+package com.github.deeprot.integration.camel;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.component.salesforce.api.SalesforceException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.deeprot.integration.camel.SalesforceRetryPolicy.CircuitOpenException;
+import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
+
+public class SalesforceRetryPolicyTest {
+
+	private static final String OPERATION = "test";
+
+	private SalesforceRetryPolicy policy;
+	private SalesforceCredentials creds;
+
+	@Before
+	public void setUp() {
+		policy = new SalesforceRetryPolicy();
+		policy.metrics = new SalesforceMetrics();
+		policy.openDuration = 100;
+		creds = new SalesforceCredentials("user@example.com", "secret");
+	}
+
+	@After
+	public void tearDown() {
+		policy.shutdown();
+	}
+
+	@Test
+	public void testIsTransient() {
+		org.junit.Assert.assertTrue(SalesforceRetryPolicy.isTransient(new TimeoutException()));
+		org.junit.Assert.assertTrue(SalesforceRetryPolicy.isTransient(new RuntimeException(new SocketTimeoutException())));
+		org.junit.Assert.assertTrue(SalesforceRetryPolicy.isTransient(new ConnectException()));
+		org.junit.Assert.assertTrue(SalesforceRetryPolicy.isTransient(new SalesforceException("Service Unavailable", 503)));
+		org.junit.Assert.assertTrue(SalesforceRetryPolicy.isTransient(new SalesforceException("UNABLE_TO_LOCK_ROW: unable to obtain exclusive access", 400)));
+		org.junit.Assert.assertTrue(SalesforceRetryPolicy.isTransient(new SalesforceException("Connection failed", 0)));
+
+		org.junit.Assert.assertFalse(SalesforceRetryPolicy.isTransient(new SalesforceException("Not Implemented", 501)));
+		org.junit.Assert.assertFalse(SalesforceRetryPolicy.isTransient(new SalesforceException("INVALID_FIELD: No such column", 400)));
+		org.junit.Assert.assertFalse(SalesforceRetryPolicy.isTransient(new SalesforceException("Session expired or invalid", 401)));
+		org.junit.Assert.assertFalse(SalesforceRetryPolicy.isTransient(new IllegalArgumentException("timed out")));
+		org.junit.Assert.assertFalse(SalesforceRetryPolicy.isTransient(null));
+	}
+
+	@Test
+	public void testTransientFailureRetried() throws Exception {
+		Flaky call = new Flaky(2, 503);
+		org.junit.Assert.assertEquals("OK", policy.call(creds, OPERATION, true, call));
+		org.junit.Assert.assertEquals(3, call.attempts.get());
+		org.junit.Assert.assertEquals(2, policy.metrics.count("retry.attempt." + OPERATION));
+	}
+
+	@Test
+	public void testTransientFailureRetriedAsync() throws Exception {
+		Flaky call = new Flaky(2, 503);
+		org.junit.Assert.assertEquals("OK", policy.callAsync(creds, OPERATION, true, call::async).get());
+		org.junit.Assert.assertEquals(3, call.attempts.get());
+	}
+
+	@Test
+	public void testPermanentFailureNotRetried() {
+		Flaky call = new Flaky(1, 400);
+		try {
+			policy.call(creds, OPERATION, true, call);
+			org.junit.Assert.fail("A permanent failure must be thrown");
+		} catch (SalesforceException e) {
+			org.junit.Assert.assertEquals(400, e.getStatusCode());
+		}
+		org.junit.Assert.assertEquals(1, call.attempts.get());
+		org.junit.Assert.assertEquals(1, policy.metrics.count("failure.permanent." + OPERATION));
+	}
+
+	@Test
+	public void testNonIdempotentNotRetried() {
+		Flaky call = new Flaky(1, 503);
+		try {
+			policy.call(creds, OPERATION, false, call);
+			org.junit.Assert.fail("A non idempotent request must not be retried");
+		} catch (SalesforceException e) {
+			org.junit.Assert.assertEquals(503, e.getStatusCode());
+		}
+		org.junit.Assert.assertEquals(1, call.attempts.get());
+		org.junit.Assert.assertEquals(1, policy.metrics.count("retry.skipped." + OPERATION));
+	}
+
+	@Test
+	public void testAttemptsExhausted() {
+		Flaky call = new Flaky(Integer.MAX_VALUE, 503);
+		try {
+			policy.call(creds, OPERATION, true, call);
+			org.junit.Assert.fail("The last transient failure must be thrown");
+		} catch (SalesforceException e) {
+			org.junit.Assert.assertEquals(503, e.getStatusCode());
+		}
+		org.junit.Assert.assertEquals(SalesforceRetryPolicy.MAX_ATTEMPTS, call.attempts.get());
+		org.junit.Assert.assertEquals(1, policy.metrics.count("retry.exhausted." + OPERATION));
+	}
+
+	@Test
+	public void testCircuitOpenAndHalfOpen() throws Exception {
+		for (int i = 0; i < SalesforceRetryPolicy.FAILURE_THRESHOLD; i++) {
+			assertFails(new Flaky(1, 503), SalesforceException.class);
+		}
+		org.junit.Assert.assertEquals(1, policy.metrics.count("circuit.opened"));
+
+		// open: refused without reaching the org
+		Flaky refused = new Flaky(0, 0);
+		assertFails(refused, CircuitOpenException.class);
+		org.junit.Assert.assertEquals(0, refused.attempts.get());
+
+		// half-open: a failed trial opens the circuit again
+		Thread.sleep(2 * policy.openDuration);
+		assertFails(new Flaky(1, 503), SalesforceException.class);
+		assertFails(new Flaky(0, 0), CircuitOpenException.class);
+
+		// half-open: a single trial at a time, its success closes the circuit
+		Thread.sleep(2 * policy.openDuration);
+		CompletableFuture<String> trial = new CompletableFuture<>();
+		CompletableFuture<String> response = policy.callAsync(creds, OPERATION, true, () -> trial);
+		assertFails(new Flaky(0, 0), CircuitOpenException.class);
+		trial.complete("OK");
+		org.junit.Assert.assertEquals("OK", response.get());
+		org.junit.Assert.assertEquals("OK", policy.call(creds, OPERATION, true, new Flaky(0, 0)));
+
+		// the circuits are kept per tenant
+		org.junit.Assert.assertEquals("OK", policy.call(new SalesforceCredentials("other@example.com", "secret"),
+				OPERATION, true, new Flaky(0, 0)));
+	}
+
+	@Test
+	public void testCircuitKeptOpenByLocalFailure() throws Exception {
+		policy.registerGauges();
+		for (int i = 0; i < SalesforceRetryPolicy.FAILURE_THRESHOLD; i++) {
+			assertFails(new Flaky(1, 503), SalesforceException.class);
+		}
+		Thread.sleep(2 * policy.openDuration);
+
+		// the trial is refused locally, e.g. by the governor, before reaching the org
+		try {
+			policy.call(creds, OPERATION, true, () -> {
+				throw new RejectedExecutionException("Daily API allowance reached its reserve");
+			});
+			org.junit.Assert.fail("The local failure must be thrown");
+		} catch (RejectedExecutionException e) {
+			org.junit.Assert.assertFalse(e instanceof CircuitOpenException);
+		}
+		org.junit.Assert.assertEquals(1L, policy.metrics.snapshot().get("circuit.open"));
+
+		// still half-open: the next trial is let through, its failure opens the circuit again right away
+		assertFails(new Flaky(1, 503), SalesforceException.class);
+		org.junit.Assert.assertEquals(2, policy.metrics.count("circuit.opened"));
+		assertFails(new Flaky(0, 0), CircuitOpenException.class);
+	}
+
+	@Test
+	public void testRetryBudget() throws Exception {
+		policy.maxAttempts = Integer.MAX_VALUE;
+		int served = 0;
+		try {
+			for (; served < 100; served++) {
+				// each request costs a retry and deposits a fraction of a token only
+				policy.call(creds, OPERATION, true, new Flaky(1, 503));
+			}
+			org.junit.Assert.fail("The retry budget must run out");
+		} catch (SalesforceException e) {
+			org.junit.Assert.assertEquals(503, e.getStatusCode());
+		}
+		org.junit.Assert.assertTrue("Served " + served, served > SalesforceRetryPolicy.MAX_RETRY_TOKENS
+				&& served < 2 * SalesforceRetryPolicy.MAX_RETRY_TOKENS);
+		org.junit.Assert.assertEquals(1, policy.metrics.count("retry.budget.exhausted"));
+		// the circuit is not affected, the failures were not consecutive
+		org.junit.Assert.assertEquals(0, policy.metrics.count("circuit.opened"));
+	}
+
+	private void assertFails(Flaky call, Class<? extends Exception> expected) {
+		try {
+			policy.call(creds, OPERATION, false, call);
+			org.junit.Assert.fail("Expected " + expected.getSimpleName());
+		} catch (Exception e) {
+			org.junit.Assert.assertTrue(e.toString(), expected.isInstance(e));
+		}
+	}
+
+	/*
+	 * A request failing with the given status a number of times before it
+	 * succeeds
+	 */
+	private static class Flaky implements SalesforceRetryPolicy.Call<String, SalesforceException> {
+		final AtomicInteger attempts = new AtomicInteger();
+		final int failures;
+		final int status;
+
+		Flaky(int failures, int status) {
+			this.failures = failures;
+			this.status = status;
+		}
+
+		@Override
+		public String call() throws SalesforceException {
+			if (attempts.getAndIncrement() < failures) {
+				throw new SalesforceException("Failure #" + attempts.get(), status);
+			}
+			return "OK";
+		}
+
+		CompletableFuture<String> async() {
+			CompletableFuture<String> future = new CompletableFuture<>();
+			try {
+				future.complete(call());
+			} catch (SalesforceException e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		}
+	}
+}
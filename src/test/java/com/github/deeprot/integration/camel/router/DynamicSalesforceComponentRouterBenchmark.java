@@ -0,0 +1,272 @@
+package com.github.deeprot.integration.camel.router;
+
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_COMPONENT;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_CHECK_BATCH_STATUS;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_CLOSE_JOB;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_COUNT_OBJECTS;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_CREATE_BATCH;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_CREATE_JOB;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_CREATE_REPORT_INSTANCE;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_DESCRIBE_REPORT;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_ALL_BATCHES;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_BATCH_DATA;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_BATCH_RESULTS;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_DESCRIPTION;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_GLOBAL_OBJECTS;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_INSTANCE_DATA;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_OBJECT;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_OBJECT_WINDOW;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_REPORT_DATA;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_GET_VERSIONS;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_LIST_REPORTS;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.FROM_URI_QUERY_MORE;
+import static com.github.deeprot.integration.camel.SalesforceProcessor.HEADER_CREDENTIALS;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.component.salesforce.SalesforceComponent;
+import org.apache.camel.component.salesforce.internal.OperationName;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.deeprot.integration.camel.SalesforceMetrics;
+import com.github.deeprot.integration.camel.dto.QueryRecords;
+import com.github.deeprot.integration.camel.dto.SalesforceCredentials;
+
+/**
+ * Timings of the component registry and of the routing of
+ * {@link DynamicSalesforceComponentRouter}, kept out of the unit tests so that
+ * the build does not depend on the speed of the machine. The components log in
+ * lazily, no request is sent to Salesforce. Run it as a plain Java application
+ * from the project directory.
+ */
+public class DynamicSalesforceComponentRouterBenchmark {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DynamicSalesforceComponentRouterBenchmark.class);
+
+	private static final int THREADS = 64;
+	private static final int USERS = 256;
+	/*
+	 * The DIRECT endpoints of the operations routed to the components
+	 */
+	private static final String[] FROM_URIS = { FROM_URI_GET_VERSIONS, FROM_URI_GET_GLOBAL_OBJECTS,
+			FROM_URI_GET_DESCRIPTION, FROM_URI_COUNT_OBJECTS, FROM_URI_GET_OBJECT, FROM_URI_GET_OBJECT_WINDOW,
+			FROM_URI_QUERY_MORE, FROM_URI_CREATE_JOB, FROM_URI_CLOSE_JOB, FROM_URI_CREATE_BATCH,
+			FROM_URI_CHECK_BATCH_STATUS, FROM_URI_GET_ALL_BATCHES, FROM_URI_GET_BATCH_RESULTS, FROM_URI_GET_BATCH_DATA,
+			FROM_URI_LIST_REPORTS, FROM_URI_DESCRIBE_REPORT, FROM_URI_GET_REPORT_DATA, FROM_URI_CREATE_REPORT_INSTANCE,
+			FROM_URI_GET_INSTANCE_DATA };
+
+	public static void main(String[] args) throws Exception {
+		CamelContext camelContext = new DefaultCamelContext();
+		camelContext.start();
+		DynamicSalesforceComponentRouter router = new DynamicSalesforceComponentRouter();
+		router.camelContext = camelContext;
+		router.metrics = new SalesforceMetrics();
+		SalesforceCredentials[] users = new SalesforceCredentials[USERS];
+		for (int i = 0; i < USERS; i++) {
+			users[i] = new SalesforceCredentials("user" + i + "@example.com", "secret" + i);
+			// created and started once, the steady state is measured
+			router.getComponent(users[i]);
+		}
+		try {
+			benchmarkRegistry(router, users, 10_000);
+			benchmarkRouting(router, users[0], 200_000);
+		} finally {
+			router.closeHttpClient();
+			camelContext.stop();
+		}
+	}
+
+	static void benchmarkRegistry(DynamicSalesforceComponentRouter router, SalesforceCredentials[] users, int iterations) throws Exception {
+		SynchronizedRouter synchronizedRouter = new SynchronizedRouter(router.camelContext);
+		// warm up both paths before measuring
+		resolve(THREADS, iterations / 10, users, creds -> synchronizedRouter.ensureComponentExistence(creds));
+		resolve(THREADS, iterations / 10, users, creds -> router.getComponent(creds));
+
+		long synchronizedDuration = resolve(THREADS, iterations, users, creds -> synchronizedRouter.ensureComponentExistence(creds));
+		long registryDuration = resolve(THREADS, iterations, users, creds -> router.getComponent(creds));
+		System.out.println(String.format("Resolving the components of %d users %d times from %d threads takes {%d} m-secs "
+				+ "with the synchronized lookup, {%d} m-secs with the lock-free registry", users.length, iterations,
+				THREADS, synchronizedDuration / 1_000_000, registryDuration / 1_000_000));
+	}
+
+	static void benchmarkRouting(DynamicSalesforceComponentRouter router, SalesforceCredentials creds, int iterations) {
+		SynchronizedRouter synchronizedRouter = new SynchronizedRouter(router.camelContext);
+		Map<String, Object> headers = new HashMap<>();
+		headers.put(HEADER_CREDENTIALS, creds);
+		headers.put("contentType", "CSV");
+		headers.put("jobId", "75028000000MvGZ");
+		headers.put("batchId", "75128000000RvA1");
+		headers.put("includeDetails", Boolean.TRUE);
+		headers.put("reportId", "00O28000000abcd");
+		Map<String, Object> properties = new HashMap<>(headers);
+		String[] toEndpoints = new String[FROM_URIS.length];
+		for (int i = 0; i < FROM_URIS.length; i++) {
+			toEndpoints[i] = FROM_COMPONENT + "//" + FROM_URIS[i];
+		}
+		long chainDuration = 0, routeDuration = 0;
+		// the first round warms up both paths
+		for (int round = 0; round < 2; round++) {
+			chainDuration = 0;
+			routeDuration = 0;
+			for (int i = 0; i < FROM_URIS.length; i++) {
+				properties.put("CamelToEndpoint", toEndpoints[i]);
+				long start = System.nanoTime();
+				for (int j = 0; j < iterations; j++) {
+					synchronizedRouter.slipOnce(creds, properties, "Account");
+				}
+				chainDuration += System.nanoTime() - start;
+				start = System.nanoTime();
+				for (int j = 0; j < iterations; j++) {
+					router.resolveEndpoint(FROM_URIS[i], headers, "Account");
+				}
+				routeDuration += System.nanoTime() - start;
+			}
+		}
+		System.out.println(String.format("Routing each of the %d operations %d times takes {%d} m-secs with the endsWith chain, "
+				+ "{%d} m-secs with the route table", FROM_URIS.length, iterations, chainDuration / 1_000_000, routeDuration / 1_000_000));
+	}
+
+	/*
+	 * Resolve the component of a random user from each thread, the threads
+	 * start together, the wall time is returned in nano-seconds
+	 */
+	private static long resolve(int threads, int iterations, SalesforceCredentials[] users, Resolver resolver) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			executor.submit((Callable<Void>) () -> {
+				try {
+					start.await();
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int j = 0; j < iterations; j++) {
+						if (resolver.resolve(users[random.nextInt(users.length)]) == null) {
+							throw new IllegalStateException("No component resolved");
+						}
+					}
+				} finally {
+					done.countDown();
+				}
+				return null;
+			});
+		}
+		long startTime = System.nanoTime();
+		start.countDown();
+		done.await();
+		long duration = System.nanoTime() - startTime;
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+		return duration;
+	}
+
+	@FunctionalInterface
+	private interface Resolver {
+		SalesforceComponent resolve(SalesforceCredentials creds);
+	}
+
+	/*
+	 * The router before the registry and the route table: the whole router
+	 * is locked and the component is looked up in the Camel context, by a
+	 * name built on each request, then the operation is matched against the
+	 * DIRECT endpoints one after the other
+	 */
+	private static class SynchronizedRouter {
+		private final CamelContext camelContext;
+
+		SynchronizedRouter(CamelContext camelContext) {
+			this.camelContext = camelContext;
+		}
+
+		private String componentName(SalesforceCredentials creds) {
+			return new StringBuilder("salesforce").append(creds.uniqueHash()).toString();
+		}
+
+		synchronized SalesforceComponent ensureComponentExistence(SalesforceCredentials creds) {
+			SalesforceComponent component = (SalesforceComponent) camelContext.getComponent(componentName(creds));
+			try {
+				if (!component.isStarted() && !component.isStarting()) {
+					component.start();
+				}
+				LOG.debug("Salesforce component session: " + component.getSession().getAccessToken());
+			} catch (Exception e) {
+				LOG.error("Failed to start component {" + componentName(creds) + "} due to: " + e.getMessage(), e);
+			}
+			return component;
+		}
+
+		String slipOnce(SalesforceCredentials creds, Map<String, Object> properties, Object messageBody) {
+			ensureComponentExistence(creds);
+			if (properties.containsKey("CamelSlipEndpoint")) {
+				return null;
+			}
+			String toEndpoint = properties.get("CamelToEndpoint").toString();
+			if (toEndpoint.endsWith(FROM_URI_GET_VERSIONS)) {
+				return componentName(creds) + ":getVersions";
+			} else if (toEndpoint.endsWith(FROM_URI_GET_GLOBAL_OBJECTS)) {
+				return componentName(creds) + ":getGlobalObjects";
+			} else if (toEndpoint.endsWith(FROM_URI_GET_DESCRIPTION)) {
+				return componentName(creds) + ":getDescription";
+			} else if (toEndpoint.endsWith(FROM_URI_COUNT_OBJECTS)) {
+				String objectName = (String) messageBody;
+				return componentName(creds) + ":query?sObjectQuery=SELECT COUNT() FROM " + objectName + "&sObjectClass=" + QueryRecords.class.getName();
+			} else if (toEndpoint.endsWith(FROM_URI_GET_OBJECT)) {
+				return componentName(creds) + ":query?sObjectClass=" + QueryRecords.class.getName();
+			} else if (toEndpoint.endsWith(FROM_URI_GET_OBJECT_WINDOW)) {
+				return componentName(creds) + ":query?sObjectClass=" + QueryRecords.class.getName();
+			} else if (toEndpoint.endsWith(FROM_URI_QUERY_MORE)) {
+				return componentName(creds) + ":queryMore?sObjectClass=" + QueryRecords.class.getName();
+			} else if (toEndpoint.endsWith(FROM_URI_CREATE_JOB)) {
+				return componentName(creds) + ":createJob";
+			} else if (toEndpoint.endsWith(FROM_URI_CLOSE_JOB)) {
+				return componentName(creds) + ":closeJob";
+			} else if (toEndpoint.endsWith(FROM_URI_CREATE_BATCH)) {
+				return componentName(creds) + ":createBatch?contentType="
+						+ properties.get("contentType") + "&jobId="
+						+ properties.get("jobId");
+			} else if (toEndpoint.endsWith(FROM_URI_CHECK_BATCH_STATUS)) {
+				return componentName(creds) + ":getBatch";
+			} else if (toEndpoint.endsWith(FROM_URI_GET_ALL_BATCHES)) {
+				return componentName(creds) + ":getAllBatches" + "?jobId="
+						+ properties.get("jobId");
+			} else if (toEndpoint.endsWith(FROM_URI_GET_BATCH_RESULTS)) {
+				return componentName(creds) + ":getQueryResultIds" + "?jobId="
+						+ properties.get("jobId");
+			} else if (toEndpoint.endsWith(FROM_URI_GET_BATCH_DATA)) {
+				return componentName(creds) + ":getQueryResult?"
+						+ "jobId=" + properties.get("jobId")
+						+ "&batchId=" + properties.get("batchId");
+			} else if (toEndpoint.endsWith(FROM_URI_LIST_REPORTS)) {
+				StringBuilder query = new StringBuilder(componentName(creds))
+						.append(":query?sObjectClass=").append(QueryRecords.class.getName());
+				return query.toString();
+			} else if (toEndpoint.endsWith(FROM_URI_DESCRIBE_REPORT)) {
+				return componentName(creds) + ":"
+						+ OperationName.DESCRIBE_REPORT.value();
+			} else if (toEndpoint.endsWith(FROM_URI_GET_REPORT_DATA)) {
+				return componentName(creds) + ":"
+						+ OperationName.GET_REPORT_DATA.value()
+						+ "?includeDetails=" + properties.get("includeDetails");
+			} else if (toEndpoint.endsWith(FROM_URI_CREATE_REPORT_INSTANCE)) {
+				return componentName(creds) + ":"
+						+ OperationName.CREATE_REPORT_DATA_INSTANCE.value()
+						+ "?includeDetails=" + properties.get("includeDetails");
+			} else if (toEndpoint.endsWith(FROM_URI_GET_INSTANCE_DATA)) {
+				return componentName(creds) + ":"
+						+ OperationName.GET_REPORT_INSTANCE_DATA.value()
+						+ "?reportId=" + properties.get("reportId");
+			} else {
+				return null;
+			}
+		}
+	}
+}
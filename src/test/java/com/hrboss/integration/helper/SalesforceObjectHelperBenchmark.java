@@ -0,0 +1,71 @@
+package com.hrboss.integration.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Map;
+
+import com.github.deeprot.integration.helper.SalesforceObjectHelper;
+
+/**
+ * Timings of the parsers of {@link SalesforceObjectHelper}, kept out of the
+ * unit tests so that the build does not depend on the speed of the machine.
+ * Run it as a plain Java application from the project directory.
+ */
+public class SalesforceObjectHelperBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		benchmarkXml(200);
+		benchmarkCsv(200);
+		for (String report : new String[] { "tabularReport", "summaryReport", "matrixReport", "joinedReport" }) {
+			benchmarkReport(report, 20);
+		}
+	}
+
+	static void benchmarkXml(int iterations) throws Exception {
+		File xml = new File("src/test/resources/75228000000PDuW.xml");
+		Map<String, String> metadata = SalesforceObjectHelperTest.accountMetadata();
+		long treeDuration = 0, pullDuration = 0;
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			SalesforceObjectHelper.readSalesforceXmlStreamToMongoObject(new FileInputStream(xml), metadata);
+			treeDuration += System.nanoTime() - start;
+			start = System.nanoTime();
+			SalesforceObjectHelper.streamSalesforceXmlToMongoObject(new FileInputStream(xml), metadata);
+			pullDuration += System.nanoTime() - start;
+		}
+		System.out.println(String.format("Parsing the XML result set %d times takes {%d} m-secs with the tree mapper, "
+				+ "{%d} m-secs with the pull parser", iterations, treeDuration / 1_000_000, pullDuration / 1_000_000));
+	}
+
+	static void benchmarkCsv(int iterations) throws Exception {
+		File xml = new File("src/test/resources/75228000000PDuW.xml");
+		File csv = new File("src/test/resources/75228000000PDuW.csv");
+		Map<String, String> metadata = SalesforceObjectHelperTest.accountMetadata();
+		long xmlDuration = 0, csvDuration = 0;
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			SalesforceObjectHelper.streamSalesforceXmlToMongoObject(new FileInputStream(xml), metadata);
+			xmlDuration += System.nanoTime() - start;
+			start = System.nanoTime();
+			SalesforceObjectHelper.streamSalesforceCsvToMongoObject(new FileInputStream(csv), metadata);
+			csvDuration += System.nanoTime() - start;
+		}
+		System.out.println(String.format("Decoding the same result set %d times takes {%d} m-secs from XML ({%d} bytes), "
+				+ "{%d} m-secs from CSV ({%d} bytes)", iterations, xmlDuration / 1_000_000, xml.length(), csvDuration / 1_000_000, csv.length()));
+	}
+
+	static void benchmarkReport(String report, int iterations) throws Exception {
+		File json = new File("src/test/resources/" + report + ".json");
+		long treeDuration = 0, streamDuration = 0;
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			SalesforceObjectHelper.readSalesforceReportDataStreamToMongoObject(new FileInputStream(json));
+			treeDuration += System.nanoTime() - start;
+			start = System.nanoTime();
+			SalesforceObjectHelper.streamSalesforceReportDataToMongoObject(new FileInputStream(json));
+			streamDuration += System.nanoTime() - start;
+		}
+		System.out.println(String.format("Parsing the %s ({%d} bytes) %d times takes {%d} m-secs with JsonPath, "
+				+ "{%d} m-secs with the streaming parser", report, json.length(), iterations, treeDuration / 1_000_000, streamDuration / 1_000_000));
+	}
+}
@@ -2,8 +2,13 @@ package com.hrboss.integration.helper;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -23,6 +28,82 @@ public class SalesforceObjectHelperTest {
 	//@Test
 	public void testReadSalesforceXmlStreamToMongoObject() throws Exception {
 		File xml = new File("src/test/resources/75228000000PDuW.xml");
+		Map<String, String> metadata = accountMetadata();
+		Collection<BasicDBObject> data = SalesforceObjectHelper.readSalesforceXmlStreamToMongoObject(new FileInputStream(xml), metadata);
+		org.junit.Assert.assertNotNull(data);
+		org.junit.Assert.assertEquals(data.size(), 12);
+		data.forEach(obj -> System.out.println(SalesforceObjectHelper.print(obj)));
+	}
+	
+	@Test
+	public void testStreamSalesforceXmlToMongoObject() throws Exception {
+		File xml = new File("src/test/resources/75228000000PDuW.xml");
+		List<BasicDBObject> records = new ArrayList<>(SalesforceObjectHelper.streamSalesforceXmlToMongoObject(new FileInputStream(xml), accountMetadata()));
+		String[] ids = { "00128000003vN2oAAE", "00128000003vN2pAAE", "00128000003vN2qAAE", "00128000003vN2rAAE",
+				"00128000003vN2sAAE", "00128000003vN2tAAE", "00128000003vN2uAAE", "00128000003vN2vAAE",
+				"00128000003vN2wAAE", "00128000003vN2xAAE", "00128000003vN2yAAE", "00128000003vN2zAAE" };
+		String[] names = { "GenePoint", "United Oil & Gas, UK", "United Oil & Gas, Singapore", "Edge Communications",
+				"Burlington Textiles Corp of America", "Pyramid Construction Inc.", "Dickenson plc", "Grand Hotels & Resorts Ltd",
+				"Express Logistics and Transport", "University of Arizona", "United Oil & Gas Corp.", "sForce" };
+		String[] industries = { "Biotechnology", "Energy", "Energy", "Electronics", "Apparel", "Construction", "Consulting",
+				"Hospitality", "Transportation", "Education", "Energy", null };
+		Integer[] employees = { 265, 24000, 3000, 1000, 9000, 2680, 120, 5600, 12300, 39000, 145000, null };
+		Double[] revenues = { 3.0E7, null, null, 1.39E8, 3.5E8, 9.5E8, 5.0E7, 5.0E8, 9.5E8, null, 5.6E9, null };
+		String[] expirations = { "2015-01-18", "2014-07-18", "2015-01-18", "2014-07-18", "2014-07-18", "2015-01-18",
+				"2015-01-18", "2015-01-18", "2015-01-18", "2014-07-18", "2015-01-18", null };
+		Date created = localDate(LocalDateTime.of(2015, 6, 24, 6, 30, 53));
+		org.junit.Assert.assertEquals(12, records.size());
+		for (int i = 0; i < records.size(); i++) {
+			BasicDBObject record = records.get(i);
+			org.junit.Assert.assertEquals("Account", record.get("type"));
+			org.junit.Assert.assertEquals(ids[i], record.get("Id"));
+			org.junit.Assert.assertEquals(names[i], record.get("Name"));
+			org.junit.Assert.assertEquals(Boolean.FALSE, record.get("IsDeleted"));
+			org.junit.Assert.assertEquals(industries[i], record.get("Industry"));
+			org.junit.Assert.assertEquals(employees[i], record.get("NumberOfEmployees"));
+			org.junit.Assert.assertEquals(revenues[i], record.get("AnnualRevenue"));
+			org.junit.Assert.assertEquals(created, record.get("CreatedDate"));
+			org.junit.Assert.assertEquals(expirations[i] == null ? null : localDate(LocalDate.parse(expirations[i]).atStartOfDay()), 
+					record.get("SLAExpirationDate__c"));
+			// nil elements are kept as null fields
+			org.junit.Assert.assertTrue(record.containsField("MasterRecordId"));
+			org.junit.Assert.assertNull(record.get("MasterRecordId"));
+		}
+		org.junit.Assert.assertEquals("345 Shoreline Park\nMountain View, CA 94043\nUSA", records.get(0).get("BillingStreet"));
+		
+		// same output as the tree mapper, field by field and in the same order: the xsi:type
+		// attribute of <records> is overwritten by the <type> element and the duplicated <Id>
+		// element is kept once by both parsers
+		List<BasicDBObject> expected = new ArrayList<>(SalesforceObjectHelper.readSalesforceXmlStreamToMongoObject(new FileInputStream(xml), accountMetadata()));
+		org.junit.Assert.assertEquals(expected, records);
+		for (int i = 0; i < records.size(); i++) {
+			org.junit.Assert.assertEquals(new ArrayList<>(expected.get(i).keySet()), new ArrayList<>(records.get(i).keySet()));
+		}
+	}
+	
+	/*
+	 * Dates are parsed in the default time zone
+	 */
+	private static Date localDate(LocalDateTime dateTime) {
+		return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+	}
+	
+	@Test
+	public void testStreamSalesforceCsvToMongoObject() throws Exception {
+		File xml = new File("src/test/resources/75228000000PDuW.xml");
+		File csv = new File("src/test/resources/75228000000PDuW.csv");
+		Map<String, String> metadata = accountMetadata();
+		List<BasicDBObject> expected = new ArrayList<>(SalesforceObjectHelper.streamSalesforceXmlToMongoObject(new FileInputStream(xml), metadata));
+		List<BasicDBObject> actual = new ArrayList<>(SalesforceObjectHelper.streamSalesforceCsvToMongoObject(new FileInputStream(csv), metadata));
+		org.junit.Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			// the sObject type is only part of the XML payload
+			expected.get(i).removeField("type");
+			org.junit.Assert.assertEquals(expected.get(i), actual.get(i));
+		}
+	}
+	
+	static Map<String, String> accountMetadata() {
 		Iterator<String> fieldnames = Arrays.asList(new String[] { "Id",
 				"IsDeleted", "MasterRecordId", "Name", "Type", "ParentId",
 				"BillingStreet", "BillingCity", "BillingState",
@@ -58,10 +139,7 @@ public class SalesforceObjectHelperTest {
 		while (fieldnames.hasNext() && fieldTypes.hasNext()) {
 			metadata.put(fieldnames.next(), fieldTypes.next());
 		}
-		Collection<BasicDBObject> data = SalesforceObjectHelper.readSalesforceXmlStreamToMongoObject(new FileInputStream(xml), metadata);
-		org.junit.Assert.assertNotNull(data);
-		org.junit.Assert.assertEquals(data.size(), 12);
-		data.forEach(obj -> System.out.println(SalesforceObjectHelper.print(obj)));
+		return metadata;
 	}
 	
 	@Test
@@ -74,6 +152,29 @@ public class SalesforceObjectHelperTest {
 				+ "takes {%d}, {%d}, {%d} m-secs relevantly", tabularReportDuration, summaryReportDuration, matrixReportDuration));
 	}
 	
+	@Test
+	public void testStreamSalesforceReportDataToMongoObject() throws Exception {
+		for (String report : new String[] { "tabularReport", "summaryReport", "matrixReport", "joinedReport" }) {
+			File json = new File("src/test/resources/" + report + ".json");
+			List<BasicDBObject> expected = new ArrayList<>(SalesforceObjectHelper.readSalesforceReportDataStreamToMongoObject(new FileInputStream(json)));
+			List<BasicDBObject> actual = new ArrayList<>(SalesforceObjectHelper.streamSalesforceReportDataToMongoObject(new FileInputStream(json)));
+			org.junit.Assert.assertEquals(expected, actual);
+		}
+	}
+	
+	@Test
+	public void testStreamSalesforceReportBlocks() throws Exception {
+		File json = new File("src/test/resources/joinedReport.json");
+		Map<String, Collection<BasicDBObject>> blocks = SalesforceObjectHelper.streamSalesforceReportBlocks(new FileInputStream(json));
+		org.junit.Assert.assertEquals(Arrays.asList("B0", "B1"), new ArrayList<>(blocks.keySet()));
+		org.junit.Assert.assertEquals(2, blocks.get("B0").size());
+		org.junit.Assert.assertEquals(3, blocks.get("B1").size());
+		BasicDBObject opportunity = blocks.get("B1").iterator().next();
+		org.junit.Assert.assertEquals("B1", opportunity.get(SalesforceObjectHelper.REPORT_BLOCK_FIELD));
+		org.junit.Assert.assertEquals("Burlington Textiles Weaving Plant Generator", opportunity.get("OPPORTUNITY_NAME"));
+		org.junit.Assert.assertFalse(opportunity.containsField("ACCOUNT!NAME"));
+	}
+	
 	private long measureReportParsing(String reportData) throws Exception {
 		long start = System.nanoTime();
 		Collection<BasicDBObject> data = SalesforceObjectHelper